@@ -0,0 +1,743 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import javadiptraceasciilib.DiptraceStringAttribute.UseQuotes;
+
+/**
+ * The attributes of an item, packed in arrays. There is no object for each
+ * attribute. The kind of each attribute is in a byte array, the value of
+ * each number is in a double array and the strings are in a string array.
+ * <P>
+ * The text of a number is only kept if it is not the same as the text that
+ * Integer.toString() or Double.toString() gives for the value, which is
+ * almost never the case for the numbers in a DipTrace ascii file.
+ * <P>
+ * A number that is changed by the library is written with three decimals.
+ * Only the value is stored when the number is changed, and the text is
+ * formatted when it's needed, so changing a number many times only costs
+ * one formatting when the file is written.
+ * <P>
+ * The attribute objects that get() returns are views of one position in
+ * this list. Changes to the view change the list.
+ */
+final class DiptraceAttributeList extends AbstractList<DiptraceAttribute> {
+    
+    /**
+     * A string without quotes.
+     */
+    static final byte KIND_STRING = 0;
+    
+    /**
+     * A string in double quotes.
+     */
+    static final byte KIND_QUOTED_STRING = 1;
+    
+    /**
+     * An integer.
+     */
+    static final byte KIND_INTEGER = 2;
+    
+    /**
+     * A double.
+     */
+    static final byte KIND_DOUBLE = 3;
+    
+    /**
+     * A double with a percent sign.
+     */
+    static final byte KIND_PERCENT = 4;
+    
+    /**
+     * The bits of a kind byte that has the kind.
+     */
+    private static final byte KIND_MASK = 0x0F;
+    
+    /**
+     * The identifier of the items that have the number of a component or
+     * a net.
+     */
+    private static final String NUMBER = "Number";
+    
+    /**
+     * A bit in a kind byte that tells that the number is written with three
+     * decimals.
+     */
+    private static final byte FIXED_DECIMALS = 0x10;
+    
+    /**
+     * The size of the arrays when the first attribute is added.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+    
+    /**
+     * The kind of each attribute.
+     */
+    private byte[] fKinds;
+    
+    /**
+     * The value of each number.
+     */
+    private double[] fNumbers;
+    
+    /**
+     * The value of each string and the text of each number that is not
+     * written the way Integer.toString() or Double.toString() writes it.
+     * Null if there is no such attribute.
+     */
+    private String[] fTexts;
+    
+    /**
+     * The number of attributes.
+     */
+    private int fSize;
+    
+    /**
+     * The item that has these attributes. Null if the list is not the
+     * attributes of an item.
+     */
+    private final DiptraceItem fOwner;
+    
+    /**
+     * Initializes a DiptraceAttributeList object that is not the attributes
+     * of an item.
+     */
+    DiptraceAttributeList() {
+        this.fOwner = null;
+    }
+    
+    /**
+     * Initializes a DiptraceAttributeList object with the attributes of an
+     * item.
+     * @param owner the item
+     */
+    DiptraceAttributeList(final DiptraceItem owner) {
+        this.fOwner = owner;
+    }
+    
+    /**
+     * Get an attribute.
+     * @param index the position of the attribute
+     * @return a view of the attribute
+     */
+    @Override
+    public DiptraceAttribute get(final int index) {
+        checkIndex(index, fSize);
+        switch (getKind(index)) {
+            case KIND_INTEGER:
+            case KIND_DOUBLE:
+                return new DiptraceDoubleAttribute(this, index);
+            
+            case KIND_PERCENT:
+                return new DiptraceDoublePercentAttribute(this, index);
+            
+            default:
+                return new DiptraceStringAttribute(this, index);
+        }
+    }
+    
+    /**
+     * Get the number of attributes.
+     * @return the number of attributes
+     */
+    @Override
+    public int size() {
+        return fSize;
+    }
+    
+    /**
+     * Insert a copy of an attribute.
+     * @param index the position of the new attribute
+     * @param attribute the attribute
+     */
+    @Override
+    public void add(final int index, final DiptraceAttribute attribute) {
+        checkIndex(index, fSize + 1);
+        DiptraceJournal journal
+            = beforeChange(DiptraceJournal.ADD_ATTRIBUTE, index);
+        openSlot(index);
+        copy(attribute, index);
+        afterChange(journal, index);
+    }
+    
+    /**
+     * Replace an attribute with a copy of another attribute.
+     * @param index the position of the attribute
+     * @param attribute the new attribute
+     * @return a copy of the old attribute
+     */
+    @Override
+    public DiptraceAttribute set(
+        final int index,
+        final DiptraceAttribute attribute) {
+        
+        checkIndex(index, fSize);
+        DiptraceJournal journal
+            = beforeChange(DiptraceJournal.SET_ATTRIBUTE, index);
+        DiptraceAttribute oldAttribute = get(index).duplicate();
+        copy(attribute, index);
+        afterChange(journal, index);
+        return oldAttribute;
+    }
+    
+    /**
+     * Remove an attribute.
+     * @param index the position of the attribute
+     * @return a copy of the removed attribute
+     */
+    @Override
+    public DiptraceAttribute remove(final int index) {
+        checkIndex(index, fSize);
+        beforeChange(DiptraceJournal.REMOVE_ATTRIBUTE, index);
+        DiptraceAttribute oldAttribute = get(index).duplicate();
+        closeSlot(index);
+        return oldAttribute;
+    }
+    
+    /**
+     * Insert an attribute as it was stored before it was removed. It's used
+     * by DiptraceJournal to undo a change.
+     * @param index the position of the attribute
+     * @param kind the kind of the attribute, with the flags
+     * @param number the number of the attribute
+     * @param text the text that is stored for the attribute, or null
+     */
+    void insertSlot(
+        final int index,
+        final byte kind,
+        final double number,
+        final String text) {
+        
+        DiptraceJournal journal
+            = beforeChange(DiptraceJournal.ADD_ATTRIBUTE, index);
+        openSlot(index);
+        fKinds[index] = kind;
+        fNumbers[index] = number;
+        putText(index, text);
+        afterChange(journal, index);
+    }
+    
+    /**
+     * Give an attribute the value that was stored before it was changed.
+     * It's used by DiptraceJournal to undo a change.
+     * @param index the position of the attribute
+     * @param kind the kind of the attribute, with the flags
+     * @param number the number of the attribute
+     * @param text the text that is stored for the attribute, or null
+     */
+    void restoreSlot(
+        final int index,
+        final byte kind,
+        final double number,
+        final String text) {
+        
+        DiptraceJournal journal
+            = beforeChange(DiptraceJournal.SET_ATTRIBUTE, index);
+        fKinds[index] = kind;
+        fNumbers[index] = number;
+        putText(index, text);
+        afterChange(journal, index);
+    }
+    
+    /**
+     * Remove an attribute without making a copy of it. It's used by
+     * DiptraceJournal to undo a change.
+     * @param index the position of the attribute
+     */
+    void removeSlot(final int index) {
+        beforeChange(DiptraceJournal.REMOVE_ATTRIBUTE, index);
+        closeSlot(index);
+    }
+    
+    /**
+     * Make room for an attribute at a position.
+     * @param index the position
+     */
+    private void openSlot(final int index) {
+        ensureCapacity(fSize + 1);
+        System.arraycopy(fKinds, index, fKinds, index + 1, fSize - index);
+        System.arraycopy(fNumbers, index, fNumbers, index + 1, fSize - index);
+        if (fTexts != null) {
+            System.arraycopy(fTexts, index, fTexts, index + 1, fSize - index);
+        }
+        fSize++;
+        modCount++;
+    }
+    
+    /**
+     * Remove the attribute at a position.
+     * @param index the position
+     */
+    private void closeSlot(final int index) {
+        int numMoved = fSize - index - 1;
+        System.arraycopy(fKinds, index + 1, fKinds, index, numMoved);
+        System.arraycopy(fNumbers, index + 1, fNumbers, index, numMoved);
+        if (fTexts != null) {
+            System.arraycopy(fTexts, index + 1, fTexts, index, numMoved);
+            fTexts[fSize - 1] = null;
+        }
+        fSize--;
+        modCount++;
+    }
+    
+    /**
+     * Add a string.
+     * @param value the string
+     * @param quotes whenether to use quotes
+     */
+    void addString(final String value, final UseQuotes quotes) {
+        int index = append(kindOf(quotes), 0);
+        putText(index, value);
+    }
+    
+    /**
+     * Add an integer.
+     * @param text the integer as it is written in the file
+     * @param value the integer
+     */
+    void addInt(final String text, final int value) {
+        int index = append(KIND_INTEGER, value);
+        setNumberText(index, text);
+    }
+    
+    /**
+     * Add a double.
+     * @param text the double as it is written in the file
+     * @param value the double
+     */
+    void addDouble(final String text, final double value) {
+        int index = append(KIND_DOUBLE, value);
+        setNumberText(index, text);
+    }
+    
+    /**
+     * Add a double with a percent sign.
+     * @param text the double as it is written in the file, with the percent
+     * sign
+     * @param value the double
+     */
+    void addPercent(final String text, final double value) {
+        int index = append(KIND_PERCENT, value);
+        setNumberText(index, text);
+    }
+    
+    /**
+     * Add an attribute that is read by a tokenizer.
+     * @param token the token
+     * @throws RuntimeException if the token is not an attribute
+     */
+    void addToken(final DiptraceToken token) {
+        
+        switch (token.getType()) {
+            case IDENTIFIER:
+            case NON_QUOTED_STRING:
+                addString(token.getValue(), UseQuotes.NO_QUOTES);
+                break;
+            
+            case STRING:
+                addString(token.getValue(), UseQuotes.DOUBLE_QUOTES);
+                break;
+            
+            case INTEGER:
+                addInt(token.getValue(), token.getIntValue());
+                break;
+            
+            case DOUBLE:
+                addDouble(token.getValue(), token.getDoubleValue());
+                break;
+            
+            case PERCENT:
+                addPercent(token.getValue(), token.getDoubleValue());
+                break;
+            
+            default:
+                throw new RuntimeException(
+                    String.format(
+                        "Token has unknown type: %s",
+                        token.getType().name()));
+        }
+    }
+    
+    /**
+     * Copy all the attributes of another list to the end of this list.
+     * @param list the other list
+     */
+    void addAll(final DiptraceAttributeList list) {
+        addAll(list, 0, list.fSize);
+    }
+    
+    /**
+     * Copy a range of the attributes of another list to the end of this
+     * list.
+     * @param list the other list
+     * @param start the position of the first attribute to copy
+     * @param end the position after the last attribute to copy
+     */
+    void addAll(
+        final DiptraceAttributeList list,
+        final int start,
+        final int end) {
+        
+        int count = end - start;
+        if (count == 0) {
+            return;
+        }
+        ensureCapacity(fSize + count);
+        System.arraycopy(list.fKinds, start, fKinds, fSize, count);
+        System.arraycopy(list.fNumbers, start, fNumbers, fSize, count);
+        if (list.fTexts != null) {
+            for (int i = 0; i < count; i++) {
+                putText(fSize + i, list.fTexts[start + i]);
+            }
+        }
+        fSize += count;
+        modCount++;
+    }
+    
+    /**
+     * Get whenether an attribute of this list with a kind may be a RefDes,
+     * a name or a number that the project has maps of. The strings and the
+     * attributes of Number items may be.
+     * @param kind the kind, with the flags as they are stored in the list
+     * @return true if the attribute may be a key of the maps
+     */
+    boolean isMapKey(final byte kind) {
+        return ((kind & KIND_MASK) <= KIND_QUOTED_STRING)
+            || ((fOwner != null) && NUMBER.equals(fOwner.getIdentifier()));
+    }
+    
+    /**
+     * Get the kind of an attribute.
+     * @param index the position of the attribute
+     * @return the kind
+     */
+    byte getKind(final int index) {
+        return (byte) (fKinds[index] & KIND_MASK);
+    }
+    
+    /**
+     * Set the kind of an attribute.
+     * @param index the position of the attribute
+     * @param kind the kind
+     */
+    void setKind(final int index, final byte kind) {
+        DiptraceJournal journal
+            = beforeChange(DiptraceJournal.SET_ATTRIBUTE, index);
+        fKinds[index] = kind;
+        afterChange(journal, index);
+    }
+    
+    /**
+     * Get the value of a number.
+     * @param index the position of the attribute
+     * @return the value
+     */
+    double getNumber(final int index) {
+        return fNumbers[index];
+    }
+    
+    /**
+     * Set the value of a number. The number is written the way
+     * Integer.toString() or Double.toString() writes it.
+     * @param index the position of the attribute
+     * @param value the value
+     */
+    void setNumber(final int index, final double value) {
+        DiptraceJournal journal
+            = beforeChange(DiptraceJournal.SET_ATTRIBUTE, index);
+        fKinds[index] &= KIND_MASK;
+        fNumbers[index] = value;
+        putText(index, null);
+        afterChange(journal, index);
+    }
+    
+    /**
+     * Set the value of a number. The number is written with three decimals
+     * and is not formatted until it's written.
+     * @param index the position of the attribute
+     * @param value the value
+     */
+    void setFixedDecimalsNumber(final int index, final double value) {
+        DiptraceJournal journal
+            = beforeChange(DiptraceJournal.SET_ATTRIBUTE, index);
+        fKinds[index] |= FIXED_DECIMALS;
+        fNumbers[index] = value;
+        putText(index, null);
+        afterChange(journal, index);
+    }
+    
+    /**
+     * Get the text of an attribute. This is the string of a string and the
+     * text that is written in the file for a number.
+     * @param index the position of the attribute
+     * @return the text
+     */
+    String getText(final int index) {
+        if ((fTexts != null) && (fTexts[index] != null)) {
+            return fTexts[index];
+        }
+        if ((fKinds[index] & FIXED_DECIMALS) != 0) {
+            if (getKind(index) == KIND_PERCENT) {
+                return DiptraceNumberFormat.format(fNumbers[index]) + "%";
+            }
+            return DiptraceNumberFormat.format(fNumbers[index]);
+        }
+        return canonicalText(getKind(index), fNumbers[index]);
+    }
+    
+    /**
+     * Write the text of an attribute. Numbers that are written with three
+     * decimals are formatted straight to the writer.
+     * @param writer the writer
+     * @param index the position of the attribute
+     * @throws IOException on any I/O error
+     */
+    void writeText(final Writer writer, final int index) throws IOException {
+        if (((fKinds[index] & FIXED_DECIMALS) == 0)
+            || ((fTexts != null) && (fTexts[index] != null))) {
+            
+            writer.append(getText(index));
+            return;
+        }
+        DiptraceNumberFormat.append(writer, fNumbers[index]);
+        if (getKind(index) == KIND_PERCENT) {
+            writer.append('%');
+        }
+    }
+    
+    /**
+     * Set the string of an attribute.
+     * @param index the position of the attribute
+     * @param text the string
+     */
+    void setText(final int index, final String text) {
+        DiptraceJournal journal
+            = beforeChange(DiptraceJournal.SET_ATTRIBUTE, index);
+        putText(index, text);
+        afterChange(journal, index);
+    }
+    
+    /**
+     * Store the text of an attribute.
+     * @param index the position of the attribute
+     * @param text the text or null if the text is given by the value
+     */
+    private void putText(final int index, final String text) {
+        if (fTexts == null) {
+            if (text == null) {
+                return;
+            }
+            fTexts = new String[fKinds.length];
+        }
+        fTexts[index] = text;
+    }
+    
+    /**
+     * Set the text of a number. The text is only kept if it's not the text
+     * that the value gives.
+     * @param index the position of the attribute
+     * @param text the text
+     */
+    private void setNumberText(final int index, final String text) {
+        if (text.equals(canonicalText(getKind(index), fNumbers[index]))) {
+            putText(index, null);
+        } else {
+            putText(index, text);
+        }
+    }
+    
+    /**
+     * Get the text that a number is written as if there is no other text.
+     * @param kind the kind of the number
+     * @param value the value of the number
+     * @return the text
+     */
+    private static String canonicalText(final byte kind, final double value) {
+        switch (kind) {
+            case KIND_INTEGER:
+                return Integer.toString((int) value);
+            
+            case KIND_DOUBLE:
+                return Double.toString(value);
+            
+            case KIND_PERCENT:
+                return Double.toString(value) + "%";
+            
+            default:
+                // A string without text is an empty string.
+                return "";
+        }
+    }
+    
+    /**
+     * Get the kind of a string.
+     * @param quotes whenether the string uses quotes
+     * @return the kind
+     */
+    private static byte kindOf(final UseQuotes quotes) {
+        if (quotes == UseQuotes.DOUBLE_QUOTES) {
+            return KIND_QUOTED_STRING;
+        }
+        return KIND_STRING;
+    }
+    
+    /**
+     * Add an attribute after the other attributes.
+     * @param kind the kind of the attribute
+     * @param value the value of the number
+     * @return the position of the new attribute
+     */
+    private int append(final byte kind, final double value) {
+        ensureCapacity(fSize + 1);
+        fKinds[fSize] = kind;
+        fNumbers[fSize] = value;
+        fSize++;
+        modCount++;
+        return fSize - 1;
+    }
+    
+    /**
+     * Copy an attribute into a position of this list.
+     * @param attribute the attribute
+     * @param index the position
+     */
+    private void copy(final DiptraceAttribute attribute, final int index) {
+        
+        DiptraceAttributeList list = null;
+        int sourceIndex = 0;
+        if (attribute instanceof DiptraceDoubleAttribute) {
+            list = ((DiptraceDoubleAttribute) attribute).getList();
+            sourceIndex = ((DiptraceDoubleAttribute) attribute).getIndex();
+        } else if (attribute instanceof DiptraceDoublePercentAttribute) {
+            list = ((DiptraceDoublePercentAttribute) attribute).getList();
+            sourceIndex
+                = ((DiptraceDoublePercentAttribute) attribute).getIndex();
+        } else if (attribute instanceof DiptraceStringAttribute) {
+            list = ((DiptraceStringAttribute) attribute).getList();
+            sourceIndex = ((DiptraceStringAttribute) attribute).getIndex();
+        }
+        
+        if (list == null) {
+            // Some other implementation. Keep it as it is written.
+            fKinds[index] = KIND_STRING;
+            fNumbers[index] = 0;
+            putText(index, attribute.getFormattedString());
+            return;
+        }
+        
+        fKinds[index] = list.fKinds[sourceIndex];
+        fNumbers[index] = list.fNumbers[sourceIndex];
+        if (list.fTexts != null) {
+            putText(index, list.fTexts[sourceIndex]);
+        } else {
+            putText(index, null);
+        }
+    }
+    
+    /**
+     * Mix the attributes into a hash. The attributes are hashed as they are
+     * stored, so a number that is written the same way as another number
+     * but is stored in another way may give another hash.
+     * @param hash the hash
+     * @return the new hash
+     */
+    long hash(final long hash) {
+        long result = DiptraceHash.mix(hash, fSize);
+        for (int i = 0; i < fSize; i++) {
+            result = DiptraceHash.mix(result, fKinds[i]);
+            if ((fTexts != null) && (fTexts[i] != null)) {
+                result = DiptraceHash.mix(result, fTexts[i]);
+            } else {
+                result = DiptraceHash.mix(
+                    result, Double.doubleToLongBits(fNumbers[i]));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Tell the item that has these attributes that an attribute is about to
+     * be changed, and record the old value if the change is recorded in a
+     * journal. The attributes are added by the parser and by duplicate()
+     * without telling the item, since the item is new.
+     * @param type the type of the change, for example
+     * DiptraceJournal.SET_ATTRIBUTE
+     * @param index the position of the attribute
+     * @return the journal that the change is recorded in, or null
+     */
+    private DiptraceJournal beforeChange(final byte type, final int index) {
+        if (fOwner == null) {
+            return null;
+        }
+        
+        DiptraceJournal journal = fOwner.beforeChange(false);
+        if (journal == null) {
+            return null;
+        }
+        
+        if (type == DiptraceJournal.ADD_ATTRIBUTE) {
+            journal.recordAttribute(type, this, index, KIND_STRING, 0, null);
+            return journal;
+        }
+        
+        String text = null;
+        if (fTexts != null) {
+            text = fTexts[index];
+        }
+        journal.recordAttribute(
+            type, this, index, fKinds[index], fNumbers[index], text);
+        return journal;
+    }
+    
+    /**
+     * Record the new value of an attribute that is changed, if the change
+     * is recorded in a journal.
+     * @param journal the journal that beforeChange() returned, or null
+     * @param index the position of the attribute
+     */
+    private void afterChange(final DiptraceJournal journal, final int index) {
+        if (journal == null) {
+            return;
+        }
+        
+        String text = null;
+        if (fTexts != null) {
+            text = fTexts[index];
+        }
+        journal.setNewAttribute(fKinds[index], fNumbers[index], text);
+    }
+    
+    /**
+     * Make sure the arrays have room for a number of attributes.
+     * @param capacity the number of attributes
+     */
+    private void ensureCapacity(final int capacity) {
+        if (fKinds == null) {
+            int size = Math.max(INITIAL_CAPACITY, capacity);
+            fKinds = new byte[size];
+            fNumbers = new double[size];
+        } else if (capacity > fKinds.length) {
+            int size = Math.max(fKinds.length * 2, capacity);
+            fKinds = Arrays.copyOf(fKinds, size);
+            fNumbers = Arrays.copyOf(fNumbers, size);
+            if (fTexts != null) {
+                fTexts = Arrays.copyOf(fTexts, size);
+            }
+        }
+    }
+    
+    /**
+     * Check that an index is in range.
+     * @param index the index
+     * @param size the number of valid indexes
+     */
+    private void checkIndex(final int index, final int size) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException(
+                String.format("Index: %d, Size: %d", index, fSize));
+        }
+    }
+    
+}
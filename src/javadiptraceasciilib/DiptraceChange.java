@@ -0,0 +1,103 @@
+package javadiptraceasciilib;
+
+/**
+ * A difference between two trees that DiptraceDiff has found.
+ * <P>
+ * The path of the item has the identifiers of the items from the top of the
+ * tree down to the item, separated by "/". A component has its RefDes and a
+ * net has its name in brackets, like "Board/Components/Component[D1]/X". An
+ * item that has siblings with the same identifier has its position among
+ * them in brackets, like "Points/pt[2]".
+ */
+public final class DiptraceChange {
+    
+    /**
+     * The kind of difference.
+     */
+    private final DiptraceChangeType fType;
+    
+    /**
+     * The path of the item.
+     */
+    private final String fPath;
+    
+    /**
+     * The identifier and the attributes of the item in the first tree.
+     */
+    private final String fBefore;
+    
+    /**
+     * The identifier and the attributes of the item in the second tree.
+     */
+    private final String fAfter;
+    
+    /**
+     * Initializes a DiptraceChange object.
+     * @param type the kind of difference
+     * @param path the path of the item
+     * @param before the item in the first tree or null if it's added
+     * @param after the item in the second tree or null if it's removed
+     */
+    DiptraceChange(
+        final DiptraceChangeType type,
+        final String path,
+        final String before,
+        final String after) {
+        
+        this.fType = type;
+        this.fPath = path;
+        this.fBefore = before;
+        this.fAfter = after;
+    }
+    
+    /**
+     * Get the kind of difference.
+     * @return the kind of difference
+     */
+    public DiptraceChangeType getType() {
+        return fType;
+    }
+    
+    /**
+     * Get the path of the item.
+     * @return the path
+     */
+    public String getPath() {
+        return fPath;
+    }
+    
+    /**
+     * Get the identifier and the attributes of the item in the first tree.
+     * @return the item as text or null if the item is added
+     */
+    public String getBefore() {
+        return fBefore;
+    }
+    
+    /**
+     * Get the identifier and the attributes of the item in the second tree.
+     * @return the item as text or null if the item is removed
+     */
+    public String getAfter() {
+        return fAfter;
+    }
+    
+    /**
+     * Returns a string representation of this object.
+     * @return a string
+     */
+    @Override
+    public String toString() {
+        switch (fType) {
+            case ADDED:
+                return String.format("+ %s: %s", fPath, fAfter);
+            
+            case REMOVED:
+                return String.format("- %s: %s", fPath, fBefore);
+            
+            default:
+                return String.format("* %s: %s -> %s", fPath, fBefore, fAfter);
+        }
+    }
+    
+}
@@ -0,0 +1,23 @@
+package javadiptraceasciilib;
+
+/**
+ * The kinds of differences that DiptraceDiff finds between two trees.
+ */
+public enum DiptraceChangeType {
+    
+    /**
+     * An item that is only in the second tree.
+     */
+    ADDED,
+    
+    /**
+     * An item that is only in the first tree.
+     */
+    REMOVED,
+    
+    /**
+     * An item that is in both trees but has other attributes.
+     */
+    CHANGED
+    
+}
@@ -1,7 +1,9 @@
 package javadiptraceasciilib;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A Diptrace component.
@@ -23,6 +25,24 @@ public final class DiptraceComponent {
      */
     private final DiptraceItem fPCBComponent;
     
+    /**
+     * Map of the pins in the schematics where the key is the pin number.
+     * Null until the first pin is looked up.
+     */
+    private Map<Integer, DiptraceItem> fSchematicsPinMap;
+    
+    /**
+     * Map of the pads in the pcb where the key is the pin number. Null
+     * until the first pin is looked up.
+     */
+    private Map<Integer, DiptraceItem> fPCBPadMap;
+    
+    /**
+     * The modification count of the items of this component when the pin
+     * maps were filled.
+     */
+    private int fPinMapModificationCount;
+    
     /**
      * Initialize a DiptraceComponent object.
      * @param diptraceProject the diptrace project
@@ -56,7 +76,9 @@ public final class DiptraceComponent {
     }
     
     /**
-     * Get a pin of this component.
+     * Get a pin of this component. The pin maps are filled again while the
+     * project is in a transaction, since the items above a changed pin are
+     * not marked as changed until the transaction ends.
      * @param pinNo the pin number
      * @return the pin
      * @throws DiptraceNotFoundException thrown in the pin is not found
@@ -64,27 +86,78 @@ public final class DiptraceComponent {
     public DiptraceComponentPin getPin(final int pinNo)
         throws DiptraceNotFoundException {
         
-        DiptraceItem schematicsItem = null;
-        
-        for (DiptraceItem componentPart : fSchematicsComponentParts) {
-            DiptraceItem pinsItem = componentPart.getSubItem("Pins");
-            for (DiptraceItem pinItem : pinsItem.getChildren()) {
-                DiptraceAttribute pinNoAttr
-                    = ((DiptraceGenericItem) pinItem).getAttributes().get(0);
-                int tempPinNo = ((DiptraceDoubleAttribute) pinNoAttr).getInt();
-                if (pinNo == tempPinNo) {
-                    schematicsItem = pinItem;
-                }
-            }
+        if ((fSchematicsPinMap == null)
+            || (fPinMapModificationCount != getModificationCount())
+            || (fDiptraceProject.getTransaction() != null)) {
+            
+            fillPinMaps();
         }
+        
+        DiptraceItem schematicsItem = fSchematicsPinMap.get(pinNo);
         if (schematicsItem == null) {
             throw new DiptraceNotFoundException(
                 String.format("Pin %d is not found on schematics", pinNo));
         }
-        DiptraceItem pcbItem = null;
+        DiptraceItem pcbItem = fPCBPadMap.get(pinNo);
         return new DiptraceComponentPin(this, pinNo, schematicsItem, pcbItem);
     }
     
+    /**
+     * Fill the maps of the pins in the schematics and the pads in the pcb.
+     * If several pins have the same number, the last one is used.
+     */
+    private void fillPinMaps() {
+        
+        fSchematicsPinMap = new HashMap<>();
+        for (DiptraceItem componentPart : fSchematicsComponentParts) {
+            addPins(fSchematicsPinMap, componentPart.getSubItem("Pins"));
+        }
+        
+        fPCBPadMap = new HashMap<>();
+        if (fPCBComponent != null) {
+            addPins(fPCBPadMap, fPCBComponent.getSubItem("Pads"));
+        }
+        
+        fPinMapModificationCount = getModificationCount();
+    }
+    
+    /**
+     * Add the pins or the pads of an item to a map.
+     * @param map the map where the key is the pin number
+     * @param pinsItem the item with the pins or pads, or null
+     */
+    private static void addPins(
+        final Map<Integer, DiptraceItem> map,
+        final DiptraceItem pinsItem) {
+        
+        if (pinsItem == null) {
+            return;
+        }
+        
+        for (DiptraceItem pinItem : pinsItem.getChildren()) {
+            DiptraceAttribute pinNoAttr
+                = ((DiptraceGenericItem) pinItem).getAttributes().get(0);
+            map.put(((DiptraceDoubleAttribute) pinNoAttr).getInt(), pinItem);
+        }
+    }
+    
+    /**
+     * Get the sum of the modification counts of the items of this
+     * component. The sum is changed when any of the items is changed, since
+     * the counts are never decreased.
+     * @return the sum
+     */
+    private int getModificationCount() {
+        int count = 0;
+        for (DiptraceItem componentPart : fSchematicsComponentParts) {
+            count += componentPart.getModificationCount();
+        }
+        if (fPCBComponent != null) {
+            count += fPCBComponent.getModificationCount();
+        }
+        return count;
+    }
+    
     /**
      * Duplicate this component.
      * @param newRefDes the RefDes that the new component is going to get
@@ -133,12 +206,88 @@ public final class DiptraceComponent {
                 newComponentHiddenIdentifier,
                 newRefDes);
         
+        for (DiptraceItem part : newSchematicsComponentParts) {
+            fDiptraceProject.addSchematicsComponentPart(part);
+        }
+        fDiptraceProject.addPCBComponent(newPCBComponent);
+        
         return new DiptraceComponent(
             fDiptraceProject,
             newSchematicsComponentParts,
             newPCBComponent);
     }
     
+    /**
+     * Get the RefDes of this component.
+     * @return the RefDes
+     */
+    public String getRefDes() {
+        return DiptraceProject.getRefDes(fPCBComponent);
+    }
+    
+    /**
+     * Give this component a new RefDes.
+     * @param newRefDes the new RefDes
+     * @throws DiptraceRefDesAlreadyExistsException thrown if the new refdes
+     * already exists
+     */
+    public void rename(final String newRefDes)
+        throws DiptraceRefDesAlreadyExistsException {
+        
+        DiptraceOperations diptraceOperations
+            = fDiptraceProject.getDiptraceOperations();
+        
+        if (diptraceOperations.isRefDesInUse(newRefDes)) {
+            throw new DiptraceRefDesAlreadyExistsException(
+                String.format("The RefDes %s is already in use", newRefDes));
+        }
+        
+        for (DiptraceItem part : fSchematicsComponentParts) {
+            fDiptraceProject.removeSchematicsComponentPart(part);
+            setRefDes(part, newRefDes);
+            fDiptraceProject.addSchematicsComponentPart(part);
+        }
+        
+        fDiptraceProject.removePCBComponent(fPCBComponent);
+        setRefDes(fPCBComponent, newRefDes);
+        fDiptraceProject.addPCBComponent(fPCBComponent);
+    }
+    
+    /**
+     * Remove this component from the schematics and the pcb. Items that
+     * refer to the component, like the connections of its pins to nets,
+     * are not changed.
+     */
+    public void delete() {
+        
+        DiptraceOperations diptraceOperations
+            = fDiptraceProject.getDiptraceOperations();
+        
+        for (DiptraceItem part : fSchematicsComponentParts) {
+            fDiptraceProject.removeSchematicsComponentPart(part);
+            diptraceOperations.deleteItem(part);
+        }
+        
+        fDiptraceProject.removePCBComponent(fPCBComponent);
+        diptraceOperations.deleteItem(fPCBComponent);
+    }
+    
+    /**
+     * Set the RefDes of a component part in the schematics or of a
+     * component in the pcb.
+     * @param item the part or the component
+     * @param refDes the RefDes
+     */
+    private static void setRefDes(
+        final DiptraceItem item,
+        final String refDes) {
+        
+        
+        ((DiptraceStringAttribute)
+            ((DiptraceGenericItem) item).getAttributes().get(1))
+                .setString(refDes);
+    }
+    
     /**
      * Move to an absolute position on the schematics.
      * @param x the x position
@@ -195,6 +344,8 @@ public final class DiptraceComponent {
     public void moveAbsoluteOnPCB(final double x, final double y) {
         
         DiptraceItem item = this.getPCBComponent();
+        DiptraceSpatialIndex spatialIndex
+            = fDiptraceProject.getCurrentSpatialIndex();
         
         ((DiptraceDoubleAttribute)
             ((DiptraceGenericItem) item.getSubItem("X"))
@@ -207,6 +358,8 @@ public final class DiptraceComponent {
             .getAttributes()
             .get(0))
                 .setDouble(y);
+        
+        fDiptraceProject.updateSpatialIndex(spatialIndex, item);
     }
     
     /**
@@ -217,6 +370,9 @@ public final class DiptraceComponent {
     public void moveRelativeOnPCB(final double x, final double y) {
         
         DiptraceItem item = this.getPCBComponent();
+        DiptraceSpatialIndex spatialIndex
+            = fDiptraceProject.getCurrentSpatialIndex();
+        
         DiptraceDoubleAttribute attrPosX
             = ((DiptraceDoubleAttribute)
                 ((DiptraceGenericItem) item.getSubItem("X"))
@@ -232,6 +388,8 @@ public final class DiptraceComponent {
                 .get(0));
         
         attrPosY.setDouble(attrPosY.getDouble() + y);
+        
+        fDiptraceProject.updateSpatialIndex(spatialIndex, item);
     }
     
 }
@@ -25,7 +25,6 @@ public class DiptraceComponentPin {
      */
     private final DiptraceItem fPCBItem;
     
-    
     /**
      * Initialize a DiptraceComponentPin object.
      * @param component the component that this pin is on
@@ -45,4 +44,36 @@ public class DiptraceComponentPin {
         this.fPCBItem = pcbItem;
     }
     
+    /**
+     * Get the component that this pin is on.
+     * @return the component
+     */
+    public DiptraceComponent getComponent() {
+        return fComponent;
+    }
+    
+    /**
+     * Get the pin number.
+     * @return the pin number
+     */
+    public int getPinNo() {
+        return fPinNo;
+    }
+    
+    /**
+     * Get the DiptraceItem of this pin in the schematics.
+     * @return the item
+     */
+    DiptraceItem getSchematicsItem() {
+        return fSchematicsItem;
+    }
+    
+    /**
+     * Get the DiptraceItem of this pin in the pcb.
+     * @return the Pad item or null if the pcb component has no such pad
+     */
+    DiptraceItem getPCBItem() {
+        return fPCBItem;
+    }
+    
 }
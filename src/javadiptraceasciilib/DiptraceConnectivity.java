@@ -0,0 +1,529 @@
+package javadiptraceasciilib;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The connections between the components and the nets on the PCB, kept in
+ * int arrays.
+ * <P>
+ * The components, pins, nets and segments are numbered from zero. A pin is
+ * a pad on a component and the pins of a component have consecutive
+ * numbers, so the pin of a pad is the first pin of the component plus the
+ * number of the pad. A segment is a line in a net, which connects two pins.
+ * <P>
+ * The pins of each net are listed in one array where the pins of each net
+ * start at an offset, which is the same for the segments. Each pin knows
+ * its net and its routed group. Pins are in the same routed group if they
+ * are connected by segments.
+ * <P>
+ * A connectivity is not changed after it's created. Use
+ * DiptraceProject.getConnectivity() to get one that is up to date.
+ */
+public final class DiptraceConnectivity {
+    
+    /**
+     * The value of a missing component, pin, net or group.
+     */
+    public static final int NONE = -1;
+    
+    /**
+     * The RefDes of each component.
+     */
+    private final String[] fRefDes;
+    
+    /**
+     * The component of each component number, or NONE.
+     */
+    private final int[] fComponentsByNumber;
+    
+    /**
+     * The first pin of each component. The pins of the last component end
+     * at the last element.
+     */
+    private final int[] fComponentPinStarts;
+    
+    /**
+     * The component of each pin.
+     */
+    private final int[] fPinComponents;
+    
+    /**
+     * The net of each pin, or NONE.
+     */
+    private final int[] fPinNets;
+    
+    /**
+     * The routed group of each pin. A pin that is not connected by any
+     * segment is alone in its group.
+     */
+    private final int[] fPinGroups;
+    
+    /**
+     * The name of each net.
+     */
+    private final String[] fNetNames;
+    
+    /**
+     * The first position in fNetPins of each net. The pins of the last net
+     * end at the last element.
+     */
+    private final int[] fNetPinStarts;
+    
+    /**
+     * The pins of all the nets.
+     */
+    private final int[] fNetPins;
+    
+    /**
+     * The first segment of each net. The segments of the last net end at
+     * the last element.
+     */
+    private final int[] fNetSegmentStarts;
+    
+    /**
+     * The first pin of each segment, or NONE.
+     */
+    private final int[] fSegmentPins1;
+    
+    /**
+     * The second pin of each segment, or NONE.
+     */
+    private final int[] fSegmentPins2;
+    
+    /**
+     * Map of the components where the key is the RefDes.
+     */
+    private final Map<String, Integer> fComponentsByRefDes = new HashMap<>();
+    
+    /**
+     * Map of the nets where the key is the name.
+     */
+    private final Map<String, Integer> fNetsByName = new HashMap<>();
+    
+    /**
+     * Initializes a DiptraceConnectivity object from the items of the pcb.
+     * @param components the Components item of the pcb
+     * @param nets the Nets item of the pcb
+     */
+    DiptraceConnectivity(
+        final DiptraceItem components,
+        final DiptraceItem nets) {
+        
+        int numComponents = components.getNumSubItems();
+        fRefDes = new String[numComponents];
+        fComponentPinStarts = new int[numComponents + 1];
+        int[] numbers = new int[numComponents];
+        int maxNumber = NONE;
+        for (int c = 0; c < numComponents; c++) {
+            DiptraceItem component = components.getChildren().get(c);
+            fRefDes[c] = DiptraceProject.getRefDes(component);
+            fComponentsByRefDes.putIfAbsent(fRefDes[c], c);
+            numbers[c] = getInt(component, "Number");
+            maxNumber = Math.max(maxNumber, numbers[c]);
+            fComponentPinStarts[c + 1]
+                = fComponentPinStarts[c] + getNumPads(component);
+        }
+        
+        fComponentsByNumber = new int[maxNumber + 1];
+        Arrays.fill(fComponentsByNumber, NONE);
+        for (int c = numComponents - 1; c >= 0; c--) {
+            // The first component with a number is used.
+            if (numbers[c] >= 0) {
+                fComponentsByNumber[numbers[c]] = c;
+            }
+        }
+        
+        int numPins = fComponentPinStarts[numComponents];
+        fPinComponents = new int[numPins];
+        for (int c = 0; c < numComponents; c++) {
+            Arrays.fill(fPinComponents,
+                fComponentPinStarts[c], fComponentPinStarts[c + 1], c);
+        }
+        fPinNets = new int[numPins];
+        Arrays.fill(fPinNets, NONE);
+        
+        int numNets = nets.getNumSubItems();
+        fNetNames = new String[numNets];
+        fNetPinStarts = new int[numNets + 1];
+        fNetSegmentStarts = new int[numNets + 1];
+        DiptraceIntList netPins = new DiptraceIntList();
+        DiptraceIntList segmentPins1 = new DiptraceIntList();
+        DiptraceIntList segmentPins2 = new DiptraceIntList();
+        for (int n = 0; n < numNets; n++) {
+            DiptraceItem net = nets.getChildren().get(n);
+            fNetNames[n] = DiptraceProject.getNetName(net);
+            fNetsByName.putIfAbsent(fNetNames[n], n);
+            addNetPins(net, n, netPins);
+            addNetSegments(net, segmentPins1, segmentPins2);
+            fNetPinStarts[n + 1] = netPins.size();
+            fNetSegmentStarts[n + 1] = segmentPins1.size();
+        }
+        fNetPins = netPins.toArray();
+        fSegmentPins1 = segmentPins1.toArray();
+        fSegmentPins2 = segmentPins2.toArray();
+        
+        fPinGroups = findGroups(numPins, fSegmentPins1, fSegmentPins2);
+    }
+    
+    /**
+     * Get the number of components.
+     * @return the number of components
+     */
+    public int getNumComponents() {
+        return fRefDes.length;
+    }
+    
+    /**
+     * Get a component by RefDes.
+     * @param refDes the RefDes
+     * @return the component or NONE if there is no such component
+     */
+    public int getComponent(final String refDes) {
+        Integer component = fComponentsByRefDes.get(refDes);
+        if (component == null) {
+            return NONE;
+        }
+        return component;
+    }
+    
+    /**
+     * Get a component by the number of the component in the file.
+     * @param number the number
+     * @return the component or NONE if there is no such component
+     */
+    public int getComponentByNumber(final int number) {
+        if ((number < 0) || (number >= fComponentsByNumber.length)) {
+            return NONE;
+        }
+        return fComponentsByNumber[number];
+    }
+    
+    /**
+     * Get the RefDes of a component.
+     * @param component the component
+     * @return the RefDes
+     */
+    public String getRefDes(final int component) {
+        return fRefDes[component];
+    }
+    
+    /**
+     * Get the number of pins of a component.
+     * @param component the component
+     * @return the number of pins
+     */
+    public int getNumPins(final int component) {
+        return fComponentPinStarts[component + 1]
+            - fComponentPinStarts[component];
+    }
+    
+    /**
+     * Get a pin of a component.
+     * @param component the component
+     * @param pinNo the number of the pad on the component
+     * @return the pin or NONE if the component has no such pad
+     */
+    public int getPin(final int component, final int pinNo) {
+        if ((component < 0) || (pinNo < 0)
+            || (pinNo >= getNumPins(component))) {
+            
+            return NONE;
+        }
+        return fComponentPinStarts[component] + pinNo;
+    }
+    
+    /**
+     * Get the component of a pin.
+     * @param pin the pin
+     * @return the component
+     */
+    public int getPinComponent(final int pin) {
+        return fPinComponents[pin];
+    }
+    
+    /**
+     * Get the number of the pad of a pin on its component.
+     * @param pin the pin
+     * @return the pin number
+     */
+    public int getPinNo(final int pin) {
+        return pin - fComponentPinStarts[fPinComponents[pin]];
+    }
+    
+    /**
+     * Get the net of a pin.
+     * @param pin the pin
+     * @return the net or NONE if the pin is not on a net
+     */
+    public int getPinNet(final int pin) {
+        return fPinNets[pin];
+    }
+    
+    /**
+     * Get the number of nets.
+     * @return the number of nets
+     */
+    public int getNumNets() {
+        return fNetNames.length;
+    }
+    
+    /**
+     * Get a net by name.
+     * @param name the name
+     * @return the net or NONE if there is no such net
+     */
+    public int getNet(final String name) {
+        Integer net = fNetsByName.get(name);
+        if (net == null) {
+            return NONE;
+        }
+        return net;
+    }
+    
+    /**
+     * Get the name of a net.
+     * @param net the net
+     * @return the name
+     */
+    public String getNetName(final int net) {
+        return fNetNames[net];
+    }
+    
+    /**
+     * Get the pins on a net.
+     * @param net the net
+     * @return the pins
+     */
+    public int[] getNetPins(final int net) {
+        return Arrays.copyOfRange(
+            fNetPins, fNetPinStarts[net], fNetPinStarts[net + 1]);
+    }
+    
+    /**
+     * Get the nets that a component is connected to.
+     * @param component the component
+     * @return the nets, each net once, in the order of the pins
+     */
+    public int[] getComponentNets(final int component) {
+        int start = fComponentPinStarts[component];
+        int end = fComponentPinStarts[component + 1];
+        int[] nets = new int[end - start];
+        int numNets = 0;
+        for (int pin = start; pin < end; pin++) {
+            int net = fPinNets[pin];
+            if ((net != NONE) && !contains(nets, numNets, net)) {
+                nets[numNets++] = net;
+            }
+        }
+        return Arrays.copyOf(nets, numNets);
+    }
+    
+    /**
+     * Get the number of segments of a net.
+     * @param net the net
+     * @return the number of segments
+     */
+    public int getNumSegments(final int net) {
+        return fNetSegmentStarts[net + 1] - fNetSegmentStarts[net];
+    }
+    
+    /**
+     * Get the first pin of a segment.
+     * @param net the net
+     * @param segment the segment in the net
+     * @return the pin or NONE if the end is not on a pin
+     */
+    public int getSegmentPin1(final int net, final int segment) {
+        return fSegmentPins1[fNetSegmentStarts[net] + segment];
+    }
+    
+    /**
+     * Get the second pin of a segment.
+     * @param net the net
+     * @param segment the segment in the net
+     * @return the pin or NONE if the end is not on a pin
+     */
+    public int getSegmentPin2(final int net, final int segment) {
+        return fSegmentPins2[fNetSegmentStarts[net] + segment];
+    }
+    
+    /**
+     * Get whenether two pins are on the same net.
+     * @param pin1 the first pin
+     * @param pin2 the second pin
+     * @return true if the pins are on the same net
+     */
+    public boolean isConnected(final int pin1, final int pin2) {
+        return (fPinNets[pin1] != NONE) && (fPinNets[pin1] == fPinNets[pin2]);
+    }
+    
+    /**
+     * Get whenether two pins are connected by segments.
+     * @param pin1 the first pin
+     * @param pin2 the second pin
+     * @return true if the pins are connected by segments
+     */
+    public boolean isRouted(final int pin1, final int pin2) {
+        return fPinGroups[pin1] == fPinGroups[pin2];
+    }
+    
+    /**
+     * Add the pins of a net. The pins are listed as (pt component pad) in
+     * the Component item of the net.
+     * @param net the item of the net
+     * @param netIndex the net
+     * @param netPins the pins of all the nets
+     */
+    private void addNetPins(
+        final DiptraceItem net,
+        final int netIndex,
+        final DiptraceIntList netPins) {
+        
+        DiptraceItem pins = net.getSubItem("Component");
+        if (pins == null) {
+            return;
+        }
+        for (DiptraceItem pt : pins.getChildren()) {
+            DiptraceAttributeList attributes
+                = ((DiptraceGenericItem) pt).getAttributes();
+            int pin = getPin(
+                getComponentByNumber((int) attributes.getNumber(0)),
+                (int) attributes.getNumber(1));
+            if (pin != NONE) {
+                netPins.add(pin);
+                fPinNets[pin] = netIndex;
+            }
+        }
+    }
+    
+    /**
+     * Add the segments of a net. The first end of a line is on the pad
+     * ConnectL1 of the component Connect1 and the second end is on the pad
+     * ConnectP2 of the component Connect2.
+     * @param net the item of the net
+     * @param segmentPins1 the first pins of all the segments
+     * @param segmentPins2 the second pins of all the segments
+     */
+    private void addNetSegments(
+        final DiptraceItem net,
+        final DiptraceIntList segmentPins1,
+        final DiptraceIntList segmentPins2) {
+        
+        DiptraceItem lines = net.getSubItem("Lines");
+        if (lines == null) {
+            return;
+        }
+        for (DiptraceItem line : lines.getChildren()) {
+            segmentPins1.add(getPin(
+                getComponentByNumber(getInt(line, "Connect1")),
+                getInt(line, "ConnectL1")));
+            segmentPins2.add(getPin(
+                getComponentByNumber(getInt(line, "Connect2")),
+                getInt(line, "ConnectP2")));
+        }
+    }
+    
+    /**
+     * Find the routed group of each pin with union find.
+     * @param numPins the number of pins
+     * @param pins1 the first pin of each segment
+     * @param pins2 the second pin of each segment
+     * @return the group of each pin, which is one of the pins in the group
+     */
+    private static int[] findGroups(
+        final int numPins,
+        final int[] pins1,
+        final int[] pins2) {
+        
+        int[] groups = new int[numPins];
+        for (int pin = 0; pin < numPins; pin++) {
+            groups[pin] = pin;
+        }
+        for (int i = 0; i < pins1.length; i++) {
+            if ((pins1[i] != NONE) && (pins2[i] != NONE)) {
+                groups[findGroup(groups, pins1[i])]
+                    = findGroup(groups, pins2[i]);
+            }
+        }
+        for (int pin = 0; pin < numPins; pin++) {
+            groups[pin] = findGroup(groups, pin);
+        }
+        return groups;
+    }
+    
+    /**
+     * Find the group of a pin and shorten the path to the group on the way.
+     * @param groups the parent of each pin
+     * @param pin the pin
+     * @return the group
+     */
+    private static int findGroup(final int[] groups, final int pin) {
+        int group = pin;
+        while (groups[group] != group) {
+            groups[group] = groups[groups[group]];
+            group = groups[group];
+        }
+        return group;
+    }
+    
+    /**
+     * Get the number of pads of a pcb component. The pads are numbered from
+     * zero.
+     * @param component the component
+     * @return the number of pads
+     */
+    private static int getNumPads(final DiptraceItem component) {
+        DiptraceItem pads = component.getSubItem("Pads");
+        if (pads == null) {
+            return 0;
+        }
+        int numPads = 0;
+        for (DiptraceItem pad : pads.getChildren()) {
+            int pinNo = (int) ((DiptraceGenericItem) pad).getAttributes()
+                .getNumber(0);
+            numPads = Math.max(numPads, pinNo + 1);
+        }
+        return numPads;
+    }
+    
+    /**
+     * Get the integer of a sub item like (Number 3).
+     * @param item the item
+     * @param identifier the identifier of the sub item
+     * @return the integer or NONE if there is no such sub item
+     */
+    private static int getInt(
+        final DiptraceItem item,
+        final String identifier) {
+        
+        DiptraceGenericItem subItem
+            = (DiptraceGenericItem) item.getSubItem(identifier);
+        if ((subItem == null) || subItem.getAttributes().isEmpty()) {
+            return NONE;
+        }
+        return (int) subItem.getAttributes().getNumber(0);
+    }
+    
+    /**
+     * Get whenether an array has a value in its first elements.
+     * @param array the array
+     * @param size the number of elements to look at
+     * @param value the value
+     * @return true if the value is found
+     */
+    private static boolean contains(
+        final int[] array,
+        final int size,
+        final int value) {
+        
+        for (int i = 0; i < size; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+}
@@ -0,0 +1,340 @@
+package javadiptraceasciilib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the differences between two trees, for example the pcb of a project
+ * before and after it's changed, or two revisions of a file.
+ * <P>
+ * The sub items of two items that are compared are matched in three steps.
+ * The components are matched by RefDes and the nets by name. The other sub
+ * items are first matched with an identical sub item by the content hash,
+ * and the sub items that are left are matched in order by identifier. Each
+ * step is a hash join, so no sub item is compared with all the other sub
+ * items. Matched items with the same content hash are skipped, so only the
+ * parts of the trees that differ are walked.
+ */
+public final class DiptraceDiff {
+    
+    /**
+     * The identifier of the section with the components.
+     */
+    private static final String COMPONENTS = "Components";
+    
+    /**
+     * The identifier of the section with the nets.
+     */
+    private static final String NETS = "Nets";
+    
+    /**
+     * The value of a sub item that is not matched.
+     */
+    private static final int NONE = -1;
+    
+    /**
+     * Initializes a DiptraceDiff object. There are only static methods in
+     * this class.
+     */
+    private DiptraceDiff() {
+    }
+    
+    /**
+     * Find the differences between the schematics of two projects.
+     * @param before the first project
+     * @param after the second project
+     * @return the differences
+     */
+    public static List<DiptraceChange> compareSchematics(
+        final DiptraceProject before,
+        final DiptraceProject after) {
+        
+        return compare(
+            (DiptraceItem) before.getSchematicsRoot(),
+            (DiptraceItem) after.getSchematicsRoot());
+    }
+    
+    /**
+     * Find the differences between the pcbs of two projects.
+     * @param before the first project
+     * @param after the second project
+     * @return the differences
+     */
+    public static List<DiptraceChange> comparePCB(
+        final DiptraceProject before,
+        final DiptraceProject after) {
+        
+        return compare(
+            (DiptraceItem) before.getPCBRoot(),
+            (DiptraceItem) after.getPCBRoot());
+    }
+    
+    /**
+     * Find the differences between two trees. The trees are walked in a
+     * loop with a stack of the matched items that differ.
+     * @param before the root of the first tree
+     * @param after the root of the second tree
+     * @return the differences
+     */
+    static List<DiptraceChange> compare(
+        final DiptraceItem before,
+        final DiptraceItem after) {
+        
+        List<DiptraceChange> changes = new ArrayList<>();
+        ArrayDeque<Pair> stack = new ArrayDeque<>();
+        stack.push(new Pair(before, after, ""));
+        while (!stack.isEmpty()) {
+            Pair pair = stack.pop();
+            if (pair.fBefore.contentEquals(pair.fAfter)) {
+                continue;
+            }
+            
+            String beforeText = pair.fBefore.toString();
+            String afterText = pair.fAfter.toString();
+            if (!beforeText.equals(afterText)) {
+                changes.add(new DiptraceChange(DiptraceChangeType.CHANGED,
+                    pair.fPath, beforeText, afterText));
+            }
+            
+            List<Pair> pairs = compareSubItems(pair, changes);
+            
+            // Push backwards to walk the sub items in order.
+            for (int i = pairs.size() - 1; i >= 0; i--) {
+                stack.push(pairs.get(i));
+            }
+        }
+        return changes;
+    }
+    
+    /**
+     * Match the sub items of two items. The sub items that are not matched
+     * are added to the differences as added or removed.
+     * @param pair the items
+     * @param changes the differences
+     * @return the matched sub items that differ
+     */
+    private static List<Pair> compareSubItems(
+        final Pair pair,
+        final List<DiptraceChange> changes) {
+        
+        List<DiptraceItem> beforeItems = pair.fBefore.getChildren();
+        List<DiptraceItem> afterItems = pair.fAfter.getChildren();
+        String[] beforeNames = getNames(pair.fBefore, beforeItems);
+        String[] afterNames = getNames(pair.fAfter, afterItems);
+        boolean keyed = isKeyed(pair.fBefore);
+        
+        int[] matches = new int[beforeItems.size()];
+        boolean[] matched = new boolean[afterItems.size()];
+        
+        if (keyed) {
+            // The names of components and nets are unique.
+            Map<String, Integer> afterByName = new HashMap<>();
+            for (int i = 0; i < afterNames.length; i++) {
+                afterByName.put(afterNames[i], i);
+            }
+            for (int i = 0; i < beforeNames.length; i++) {
+                matches[i] = match(afterByName.get(beforeNames[i]), matched);
+            }
+        } else {
+            Map<Long, ArrayDeque<Integer>> afterByHash = new HashMap<>();
+            for (int i = 0; i < afterItems.size(); i++) {
+                afterByHash.computeIfAbsent(
+                    afterItems.get(i).getContentHash(),
+                    (key) -> new ArrayDeque<>()).add(i);
+            }
+            for (int i = 0; i < beforeItems.size(); i++) {
+                matches[i] = match(
+                    afterByHash.get(beforeItems.get(i).getContentHash()),
+                    matched);
+            }
+            
+            Map<DiptraceSymbol, ArrayDeque<Integer>> afterBySymbol
+                = new HashMap<>();
+            for (int i = 0; i < afterItems.size(); i++) {
+                if (!matched[i]) {
+                    afterBySymbol.computeIfAbsent(
+                        afterItems.get(i).getSymbol(),
+                        (key) -> new ArrayDeque<>()).add(i);
+                }
+            }
+            for (int i = 0; i < beforeItems.size(); i++) {
+                if (matches[i] == NONE) {
+                    matches[i] = match(
+                        afterBySymbol.get(beforeItems.get(i).getSymbol()),
+                        matched);
+                }
+            }
+        }
+        
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < beforeItems.size(); i++) {
+            String path = getPath(pair.fPath, beforeNames[i]);
+            if (matches[i] == NONE) {
+                changes.add(new DiptraceChange(DiptraceChangeType.REMOVED,
+                    path, beforeItems.get(i).toString(), null));
+            } else {
+                pairs.add(new Pair(beforeItems.get(i),
+                    afterItems.get(matches[i]), path));
+            }
+        }
+        for (int i = 0; i < afterItems.size(); i++) {
+            if (!matched[i]) {
+                changes.add(new DiptraceChange(DiptraceChangeType.ADDED,
+                    getPath(pair.fPath, afterNames[i]),
+                    null, afterItems.get(i).toString()));
+            }
+        }
+        return pairs;
+    }
+    
+    /**
+     * Get the path of a sub item.
+     * @param path the path of the item, or an empty string for the root
+     * @param name the name of the sub item
+     * @return the path of the sub item
+     */
+    private static String getPath(final String path, final String name) {
+        if (path.isEmpty()) {
+            return name;
+        }
+        return path + "/" + name;
+    }
+    
+    /**
+     * Take a sub item that is not matched yet.
+     * @param candidate the position of the sub item, or null
+     * @param matched whenether each sub item is matched
+     * @return the position or NONE if the sub item is already matched
+     */
+    private static int match(final Integer candidate, final boolean[] matched) {
+        if ((candidate == null) || matched[candidate]) {
+            return NONE;
+        }
+        matched[candidate] = true;
+        return candidate;
+    }
+    
+    /**
+     * Take the first sub item in a queue that is not matched yet.
+     * @param candidates the positions of the sub items, or null
+     * @param matched whenether each sub item is matched
+     * @return the position or NONE if all the sub items are matched
+     */
+    private static int match(
+        final ArrayDeque<Integer> candidates,
+        final boolean[] matched) {
+        
+        if (candidates == null) {
+            return NONE;
+        }
+        while (!candidates.isEmpty()) {
+            int candidate = candidates.poll();
+            if (!matched[candidate]) {
+                matched[candidate] = true;
+                return candidate;
+            }
+        }
+        return NONE;
+    }
+    
+    /**
+     * Get whenether the sub items of an item are components or nets, which
+     * are matched by RefDes or name.
+     * @param item the item
+     * @return true if the item is the components or the nets section
+     */
+    private static boolean isKeyed(final DiptraceItem item) {
+        return (item.getParent() != null)
+            && (item.getParent().getParent() instanceof DiptraceRootItem)
+            && (COMPONENTS.equals(item.getIdentifier())
+                || NETS.equals(item.getIdentifier()));
+    }
+    
+    /**
+     * Get the names of the sub items in the paths. The names of components
+     * and nets have the RefDes or the name. A schematics component with
+     * several parts has the number of the part after the RefDes. Other sub
+     * items have their position among the sub items with the same
+     * identifier if there are more than one of them.
+     * @param item the item
+     * @param subItems the sub items of the item
+     * @return the names
+     */
+    private static String[] getNames(
+        final DiptraceItem item,
+        final List<DiptraceItem> subItems) {
+        
+        String[] names = new String[subItems.size()];
+        Map<String, Integer> counts = new HashMap<>();
+        boolean keyed = isKeyed(item);
+        for (int i = 0; i < names.length; i++) {
+            DiptraceItem subItem = subItems.get(i);
+            String key = subItem.getIdentifier();
+            if (keyed && COMPONENTS.equals(item.getIdentifier())) {
+                key = DiptraceProject.getRefDes(subItem);
+            } else if (keyed) {
+                key = DiptraceProject.getNetName(subItem);
+            }
+            counts.merge(key, 1, Integer::sum);
+            names[i] = key;
+        }
+        
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            String key = names[i];
+            String identifier = subItems.get(i).getIdentifier();
+            int position = positions.merge(key, 1, Integer::sum);
+            if (keyed && (counts.get(key) > 1)) {
+                names[i] = String.format(
+                    "%s[%s#%d]", identifier, key, position);
+            } else if (keyed) {
+                names[i] = String.format("%s[%s]", identifier, key);
+            } else if (counts.get(key) > 1) {
+                names[i] = String.format("%s[%d]", identifier, position - 1);
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * Two items that are matched, and the path of the sub items.
+     */
+    private static final class Pair {
+        
+        /**
+         * The item in the first tree.
+         */
+        private final DiptraceItem fBefore;
+        
+        /**
+         * The item in the second tree.
+         */
+        private final DiptraceItem fAfter;
+        
+        /**
+         * The path of the items, or an empty string for the roots.
+         */
+        private final String fPath;
+        
+        /**
+         * Initializes a Pair object.
+         * @param before the item in the first tree
+         * @param after the item in the second tree
+         * @param path the path of the items
+         */
+        Pair(
+            final DiptraceItem before,
+            final DiptraceItem after,
+            final String path) {
+            
+            this.fBefore = before;
+            this.fAfter = after;
+            this.fPath = path;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,475 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A parsed DipTrace ascii file that is kept in flat arrays instead of in a
+ * tree of objects. Each item in the file is a node, which is an index in
+ * the arrays. The nodes are numbered in the order they are in the file and
+ * node 0 is the root. The attributes of all the nodes are packed in one
+ * DiptraceAttributeList.
+ * <P>
+ * The document is never changed after it's parsed. The DiptraceItem objects
+ * are created from the document one level at a time the first time they are
+ * needed, and the items that are never needed are written straight from the
+ * document.
+ */
+final class DiptraceDocument {
+    
+    /**
+     * The root node.
+     */
+    static final int ROOT = 0;
+    
+    /**
+     * The value of a missing parent, child or sibling.
+     */
+    static final int NONE = -1;
+    
+    /**
+     * The initial number of nodes.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+    
+    /**
+     * The parent of each node.
+     */
+    private int[] fParents = new int[INITIAL_CAPACITY];
+    
+    /**
+     * The first child of each node.
+     */
+    private int[] fFirstChildren = new int[INITIAL_CAPACITY];
+    
+    /**
+     * The next sibling of each node.
+     */
+    private int[] fNextSiblings = new int[INITIAL_CAPACITY];
+    
+    /**
+     * The id of the symbol of the identifier of each node.
+     */
+    private int[] fSymbolIds = new int[INITIAL_CAPACITY];
+    
+    /**
+     * The position of the first attribute of each node. The attributes of a
+     * node end where the attributes of the next node start, since all the
+     * attributes of a node are read before its first child.
+     */
+    private int[] fAttributeStarts = new int[INITIAL_CAPACITY];
+    
+    /**
+     * Whenether each node may have sub items.
+     */
+    private boolean[] fMayHaveSubItems = new boolean[INITIAL_CAPACITY];
+    
+    /**
+     * The attributes of all the nodes.
+     */
+    private final DiptraceAttributeList fAttributes
+        = new DiptraceAttributeList();
+    
+    /**
+     * The number of nodes.
+     */
+    private int fSize;
+    
+    /**
+     * Initializes a DiptraceDocument object with only the root node.
+     */
+    private DiptraceDocument() {
+        addNode(NONE, DiptraceSymbolTable.GLOBAL.intern("root"));
+    }
+    
+    /**
+     * Parse a DipTrace ascii file.
+     * @param tokenizer the tokenizer that parses the file
+     * @return the document
+     * @throws IOException on any I/O error
+     */
+    static DiptraceDocument parse(final DiptraceTokenizer tokenizer)
+        throws IOException {
+        
+        DiptraceDocument document = new DiptraceDocument();
+        document.parseNodes(tokenizer);
+        return document;
+    }
+    
+    /**
+     * Get the number of nodes.
+     * @return the number of nodes
+     */
+    int size() {
+        return fSize;
+    }
+    
+    /**
+     * Get the parent of a node.
+     * @param node the node
+     * @return the parent or NONE if the node is the root
+     */
+    int getParent(final int node) {
+        return fParents[node];
+    }
+    
+    /**
+     * Get the first child of a node.
+     * @param node the node
+     * @return the child or NONE if the node has no children
+     */
+    int getFirstChild(final int node) {
+        return fFirstChildren[node];
+    }
+    
+    /**
+     * Get the next sibling of a node.
+     * @param node the node
+     * @return the sibling or NONE if the node is the last child
+     */
+    int getNextSibling(final int node) {
+        return fNextSiblings[node];
+    }
+    
+    /**
+     * Get the symbol of the identifier of a node.
+     * @param node the node
+     * @return the symbol
+     */
+    DiptraceSymbol getSymbol(final int node) {
+        return DiptraceSymbolTable.GLOBAL.get(fSymbolIds[node]);
+    }
+    
+    /**
+     * Get the first child of a node with an identifier.
+     * @param node the node
+     * @param symbol the symbol of the identifier
+     * @return the child or NONE if there is no such child
+     */
+    int findChild(final int node, final DiptraceSymbol symbol) {
+        int child = fFirstChildren[node];
+        while ((child != NONE) && (fSymbolIds[child] != symbol.getId())) {
+            child = fNextSiblings[child];
+        }
+        return child;
+    }
+    
+    /**
+     * Get the position of the first attribute of a node in the list of
+     * attributes.
+     * @param node the node
+     * @return the position
+     */
+    int getAttributeStart(final int node) {
+        return fAttributeStarts[node];
+    }
+    
+    /**
+     * Get the position after the last attribute of a node in the list of
+     * attributes.
+     * @param node the node
+     * @return the position
+     */
+    int getAttributeEnd(final int node) {
+        if (node + 1 < fSize) {
+            return fAttributeStarts[node + 1];
+        }
+        return fAttributes.size();
+    }
+    
+    /**
+     * Get the attributes of all the nodes. The list must not be changed.
+     * @return the attributes
+     */
+    DiptraceAttributeList getAttributes() {
+        return fAttributes;
+    }
+    
+    /**
+     * Get the sub items of a node, which are created when they are needed.
+     * @param node the node
+     * @return the sub items or null if the node has no children
+     */
+    DiptraceLazySubItems getSubItems(final int node) {
+        if (fFirstChildren[node] == NONE) {
+            return null;
+        }
+        return new SubItems(node);
+    }
+    
+    /**
+     * Parse the nodes below the root. The nodes are parsed in a loop
+     * instead of by recursion, so a deeply nested file doesn't overflow the
+     * stack. The node whose children are parsed is the parent of the next
+     * node, and the parent of a node is the node to go back to when the
+     * node ends.
+     * @param tokenizer the tokenizer that parses the file
+     * @throws IOException on any I/O error
+     */
+    private void parseNodes(final DiptraceTokenizer tokenizer)
+        throws IOException {
+        
+        int node = ROOT;
+        int lastChild = NONE;
+        while (true) {
+            DiptraceToken token = tokenizer.previewNextToken();
+            if ((token != null)
+                && (token.getType() == DiptraceTokenType.LEFT_PARENTHESES)) {
+                
+                // Eat the token
+                tokenizer.nextToken();
+                
+                token = tokenizer.nextToken();
+                if (token.getType() != DiptraceTokenType.IDENTIFIER) {
+                    throw new RuntimeException(
+                        String.format(
+                            "Token is not an identifier: Type: %s, %s%n",
+                            token.getType().name(),
+                            token.getValue()));
+                }
+                
+                int child = addNode(
+                    node, DiptraceSymbolTable.GLOBAL.intern(token.getValue()));
+                if (lastChild == NONE) {
+                    fFirstChildren[node] = child;
+                } else {
+                    fNextSiblings[lastChild] = child;
+                }
+                
+                if (parseAttributes(tokenizer, child)) {
+                    node = child;
+                    lastChild = NONE;
+                    continue;
+                }
+                lastChild = child;
+            } else {
+                // The children of the node have ended.
+                if (node == ROOT) {
+                    return;
+                }
+                lastChild = node;
+                node = fParents[node];
+            }
+            
+            // A child of the node has ended.
+            if ((tokenizer.previewNextToken() == null) && (node == ROOT)) {
+                return;
+            }
+            
+            tokenizer.eatToken(DiptraceTokenType.RIGHT_PARENTHESES);
+        }
+    }
+    
+    /**
+     * Parse the attributes of a node the same way
+     * DiptraceGenericItem.parseAttributes() does.
+     * @param tokenizer the tokenizer that parses the file
+     * @param node the node
+     * @return true if the node has children that must be parsed now
+     * @throws IOException on any I/O error
+     */
+    //CHECKSTYLE.OFF: InnerAssignment - Allow assignment in while loop
+    private boolean parseAttributes(
+        final DiptraceTokenizer tokenizer,
+        final int node)
+        throws IOException {
+        
+        DiptraceToken token;
+        while (((token = tokenizer.previewNextToken()) != null)
+            && (token.getType() != DiptraceTokenType.LEFT_PARENTHESES)
+            && (token.getType() != DiptraceTokenType.RIGHT_PARENTHESES)) {
+            
+            fAttributes.addToken(tokenizer.nextToken());
+        }
+        
+        if (token == null) {
+            return false;
+        }
+        
+        if (token.getType() == DiptraceTokenType.LEFT_PARENTHESES) {
+            fMayHaveSubItems[node] = true;
+            return true;
+        }
+        fMayHaveSubItems[node] = token.getPrecededWithNewline();
+        return false;
+    }
+    //CHECKSTYLE.ON: InnerAssignment - Allow assignment in while loop
+    
+    /**
+     * Add a node after the other nodes. The node is not linked to its
+     * parent.
+     * @param parent the parent
+     * @param symbol the symbol of the identifier
+     * @return the node
+     */
+    private int addNode(final int parent, final DiptraceSymbol symbol) {
+        if (fSize == fParents.length) {
+            int capacity = fSize * 2;
+            fParents = Arrays.copyOf(fParents, capacity);
+            fFirstChildren = Arrays.copyOf(fFirstChildren, capacity);
+            fNextSiblings = Arrays.copyOf(fNextSiblings, capacity);
+            fSymbolIds = Arrays.copyOf(fSymbolIds, capacity);
+            fAttributeStarts = Arrays.copyOf(fAttributeStarts, capacity);
+            fMayHaveSubItems = Arrays.copyOf(fMayHaveSubItems, capacity);
+        }
+        int node = fSize;
+        fParents[node] = parent;
+        fFirstChildren[node] = NONE;
+        fNextSiblings[node] = NONE;
+        fSymbolIds[node] = symbol.getId();
+        fAttributeStarts[node] = fAttributes.size();
+        fSize++;
+        return node;
+    }
+    
+    /**
+     * Create the item of a node. The sub items of the item are created when
+     * they are needed.
+     * @param node the node
+     * @param parent the parent of the new item
+     * @return the item
+     */
+    private DiptraceItem createItem(final int node, final DiptraceItem parent) {
+        DiptraceGenericItem item
+            = parent.createItemByIdentifier(getSymbol(node));
+        item.setMayHaveSubItems(fMayHaveSubItems[node]);
+        item.getAttributes().addAll(
+            fAttributes, fAttributeStarts[node], getAttributeEnd(node));
+        item.setLazySubItems(getSubItems(node));
+        return item;
+    }
+    
+    /**
+     * Write the identifier and the attributes of a node the same way
+     * DiptraceGenericItem.writeHead() does.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the node
+     * @param node the node
+     * @throws IOException on any I/O error
+     */
+    private void writeHead(
+        final Writer writer,
+        final int indent,
+        final int node)
+        throws IOException {
+        
+        DiptraceItem.writeIndent(writer, indent);
+        writer.append("(").append(getSymbol(node).getName());
+        
+        for (int i = fAttributeStarts[node]; i < getAttributeEnd(node); i++) {
+            writer.append(" ");
+            if (fAttributes.getKind(i)
+                == DiptraceAttributeList.KIND_QUOTED_STRING) {
+                
+                writer.append("\"").append(fAttributes.getText(i)).append("\"");
+            } else {
+                fAttributes.writeText(writer, i);
+            }
+        }
+    }
+    
+    /**
+     * Write the children of a node and all the nodes below them. The nodes
+     * are written in a loop that follows the links between the nodes
+     * instead of by recursion, so no stack is needed.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the children
+     * @param node the node
+     * @throws IOException on any I/O error
+     */
+    private void writeChildren(
+        final Writer writer,
+        final int indent,
+        final int node)
+        throws IOException {
+        
+        int childIndent = indent;
+        int child = fFirstChildren[node];
+        while (child != NONE) {
+            writeHead(writer, childIndent, child);
+            
+            if (fFirstChildren[child] != NONE) {
+                writer.append(System.lineSeparator());
+                childIndent += DiptraceItem.INDENT_WIDTH;
+                child = fFirstChildren[child];
+                continue;
+            }
+            
+            if (fMayHaveSubItems[child]) {
+                writer.append(System.lineSeparator());
+                DiptraceItem.writeIndent(writer, childIndent);
+            }
+            writer.append(")").append(System.lineSeparator());
+            
+            // End the parents whose last child has been written.
+            while ((fNextSiblings[child] == NONE) && (childIndent > indent)) {
+                child = fParents[child];
+                childIndent -= DiptraceItem.INDENT_WIDTH;
+                DiptraceItem.writeIndent(writer, childIndent);
+                writer.append(")").append(System.lineSeparator());
+            }
+            child = fNextSiblings[child];
+        }
+    }
+    
+    /**
+     * The sub items of a node that are not created yet.
+     */
+    private final class SubItems implements DiptraceLazySubItems {
+        
+        /**
+         * The node.
+         */
+        private final int fNode;
+        
+        /**
+         * Initializes a SubItems object.
+         * @param node the node
+         */
+        SubItems(final int node) {
+            this.fNode = node;
+        }
+        
+        /**
+         * Create the items of the children of the node and add them to an
+         * item.
+         * @param item the item
+         */
+        @Override
+        public void addSubItemsTo(final DiptraceItem item) {
+            for (int child = fFirstChildren[fNode];
+                child != NONE;
+                child = fNextSiblings[child]) {
+                
+                item.appendSubItem(createItem(child, item));
+            }
+        }
+        
+        /**
+         * Write the children of the node.
+         * @param writer the writer that writes to the Diptrace ascii file
+         * @param indent the number of spaces to indent the children
+         * @throws IOException on any I/O error
+         */
+        @Override
+        public void write(final Writer writer, final int indent)
+            throws IOException {
+            
+            writeChildren(writer, indent, fNode);
+        }
+        
+        /**
+         * Get the sub items of a copy of the item. The document is never
+         * changed, so the copy can use the same node.
+         * @param item the copy
+         * @return this object
+         */
+        @Override
+        public DiptraceLazySubItems shareWith(final DiptraceItem item) {
+            return this;
+        }
+        
+    }
+    
+}
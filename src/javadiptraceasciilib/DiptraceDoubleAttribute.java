@@ -1,59 +1,48 @@
 package javadiptraceasciilib;
 
-import java.util.Locale;
-
 /**
- * A Diptrace double attribute.
+ * A Diptrace double attribute. This object is a view of one attribute in a
+ * DiptraceAttributeList.
  */
 final class DiptraceDoubleAttribute implements DiptraceAttribute {
     
     /**
-     * The value as a string.
-     */
-    private String fStringValue;
-    
-    /**
-     * Is the value an integer?
+     * The list that has the attribute.
      */
-    private boolean fIsInteger;
+    private final DiptraceAttributeList fList;
     
     /**
-     * The value as a integer.
+     * The position of the attribute in the list.
      */
-    private int fIntValue;
-    
-    /**
-     * The value as a double.
-     */
-    private double fDoubleValue;
+    private final int fIndex;
     
     /**
      * Initialize a DiptraceDoubleAttribute object.
-     * @param stringValue the value as a string
-     * @param intValue the value as an integer
+     * @param list the list that has the attribute
+     * @param index the position of the attribute in the list
      */
     DiptraceDoubleAttribute(
-        final String stringValue,
-        final int intValue) {
+        final DiptraceAttributeList list,
+        final int index) {
         
-        this.fIsInteger = true;
-        this.fStringValue = stringValue;
-        this.fIntValue = intValue;
-        this.fDoubleValue = intValue;
+        this.fList = list;
+        this.fIndex = index;
     }
     
     /**
-     * Initialize a DiptraceDoubleAttribute object.
-     * @param stringValue the value as a string
-     * @param doubleValue the value as a double
+     * Get the list that has the attribute.
+     * @return the list
      */
-    DiptraceDoubleAttribute(
-        final String stringValue,
-        final double doubleValue) {
-        
-        this.fIsInteger = false;
-        this.fStringValue = stringValue;
-        this.fDoubleValue = doubleValue;
+    DiptraceAttributeList getList() {
+        return fList;
+    }
+    
+    /**
+     * Get the position of the attribute in the list.
+     * @return the position
+     */
+    int getIndex() {
+        return fIndex;
     }
     
     /**
@@ -62,13 +51,9 @@ final class DiptraceDoubleAttribute implements DiptraceAttribute {
      */
     @Override
     public DiptraceAttribute duplicate() {
-        if (fIsInteger) {
-            return new DiptraceDoubleAttribute(
-                fStringValue, fIntValue);
-        } else {
-            return new DiptraceDoubleAttribute(
-                fStringValue, fDoubleValue);
-        }
+        DiptraceAttributeList list = new DiptraceAttributeList();
+        list.add(this);
+        return list.get(0);
     }
     
     /**
@@ -77,7 +62,7 @@ final class DiptraceDoubleAttribute implements DiptraceAttribute {
      */
     @Override
     public String getString() {
-        return fStringValue;
+        return fList.getText(fIndex);
     }
     
     /**
@@ -86,7 +71,7 @@ final class DiptraceDoubleAttribute implements DiptraceAttribute {
      */
     @Override
     public String getFormattedString() {
-        return fStringValue;
+        return fList.getText(fIndex);
     }
     
     /**
@@ -94,7 +79,7 @@ final class DiptraceDoubleAttribute implements DiptraceAttribute {
      * @return the attribute
      */
     public int getInt() {
-        return fIntValue;
+        return (int) Math.round(fList.getNumber(fIndex));
     }
     
     /**
@@ -102,7 +87,7 @@ final class DiptraceDoubleAttribute implements DiptraceAttribute {
      * @return the attribute
      */
     public double getDouble() {
-        return fDoubleValue;
+        return fList.getNumber(fIndex);
     }
     
     /**
@@ -111,13 +96,11 @@ final class DiptraceDoubleAttribute implements DiptraceAttribute {
      * @throws NumberFormatException if the attribute is a double
      */
     public void setInt(final int value) {
-        if (!fIsInteger) {
+        if (fList.getKind(fIndex) != DiptraceAttributeList.KIND_INTEGER) {
             throw new NumberFormatException(
                 "This value is a double");
         }
-        fIntValue = value;
-        fDoubleValue = value;
-        fStringValue = Integer.toString(value);
+        fList.setNumber(fIndex, value);
     }
     
     /**
@@ -128,14 +111,11 @@ final class DiptraceDoubleAttribute implements DiptraceAttribute {
      * that is possible.
      */
     public void setDouble(final double value) {
-        
-        if (fIsInteger) {
+        if (fList.getKind(fIndex) == DiptraceAttributeList.KIND_INTEGER) {
             throw new NumberFormatException(
                 "This value is possibly an integer");
         }
-        fIntValue = (int) Math.round(value);
-        fDoubleValue = value;
-        fStringValue = String.format(Locale.ROOT, "%1.3f", value);
+        fList.setFixedDecimalsNumber(fIndex, value);
     }
     
     /**
@@ -146,10 +126,8 @@ final class DiptraceDoubleAttribute implements DiptraceAttribute {
      * @param value the value
      */
     public void forceSetDouble(final double value) {
-        fIsInteger = false;
-        fIntValue = (int) Math.round(value);
-        fDoubleValue = value;
-        fStringValue = String.format(Locale.ROOT, "%1.3f", value);
+        fList.setKind(fIndex, DiptraceAttributeList.KIND_DOUBLE);
+        fList.setFixedDecimalsNumber(fIndex, value);
     }
     
 }
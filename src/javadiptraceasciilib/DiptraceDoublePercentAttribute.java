@@ -1,33 +1,48 @@
 package javadiptraceasciilib;
 
-import java.util.Locale;
-
 /**
- *
+ * A Diptrace double attribute with a percent sign. This object is a view of
+ * one attribute in a DiptraceAttributeList.
  */
 final class DiptraceDoublePercentAttribute implements DiptraceAttribute {
     
     /**
-     * The value as a string.
+     * The list that has the attribute.
      */
-    private String fStringValue;
+    private final DiptraceAttributeList fList;
     
     /**
-     * The value as a double with percent sign.
+     * The position of the attribute in the list.
      */
-    private double fDoubleValue;
+    private final int fIndex;
     
     /**
      * Initialize a DiptraceDoublePercentAttribute object.
-     * @param stringValue the value as a string
-     * @param doubleValue the value as a double
+     * @param list the list that has the attribute
+     * @param index the position of the attribute in the list
      */
     DiptraceDoublePercentAttribute(
-        final String stringValue,
-        final Double doubleValue) {
+        final DiptraceAttributeList list,
+        final int index) {
         
-        this.fStringValue = stringValue;
-        this.fDoubleValue = doubleValue;
+        this.fList = list;
+        this.fIndex = index;
+    }
+    
+    /**
+     * Get the list that has the attribute.
+     * @return the list
+     */
+    DiptraceAttributeList getList() {
+        return fList;
+    }
+    
+    /**
+     * Get the position of the attribute in the list.
+     * @return the position
+     */
+    int getIndex() {
+        return fIndex;
     }
     
     /**
@@ -36,8 +51,9 @@ final class DiptraceDoublePercentAttribute implements DiptraceAttribute {
      */
     @Override
     public DiptraceAttribute duplicate() {
-        return new DiptraceDoublePercentAttribute(
-            fStringValue, fDoubleValue);
+        DiptraceAttributeList list = new DiptraceAttributeList();
+        list.add(this);
+        return list.get(0);
     }
     
     /**
@@ -46,7 +62,7 @@ final class DiptraceDoublePercentAttribute implements DiptraceAttribute {
      */
     @Override
     public String getString() {
-        return fStringValue;
+        return fList.getText(fIndex);
     }
     
     /**
@@ -55,7 +71,7 @@ final class DiptraceDoublePercentAttribute implements DiptraceAttribute {
      */
     @Override
     public String getFormattedString() {
-        return fStringValue;
+        return fList.getText(fIndex);
     }
     
     /**
@@ -63,7 +79,7 @@ final class DiptraceDoublePercentAttribute implements DiptraceAttribute {
      * @return the attribute
      */
     public double getDouble() {
-        return fDoubleValue;
+        return fList.getNumber(fIndex);
     }
     
     /**
@@ -71,8 +87,7 @@ final class DiptraceDoublePercentAttribute implements DiptraceAttribute {
      * @param value the value
      */
     public void setDouble(final double value) {
-        fDoubleValue = value;
-        fStringValue = String.format(Locale.ROOT, "%1.3f%%", value);
+        fList.setFixedDecimalsNumber(fIndex, value);
     }
     
 }
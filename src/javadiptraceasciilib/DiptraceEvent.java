@@ -0,0 +1,24 @@
+package javadiptraceasciilib;
+
+/**
+ * The events that a DiptraceReader reports while it reads a DipTrace ascii
+ * file.
+ */
+public enum DiptraceEvent {
+    
+    /**
+     * The start of an item, like "(Component".
+     */
+    START_ITEM,
+    
+    /**
+     * An attribute of an item, like a number or a string.
+     */
+    ATTRIBUTE,
+    
+    /**
+     * The end of an item, the ")".
+     */
+    END_ITEM
+    
+}
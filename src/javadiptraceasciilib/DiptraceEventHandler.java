@@ -0,0 +1,40 @@
+package javadiptraceasciilib;
+
+/**
+ * A handler that gets the events of a DipTrace ascii file while the file is
+ * read by DiptraceReader.parse(). The tree of items is never built, so a file
+ * of any size can be read with a small heap.
+ * <P>
+ * The CharSequence arguments are views of the file that are only valid
+ * during the call. Use toString() to keep the text.
+ */
+public interface DiptraceEventHandler {
+    
+    /**
+     * Called at the start of an item, like "(Component".
+     * @param identifier the identifier of the item
+     * @param depth the depth of the item. The items at the top level of the
+     * file have depth 1.
+     * @return true to get the events of the attributes and the sub items of
+     * this item, false to skip them. endItem() is called in both cases.
+     */
+    boolean startItem(CharSequence identifier, int depth);
+    
+    /**
+     * Called for each attribute of an item.
+     * @param type the type of the value
+     * @param value the value as it is written in the file. A string in
+     * double quotes is given without the quotes.
+     * @param number the numeric value if the type is INTEGER, DOUBLE or
+     * PERCENT, otherwise 0
+     */
+    void attribute(DiptraceValueType type, CharSequence value, double number);
+    
+    /**
+     * Called at the end of an item.
+     * @param identifier the identifier of the item
+     * @param depth the depth of the item
+     */
+    void endItem(CharSequence identifier, int depth);
+    
+}
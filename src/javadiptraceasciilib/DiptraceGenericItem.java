@@ -3,9 +3,6 @@ package javadiptraceasciilib;
 import java.awt.Graphics2D;
 import java.io.IOException;
 import java.io.Writer;
-import java.util.ArrayList;
-import java.util.List;
-import javadiptraceasciilib.DiptraceStringAttribute.UseQuotes;
 
 /**
  * This class is a generic class for items in the DipTrace ascii file.
@@ -15,7 +12,8 @@ class DiptraceGenericItem extends DiptraceItem {
     /**
      * The list of parameters.
      */
-    private final List<DiptraceAttribute> fAttributes = new ArrayList<>();
+    private final DiptraceAttributeList fAttributes
+        = new DiptraceAttributeList(this);
     
     
     /**
@@ -42,12 +40,8 @@ class DiptraceGenericItem extends DiptraceItem {
         
         newItem.setMayHaveSubItems(this.getMayHaveSubItems());
         
-        for (DiptraceAttribute attribute : fAttributes) {
-            newItem.fAttributes.add(attribute.duplicate());
-        }
-        for (DiptraceItem subItem : getChildren()) {
-            newItem.addSubItem(subItem.duplicate(newItem));
-        }
+        newItem.fAttributes.addAll(fAttributes);
+        copySubItemsTo(newItem);
         return newItem;
     }
     
@@ -55,10 +49,20 @@ class DiptraceGenericItem extends DiptraceItem {
      * Returns the list of parameters.
      * @return the parameters
      */
-    public final List<DiptraceAttribute> getAttributes() {
+    public final DiptraceAttributeList getAttributes() {
         return fAttributes;
     }
     
+    /**
+     * Mix the attributes of this item into a hash.
+     * @param hash the hash
+     * @return the new hash
+     */
+    @Override
+    long hashAttributes(final long hash) {
+        return fAttributes.hash(hash);
+    }
+    
     /**
      * Returns the list of parameters as a string.
      * @param delimiter join the attributes by this delimiter
@@ -81,13 +85,31 @@ class DiptraceGenericItem extends DiptraceItem {
     }
 */
     /**
-     * Parse the project.
+     * Parse the item.
      * @param tokenizer the tokenizer that parses the Diptrace ascii file
      * @throws IOException when IO error occurs
      */
-    //CHECKSTYLE.OFF: InnerAssignment - Allow assignment in while loop
     @Override
     void parse(final DiptraceTokenizer tokenizer) throws IOException {
+        if (parseAttributes(tokenizer, getProject())) {
+            parseSubItems(tokenizer);
+        }
+    }
+    
+    /**
+     * Parse the attributes of the item. If the item has sub items in a
+     * section that is parsed lazily, the sub items are skipped.
+     * @param tokenizer the tokenizer that parses the Diptrace ascii file
+     * @param project the project of the item
+     * @return true if the item has sub items that must be parsed now
+     * @throws IOException when IO error occurs
+     */
+    //CHECKSTYLE.OFF: InnerAssignment - Allow assignment in while loop
+    @Override
+    boolean parseAttributes(
+        final DiptraceTokenizer tokenizer,
+        final DiptraceProject project)
+        throws IOException {
         
         DiptraceToken token;
         while (((token = tokenizer.previewNextToken()) != null)
@@ -96,72 +118,26 @@ class DiptraceGenericItem extends DiptraceItem {
             
             token = tokenizer.nextToken();
             
-            switch (token.getType()) {
-                case IDENTIFIER:
-                case NON_QUOTED_STRING:
-                    fAttributes.add(
-                        new DiptraceStringAttribute(
-                            token.getValue(),
-                            UseQuotes.NO_QUOTES));
-                    break;
-                    
-                case STRING:
-                    fAttributes.add(
-                        new DiptraceStringAttribute(
-                            token.getValue(),
-                            UseQuotes.DOUBLE_QUOTES));
-                    break;
-                    
-                case INTEGER:
-                    fAttributes.add(
-                        new DiptraceDoubleAttribute(
-                            token.getValue(),
-                            token.getIntValue()));
-                    break;
-                    
-//                    fAttributes.add(
-//                        new DiptraceIntegerAttribute(
-//                            token.getValue(),
-//                            token.getIntValue()));
-//                    break;
-                    
-                case DOUBLE:
-                    fAttributes.add(
-                        new DiptraceDoubleAttribute(
-                            token.getValue(),
-                            token.getDoubleValue()));
-                    break;
-                    
-                case PERCENT:
-                    fAttributes.add(
-                        new DiptraceDoublePercentAttribute(
-                            token.getValue(),
-                            token.getDoubleValue()));
-                    break;
-                    
-                default:
-                    throw new RuntimeException(
-                        String.format(
-                            "Token has unknown type: %s",
-                            token.getType().name()));
-                    
-//                    fAttributes.add(token);
-            }
+            fAttributes.addToken(token);
         }
         
         if ((token != null)
             && (token.getType() == DiptraceTokenType.LEFT_PARENTHESES)) {
             
             setMayHaveSubItems(true);
-            parseSubItems(tokenizer);
-        } else {
             
-            if (tokenizer.previewNextToken().getType()
-                == DiptraceTokenType.RIGHT_PARENTHESES) {
-                
-                setMayHaveSubItems(
-                    tokenizer.previewNextToken().getPrecededWithNewline());
+            if (project.isLazySection(this)) {
+                setLazySubItems(tokenizer.skipSubItems());
+                return false;
             }
+            return true;
+        }
+        
+        if (tokenizer.previewNextToken().getType()
+            == DiptraceTokenType.RIGHT_PARENTHESES) {
+            
+            setMayHaveSubItems(
+                tokenizer.previewNextToken().getPrecededWithNewline());
         }
         
 //        System.out.format("Parse DiptraceGenericItem: %s ::: (",
@@ -170,23 +146,32 @@ class DiptraceGenericItem extends DiptraceItem {
 //            System.out.format("%s, ", attr.getString());
 //        }
 //        System.out.format(")%n");
+        return false;
     }
     //CHECKSTYLE.ON: InnerAssignment - Allow assignment in while loop
     
     /**
-     * Write the item.
+     * Write the identifier and the attributes of the item.
      * @param writer the writer that writes to the Diptrace ascii file
-     * @param indent a string of spaces to indent the tree in the ascii file
+     * @param indent the number of spaces to indent the item
      * @throws IOException when IO error occurs
      */
     @Override
-    public void write(final Writer writer, final String indent)
+    void writeHead(final Writer writer, final int indent)
         throws IOException {
         
-        writer.append(indent).append("(").append(getIdentifier());
+        writeIndent(writer, indent);
+        writer.append("(").append(getIdentifier());
         
-        for (DiptraceAttribute attribute : fAttributes) {
-            writer.append(" ").append(attribute.getFormattedString());
+        for (int i = 0; i < fAttributes.size(); i++) {
+            writer.append(" ");
+            if (fAttributes.getKind(i)
+                == DiptraceAttributeList.KIND_QUOTED_STRING) {
+                
+                writer.append("\"").append(fAttributes.getText(i)).append("\"");
+            } else {
+                fAttributes.writeText(writer, i);
+            }
 //            if (attribute.getType() == DiptraceTokenType.STRING) {
 //                writer.append(" \"")
 //                .append(attribute.getValue())
@@ -195,12 +180,28 @@ class DiptraceGenericItem extends DiptraceItem {
 //                writer.append(" ").append(attribute.getValue());
 //            }
         }
+    }
+    
+    /**
+     * Write the right parentheses that ends the item.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the item
+     * @param hasSubItems true if sub items are written after the head
+     * @throws IOException when IO error occurs
+     */
+    @Override
+    void writeTail(
+        final Writer writer,
+        final int indent,
+        final boolean hasSubItems)
+        throws IOException {
         
-        if (writeSubItems(writer, indent)) {
-            writer.append(indent);
+        if (hasSubItems) {
+            writeIndent(writer, indent);
         } else {
             if (getMayHaveSubItems()) {
-                writer.append(System.lineSeparator()).append(indent);
+                writer.append(System.lineSeparator());
+                writeIndent(writer, indent);
             }
         }
         
@@ -217,8 +218,8 @@ class DiptraceGenericItem extends DiptraceItem {
     public String toString() {
         StringBuilder sb = new StringBuilder(getIdentifier());
         
-        for (DiptraceAttribute attribute : fAttributes) {
-            sb.append(" ").append(attribute.getString());
+        for (int i = 0; i < fAttributes.size(); i++) {
+            sb.append(" ").append(fAttributes.getText(i));
 //            sb.append(" ");
 //            if (attribute.getType() == DiptraceTokenType.STRING) {
 //                sb.append("\"").append(attribute.getValue()).append("\"");
@@ -0,0 +1,64 @@
+package javadiptraceasciilib;
+
+/**
+ * Mixes values into a 64 bit hash. The hashes are used to compare items
+ * without comparing all the items below them. Two items with the same hash
+ * are almost certainly the same, but the hashes are only valid while the
+ * program runs and must not be saved.
+ */
+final class DiptraceHash {
+    
+    /**
+     * The hash before any value is mixed into it.
+     */
+    static final long SEED = 0x9E3779B97F4A7C15L;
+    
+    /**
+     * The multiplier that spreads the bits of a value over the hash.
+     */
+    private static final long MULTIPLIER = 0xBF58476D1CE4E5B9L;
+    
+    /**
+     * The multiplier of the characters of a string.
+     */
+    private static final long PRIME = 0x100000001B3L;
+    
+    /**
+     * The shift that mixes the high bits of the hash into the low bits.
+     */
+    private static final int SHIFT = 31;
+    
+    /**
+     * Initializes a DiptraceHash object. There are only static methods in
+     * this class.
+     */
+    private DiptraceHash() {
+    }
+    
+    /**
+     * Mix a value into a hash.
+     * @param hash the hash
+     * @param value the value
+     * @return the new hash
+     */
+    static long mix(final long hash, final long value) {
+        long result = (hash ^ value) * MULTIPLIER;
+        return result ^ (result >>> SHIFT);
+    }
+    
+    /**
+     * Mix a string into a hash. All the 64 bits of the hash are used for
+     * the characters, since String.hashCode() only has 32 bits.
+     * @param hash the hash
+     * @param text the string
+     * @return the new hash
+     */
+    static long mix(final long hash, final String text) {
+        long value = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            value = value * PRIME + text.charAt(i);
+        }
+        return mix(hash, value);
+    }
+    
+}
@@ -0,0 +1,62 @@
+package javadiptraceasciilib;
+
+import java.util.Arrays;
+
+/**
+ * A growing array of ints, which is used instead of a List&lt;Integer&gt;
+ * to not create an object for each value.
+ */
+final class DiptraceIntList {
+    
+    /**
+     * The size of the array when it's created.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    
+    /**
+     * The values.
+     */
+    private int[] fValues = new int[INITIAL_CAPACITY];
+    
+    /**
+     * The number of values.
+     */
+    private int fSize;
+    
+    /**
+     * Add a value.
+     * @param value the value
+     */
+    void add(final int value) {
+        if (fSize == fValues.length) {
+            fValues = Arrays.copyOf(fValues, fSize * 2);
+        }
+        fValues[fSize++] = value;
+    }
+    
+    /**
+     * Get a value.
+     * @param index the position of the value
+     * @return the value
+     */
+    int get(final int index) {
+        return fValues[index];
+    }
+    
+    /**
+     * Get the number of values.
+     * @return the number of values
+     */
+    int size() {
+        return fSize;
+    }
+    
+    /**
+     * Get the values in an array of the right size.
+     * @return the array
+     */
+    int[] toArray() {
+        return Arrays.copyOf(fValues, fSize);
+    }
+    
+}
@@ -4,10 +4,18 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class is the base class for items in the DipTrace ascii file.
@@ -27,20 +35,69 @@ abstract class DiptraceItem implements DiptraceTreeNode {
     static final Map<PlacementLayer, Color> LAYER_COLOR_MAP
         = new HashMap<>();
     
+    /**
+     * The size of the array of sub items when the first sub item is added.
+     */
+    private static final int INITIAL_SUB_ITEMS = 4;
+    
+    /**
+     * The number of sub items above which the sub items are found by a
+     * hash index instead of by a linear search.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+    
+    /**
+     * The number of spaces that each level of the tree is indented in the
+     * ascii file.
+     */
+    static final int INDENT_WIDTH = 2;
+    
+    /**
+     * The number of spaces in the table of spaces.
+     */
+    private static final int NUM_SPACES = 128;
+    
+    /**
+     * The spaces that the indents are written from. An indent that is
+     * longer than the table is written in several parts, so no indent
+     * string is ever created.
+     */
+    private static final char[] SPACES = new char[NUM_SPACES];
+    
+    /**
+     * The symbol of the identifier of the shape items.
+     */
+    private static final DiptraceSymbol SHAPE
+        = DiptraceSymbolTable.GLOBAL.intern("Shape");
+    
     /**
      * The parent of this item.
      */
     private final DiptraceItem fParent;
     
     /**
-     * The identifier of this item.
+     * The symbol of the identifier of this item.
+     */
+    private final DiptraceSymbol fSymbol;
+    
+    /**
+     * The sub items of this item. Null if this item has never had any sub
+     * items, which is the case for most of the items in a file.
+     */
+    private DiptraceItem[] fSubItems;
+    
+    /**
+     * The number of sub items.
      */
-    private final String fIdentifier;
+    private int fNumSubItems;
     
     /**
-     * The sub items of this item.
+     * A hash index with the position of the first sub item with each
+     * symbol. The key is the id of the symbol and the value is the position
+     * plus one, where zero is a free slot. Null if there are too few sub
+     * items to need an index or if the index must be rebuilt.
      */
-    private final List<DiptraceItem> fSubItems = new ArrayList<>();
+    private int[] fSubItemsIndex;
     
     /**
      * May this item have sub items?
@@ -48,13 +105,51 @@ abstract class DiptraceItem implements DiptraceTreeNode {
     private boolean fMayHaveSubItems;
     
     /**
-     * A map with the sub items there the sub item identifier is the key
-     * to the map.
+     * The sub items of this item, if they are not created yet. This is the
+     * part of the text that has the sub items or the node of the sub items
+     * in a DiptraceDocument. Null if the sub items are created.
      */
-    private final Map<String, DiptraceItem> fSubItemsMap = new HashMap<>();
+    private DiptraceLazySubItems fLazySubItems;
+    
+    /**
+     * The copies of this item whose sub items are not created yet. These
+     * copies write the sub items of this item, so their sub items are
+     * created before the sub items of this item are changed. Null if there
+     * are no such copies.
+     */
+    private List<DiptraceItem> fLazyCopies;
+    
+    /**
+     * The number of times this item or any item below it has been changed.
+     * It's used to know when something that is computed from the items
+     * must be computed again.
+     */
+    private int fModificationCount;
+    
+    /**
+     * The hash of the content of this item and all the items below it.
+     * Zero if it's not computed or if this item or an item below it has
+     * been changed since it was computed.
+     */
+    private long fContentHash;
+    
+    /**
+     * The position of the left parentheses of this item in the text that
+     * the item is parsed from.
+     */
+    private int fSourceStart;
+    
+    /**
+     * The position after the right parentheses of this item in the text
+     * that the item is parsed from. Zero if the item is not parsed from
+     * the text of the root, for example if it's a copy.
+     */
+    private int fSourceEnd;
     
     static {
         
+        Arrays.fill(SPACES, ' ');
+
 /*
         LAYER_SIDE_MAP.put(PlacementLayer.TOP_PASTE, DiptracePCBSide.TOP);
         LAYER_SIDE_MAP.put(PlacementLayer.TOP_ASSY, DiptracePCBSide.TOP);
@@ -114,7 +209,7 @@ abstract class DiptraceItem implements DiptraceTreeNode {
      */
     DiptraceItem(final DiptraceItem parent, final String identifier) {
         this.fParent = parent;
-        this.fIdentifier = identifier;
+        this.fSymbol = DiptraceSymbolTable.GLOBAL.intern(identifier);
     }
     
     /**
@@ -129,7 +224,11 @@ abstract class DiptraceItem implements DiptraceTreeNode {
      * @return the project
      */
     DiptraceProject getProject() {
-        return fParent.getProject();
+        DiptraceItem root = this;
+        while (root.fParent != null) {
+            root = root.fParent;
+        }
+        return root.getProject();
     }
     
     /**
@@ -145,26 +244,105 @@ abstract class DiptraceItem implements DiptraceTreeNode {
      * @return the identifier
      */
     final String getIdentifier() {
-        return fIdentifier;
+        return fSymbol.getName();
     }
     
     /**
-     * Returns the sub items.
+     * Returns the symbol of the identifier.
+     * @return the symbol
+     */
+    final DiptraceSymbol getSymbol() {
+        return fSymbol;
+    }
+    
+    /**
+     * Returns the sub items. The list is a view of the sub items of this
+     * item, so changes to the list are changes to the sub items.
      * @return the sub items
      */
     @Override
     public final List<DiptraceItem> getChildren() {
-        return fSubItems;
+        materializeSubItems();
+        return new SubItemList();
+    }
+    
+    /**
+     * Get the number of sub items.
+     * @return the number of sub items
+     */
+    final int getNumSubItems() {
+        materializeSubItems();
+        return fNumSubItems;
     }
     
     /**
-     * Get a sub item by the item's identifier.
+     * Get a sub item by the item's identifier. If there are several sub
+     * items with the identifier, the first one is returned.
      * @param identifier the items identifier
-     * @return a Diptrace item
+     * @return a Diptrace item or null if there is no such sub item
      */
     final DiptraceItem getSubItem(final String identifier) {
         
-        return fSubItemsMap.get(identifier);
+        materializeSubItems();
+        DiptraceSymbol symbol = DiptraceSymbolTable.GLOBAL.find(identifier);
+        if (symbol == null) {
+            // No item has ever had this identifier.
+            return null;
+        }
+        return getSubItem(symbol);
+    }
+    
+    /**
+     * Get a sub item by the symbol of the item's identifier. If there are
+     * several sub items with the symbol, the first one is returned.
+     * @param symbol the symbol
+     * @return a Diptrace item or null if there is no such sub item
+     */
+    final DiptraceItem getSubItem(final DiptraceSymbol symbol) {
+        
+        materializeSubItems();
+        
+        if (fNumSubItems <= INDEX_THRESHOLD) {
+            for (int i = 0; i < fNumSubItems; i++) {
+                if (fSubItems[i].fSymbol == symbol) {
+                    return fSubItems[i];
+                }
+            }
+            return null;
+        }
+        
+        if (fSubItemsIndex == null) {
+            buildSubItemsIndex();
+        }
+        
+        int mask = fSubItemsIndex.length - 1;
+        for (int i = symbol.getId() & mask;; i = (i + 1) & mask) {
+            int position = fSubItemsIndex[i] - 1;
+            if (position < 0) {
+                return null;
+            }
+            if (fSubItems[position].fSymbol == symbol) {
+                return fSubItems[position];
+            }
+        }
+    }
+    
+    /**
+     * Get all the sub items with an identifier.
+     * @param identifier the items identifier
+     * @return a list of the sub items in the order they are in the file
+     */
+    final List<DiptraceItem> getSubItems(final String identifier) {
+        
+        materializeSubItems();
+        List<DiptraceItem> subItems = new ArrayList<>();
+        DiptraceSymbol symbol = DiptraceSymbolTable.GLOBAL.find(identifier);
+        for (int i = 0; i < fNumSubItems; i++) {
+            if (fSubItems[i].fSymbol == symbol) {
+                subItems.add(fSubItems[i]);
+            }
+        }
+        return subItems;
     }
     
     /**
@@ -173,8 +351,112 @@ abstract class DiptraceItem implements DiptraceTreeNode {
      */
     final void addSubItem(final DiptraceItem item) {
         
-        fSubItems.add(item);
-        fSubItemsMap.put(item.fIdentifier, item);
+        materializeSubItems();
+        DiptraceJournal journal = beforeChange(true);
+        if (journal != null) {
+            journal.recordSubItem(
+                DiptraceJournal.ADD_SUB_ITEM, this, fNumSubItems, null, item);
+        }
+        appendSubItem(item);
+    }
+    
+    /**
+     * Adds a sub item after the other sub items without creating the lazy
+     * sub items and without telling the copies of this item. It's used when
+     * the sub items are created.
+     * @param item the item to add
+     */
+    final void appendSubItem(final DiptraceItem item) {
+        
+        if (fSubItems == null) {
+            fSubItems = new DiptraceItem[INITIAL_SUB_ITEMS];
+        } else if (fNumSubItems == fSubItems.length) {
+            fSubItems = Arrays.copyOf(fSubItems, fNumSubItems * 2);
+        }
+        fSubItems[fNumSubItems] = item;
+        fNumSubItems++;
+        
+        if (fSubItemsIndex != null) {
+            if (fNumSubItems * 2 > fSubItemsIndex.length) {
+                // The index is rebuilt larger when it's needed.
+                fSubItemsIndex = null;
+            } else {
+                indexSubItem(fNumSubItems - 1);
+            }
+        }
+    }
+    
+    /**
+     * Insert a sub item at a position.
+     * @param position the position
+     * @param item the item to insert
+     */
+    private void insertSubItem(final int position, final DiptraceItem item) {
+        
+        if (position == fNumSubItems) {
+            appendSubItem(item);
+            return;
+        }
+        
+        if (fNumSubItems == fSubItems.length) {
+            fSubItems = Arrays.copyOf(fSubItems, fNumSubItems * 2);
+        }
+        System.arraycopy(fSubItems, position,
+            fSubItems, position + 1, fNumSubItems - position);
+        fSubItems[position] = item;
+        fNumSubItems++;
+        
+        // The positions have changed.
+        fSubItemsIndex = null;
+    }
+    
+    /**
+     * Remove a sub item at a position.
+     * @param position the position
+     * @return the removed item
+     */
+    private DiptraceItem removeSubItem(final int position) {
+        
+        DiptraceItem item = fSubItems[position];
+        System.arraycopy(fSubItems, position + 1,
+            fSubItems, position, fNumSubItems - position - 1);
+        fNumSubItems--;
+        fSubItems[fNumSubItems] = null;
+        
+        // The positions have changed.
+        fSubItemsIndex = null;
+        return item;
+    }
+    
+    /**
+     * Build the hash index of the sub items.
+     */
+    private void buildSubItemsIndex() {
+        
+        int size = Integer.highestOneBit(fNumSubItems) * 2 * 2;
+        fSubItemsIndex = new int[size];
+        for (int i = 0; i < fNumSubItems; i++) {
+            indexSubItem(i);
+        }
+    }
+    
+    /**
+     * Add a sub item to the hash index, unless there already is a sub item
+     * with the same symbol in the index.
+     * @param position the position of the sub item
+     */
+    private void indexSubItem(final int position) {
+        
+        DiptraceSymbol symbol = fSubItems[position].fSymbol;
+        int mask = fSubItemsIndex.length - 1;
+        int i = symbol.getId() & mask;
+        while (fSubItemsIndex[i] != 0) {
+            if (fSubItems[fSubItemsIndex[i] - 1].fSymbol == symbol) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        fSubItemsIndex[i] = position + 1;
     }
     
     /**
@@ -193,6 +475,301 @@ abstract class DiptraceItem implements DiptraceTreeNode {
         fMayHaveSubItems = mayHaveSubItems;
     }
     
+    /**
+     * Get the sub items that are not created yet.
+     * @return the sub items or null if the sub items are created
+     */
+    final DiptraceLazySubItems getLazySubItems() {
+        return fLazySubItems;
+    }
+    
+    /**
+     * Set the sub items that are not created yet. The sub items are created
+     * the first time they are needed.
+     * @param lazySubItems the sub items
+     */
+    final void setLazySubItems(final DiptraceLazySubItems lazySubItems) {
+        fLazySubItems = lazySubItems;
+    }
+    
+    /**
+     * Create the sub items if they are not created yet.
+     */
+    final void materializeSubItems() {
+        
+        if (fLazySubItems == null) {
+            return;
+        }
+        
+        DiptraceLazySubItems lazySubItems = fLazySubItems;
+        fLazySubItems = null;
+        
+        try {
+            lazySubItems.addSubItemsTo(this);
+        } catch (IOException e) {
+            // The sub items are already in memory so this should never
+            // happen.
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Give a copy of this item the sub items of this item. The sub items are
+     * not copied now. The copy shares the sub items of this item until the
+     * copy or this item is changed, and then one level of sub items is
+     * copied at a time. Only the items on the path to a changed item are
+     * copied, so duplicating a large item is cheap if only a few sub items
+     * are changed afterwards.
+     * @param copy the copy, which must not have any sub items
+     */
+    final void copySubItemsTo(final DiptraceItem copy) {
+        
+        if (fLazySubItems != null) {
+            copy.fLazySubItems = fLazySubItems.shareWith(copy);
+        } else if (fNumSubItems > 0) {
+            copy.fLazySubItems = new CopiedSubItems(this);
+            addLazyCopy(copy);
+        }
+    }
+    
+    /**
+     * Called before this item is changed. The copies of this item and of its
+     * parents that share sub items would see the change, so their sub items
+     * are copied first. The items are copied from the root and down, since
+     * copying the sub items of an item creates new copies of the sub items.
+     * <P>
+     * If the project is in a transaction, only this item is marked as
+     * changed. The items above it are marked when the transaction ends.
+     * @param subItems true if the sub items of this item are changed, false
+     * if only the attributes of this item are changed
+     * @return the journal that the change must be recorded in, or null if
+     * the project is not in a transaction and doesn't keep changes for
+     * undo and redo
+     */
+    final DiptraceJournal beforeChange(final boolean subItems) {
+        
+        if (subItems) {
+            materializeLazyCopies(this);
+        } else if (fParent != null) {
+            materializeLazyCopies(fParent);
+        }
+        
+        DiptraceItem root = this;
+        while (root.fParent != null) {
+            root = root.fParent;
+        }
+        
+        DiptraceTransaction transaction = null;
+        DiptraceJournal journal = null;
+        if (root instanceof DiptraceRootItem) {
+            transaction = ((DiptraceRootItem) root).getTransaction();
+            journal = ((DiptraceRootItem) root).getUndoJournal();
+        }
+        
+        if (transaction != null) {
+            fModificationCount++;
+            fContentHash = 0;
+            transaction.addChangedItem(this);
+            return transaction.getJournal();
+        }
+        
+        for (DiptraceItem item = this; item != null; item = item.fParent) {
+            item.fModificationCount++;
+            item.fContentHash = 0;
+        }
+        return journal;
+    }
+    
+    /**
+     * Mark the items above some items that are changed as changed. Each
+     * item is marked once, even if many items below it are changed. The
+     * changed items themselves are already marked.
+     * @param items the changed items
+     */
+    static void markParentsChanged(final Collection<DiptraceItem> items) {
+        Set<DiptraceItem> marked
+            = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DiptraceItem item : items) {
+            DiptraceItem parent = item.fParent;
+            while ((parent != null) && marked.add(parent)) {
+                parent.fModificationCount++;
+                parent.fContentHash = 0;
+                parent = parent.fParent;
+            }
+        }
+    }
+    
+    /**
+     * Get the number of times this item or any item below it has been
+     * changed. The count is not changed when lazy sub items are created.
+     * @return the count
+     */
+    final int getModificationCount() {
+        return fModificationCount;
+    }
+    
+    /**
+     * Get the hash of the content of this item and all the items below it.
+     * The hash is computed from the identifier, the attributes and the
+     * hashes of the sub items, and is kept until this item or an item
+     * below it is changed. Then only the hashes on the path from the
+     * changed item to the root are computed again. Sub items that are not
+     * created yet are created.
+     * <P>
+     * Two items with the same hash are almost certainly written the same
+     * way, so the hash is a fast way to compare subtrees.
+     * @return the hash
+     */
+    final long getContentHash() {
+        
+        if (fContentHash != 0) {
+            return fContentHash;
+        }
+        
+        // The hashes of the sub items are computed before the hash of the
+        // item, in a loop with a stack instead of by recursion.
+        ArrayDeque<DiptraceItem> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            DiptraceItem item = stack.peek();
+            item.materializeSubItems();
+            boolean ready = true;
+            for (int i = 0; i < item.fNumSubItems; i++) {
+                if (item.fSubItems[i].fContentHash == 0) {
+                    stack.push(item.fSubItems[i]);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                item.computeContentHash();
+            }
+        }
+        return fContentHash;
+    }
+    
+    /**
+     * Compute the hash of this item from the hashes of the sub items.
+     */
+    private void computeContentHash() {
+        long hash = DiptraceHash.mix(DiptraceHash.SEED, fSymbol.getName());
+        hash = hashAttributes(hash);
+        if (fMayHaveSubItems) {
+            hash = DiptraceHash.mix(hash, 1);
+        }
+        hash = DiptraceHash.mix(hash, fNumSubItems);
+        for (int i = 0; i < fNumSubItems; i++) {
+            hash = DiptraceHash.mix(hash, fSubItems[i].fContentHash);
+        }
+        if (hash == 0) {
+            // Zero means that the hash is not computed.
+            hash = 1;
+        }
+        fContentHash = hash;
+    }
+    
+    /**
+     * Mix the attributes of this item into a hash. This item has no
+     * attributes, so the hash is not changed.
+     * @param hash the hash
+     * @return the new hash
+     */
+    long hashAttributes(final long hash) {
+        return hash;
+    }
+    
+    /**
+     * Get whenether another item has the same content as this item, by
+     * comparing the hashes of the items.
+     * @param item the other item
+     * @return true if the items have the same content
+     */
+    final boolean contentEquals(final DiptraceItem item) {
+        return getContentHash() == item.getContentHash();
+    }
+    
+    /**
+     * Find the sub items that have the same content as another sub item,
+     * for example the identical components in a library.
+     * @return the groups of sub items with the same content, in the order
+     * of the first sub item of each group
+     */
+    final List<List<DiptraceItem>> findIdenticalSubItems() {
+        materializeSubItems();
+        Map<Long, List<DiptraceItem>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < fNumSubItems; i++) {
+            groups.computeIfAbsent(fSubItems[i].getContentHash(),
+                (key) -> new ArrayList<>()).add(fSubItems[i]);
+        }
+        
+        List<List<DiptraceItem>> identical = new ArrayList<>();
+        for (List<DiptraceItem> group : groups.values()) {
+            if (group.size() > 1) {
+                identical.add(group);
+            }
+        }
+        return identical;
+    }
+    
+    /**
+     * Create the sub items of the copies of an item and of its parents that
+     * share sub items.
+     * @param item the item
+     */
+    private static void materializeLazyCopies(final DiptraceItem item) {
+        
+        // Most items have no copies, so look for one before the path from
+        // the root is collected.
+        DiptraceItem parent = item;
+        while ((parent != null) && (parent.fLazyCopies == null)) {
+            parent = parent.fParent;
+        }
+        if (parent == null) {
+            return;
+        }
+        
+        List<DiptraceItem> path = new ArrayList<>();
+        for (parent = item; parent != null; parent = parent.fParent) {
+            path.add(parent);
+        }
+        
+        for (int i = path.size() - 1; i >= 0; i--) {
+            DiptraceItem pathItem = path.get(i);
+            if (pathItem.fLazyCopies != null) {
+                List<DiptraceItem> copies = pathItem.fLazyCopies;
+                pathItem.fLazyCopies = null;
+                for (DiptraceItem copy : copies) {
+                    copy.materializeSubItems();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Add a copy of this item that shares the sub items of this item.
+     * @param copy the copy
+     */
+    private void addLazyCopy(final DiptraceItem copy) {
+        if (fLazyCopies == null) {
+            fLazyCopies = new ArrayList<>();
+        }
+        fLazyCopies.add(copy);
+    }
+    
+    /**
+     * Remove a copy of this item that no longer shares the sub items of
+     * this item.
+     * @param copy the copy
+     */
+    private void removeLazyCopy(final DiptraceItem copy) {
+        if (fLazyCopies != null) {
+            fLazyCopies.remove(copy);
+            if (fLazyCopies.isEmpty()) {
+                fLazyCopies = null;
+            }
+        }
+    }
+    
     /**
      * Parse the item.
      * @param tokenizer the tokenizer that parses the Diptrace ascii file
@@ -202,136 +779,306 @@ abstract class DiptraceItem implements DiptraceTreeNode {
         throws IOException;
     
     /**
-     * Parse the sub items.
+     * Parse the attributes of the item, which are the tokens before the
+     * sub items. The sub items are parsed by parseSubItems().
+     * @param tokenizer the tokenizer that parses the Diptrace ascii file
+     * @param project the project of the item
+     * @return true if the item has sub items that must be parsed now
+     * @throws IOException when IO error occurs
+     */
+    abstract boolean parseAttributes(
+        DiptraceTokenizer tokenizer,
+        DiptraceProject project)
+        throws IOException;
+    
+    /**
+     * Parse the sub items and all the items below them. The tree is parsed
+     * in a loop instead of by recursion, so a deeply nested file doesn't
+     * overflow the stack. The item whose sub items are parsed is the
+     * parent of the next item, and the parent of an item is the item to go
+     * back to when the item ends.
      * @param tokenizer the tokenizer that parses the document
      * @throws IOException on any I/O error
      */
-    //CHECKSTYLE.OFF: InnerAssignment - Allow assignment in while loop
     protected final void parseSubItems(final DiptraceTokenizer tokenizer)
         throws IOException {
         
-        DiptraceToken token;
-        while (((token = tokenizer.previewNextToken()) != null)
-            && (token.getType() == DiptraceTokenType.LEFT_PARENTHESES)) {
-            
-            // Eat the token
-            tokenizer.nextToken();
-            
-            token = tokenizer.nextToken();
-            if (token.getType() != DiptraceTokenType.IDENTIFIER) {
-                throw new RuntimeException(
-                    String.format("Token is not an identifier: Type: %s, %s%n",
-                        token.getType().name(),
-                        token.getValue()));
+        DiptraceProject project = getProject();
+        DiptraceItem item = this;
+        while (true) {
+            DiptraceItem endedItem;
+            DiptraceToken token = tokenizer.previewNextToken();
+            if ((token != null)
+                && (token.getType() == DiptraceTokenType.LEFT_PARENTHESES)) {
+                
+                int start = tokenizer.getNextTokenStart();
+                
+                // Eat the token
+                tokenizer.nextToken();
+                
+                token = tokenizer.nextToken();
+                if (token.getType() != DiptraceTokenType.IDENTIFIER) {
+                    throw new RuntimeException(
+                        String.format(
+                            "Token is not an identifier: Type: %s, %s%n",
+                            token.getType().name(),
+                            token.getValue()));
+                }
+                
+                DiptraceItem subItem = item.createItemByIdentifier(
+                    DiptraceSymbolTable.GLOBAL.intern(token.getValue()));
+                item.appendSubItem(subItem);
+                subItem.fSourceStart = start;
+                if (subItem.parseAttributes(tokenizer, project)) {
+                    item = subItem;
+                    continue;
+                }
+                endedItem = subItem;
+            } else {
+                // The sub items of the item have ended.
+                if (item == this) {
+                    return;
+                }
+                endedItem = item;
+                item = item.fParent;
             }
             
-            DiptraceItem item = createItemByIdentifier(token);
-            item.parse(tokenizer);
-            fSubItems.add(item);
-            fSubItemsMap.put(item.fIdentifier, item);
-            
-//            System.err.format("DiptraceItem: %s\n", fIdentifier);
-            
+            // A sub item of the item has ended.
             if ((tokenizer.previewNextToken() == null)
-                && (this instanceof DiptraceRootItem)) {
+                && (item instanceof DiptraceRootItem)) {
                 return;
             }
             
+            endedItem.fSourceEnd = tokenizer.getNextTokenStart() + 1;
             tokenizer.eatToken(DiptraceTokenType.RIGHT_PARENTHESES);
         }
     }
-    //CHECKSTYLE.ON: InnerAssignment - Allow assignment in while loop
     
     /**
-     * Write the item.
+     * Write the item and all the items below it. The tree is written in a
+     * loop with a stack of the items whose sub items are being written,
+     * instead of by recursion, so a deeply nested tree doesn't overflow
+     * the stack.
      * @param writer the writer that writes to the Diptrace ascii file
-     * @param indent a string of spaces to indent the tree in the ascii file
+     * @param indent the number of spaces to indent the tree in the ascii
+     * file
      * @throws IOException when IO error occurs
      */
-    abstract void write(Writer writer, String indent)
-        throws IOException;
+    final void write(final Writer writer, final int indent)
+        throws IOException {
+        
+        write(writer, indent, null);
+    }
     
     /**
-     * Write the sub items.
+     * Write the item and all the items below it, but copy the items that
+     * are not changed since they were parsed from the text that the writer
+     * copies from. Only the items on the paths from the changed items to
+     * this item are written item by item. The items that are not changed
+     * are copied with the whitespace in the text, so if nothing is changed
+     * the text is written as it is.
      * @param writer the writer that writes to the Diptrace ascii file
-     * @param indent a string of spaces to indent the tree in the ascii file
-     * @return true if item has sub items
+     * @param indent the number of spaces to indent the tree in the ascii
+     * file
      * @throws IOException when IO error occurs
      */
-    protected final boolean writeSubItems(
-        final Writer writer,
-        final String indent)
+    final void writeSpliced(
+        final DiptraceSpliceWriter writer,
+        final int indent)
         throws IOException {
         
-        if (!fSubItems.isEmpty()) {
-            String newIndent;
+        if ((fParent == null) && (fModificationCount == 0)
+            && (writer.getSource() != null)) {
             
-            if (this.getParent() != null) {
-                writer.append(System.lineSeparator());
-                newIndent = indent + "  ";
+            // The root is the whole text.
+            writer.copy(0, writer.getSource().length());
+        } else if ((fParent != null) && isUnchanged(writer)) {
+            writeIndent(writer, indent);
+            writer.copy(fSourceStart, fSourceEnd);
+            writer.append(System.lineSeparator());
+        } else {
+            write(writer, indent, writer);
+        }
+    }
+    
+    /**
+     * Write the item and all the items below it. The tree is written in a
+     * loop with a stack of the items whose sub items are being written.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the tree in the ascii
+     * file
+     * @param splice the writer that copies the items that are not changed,
+     * or null if all items are written
+     * @throws IOException when IO error occurs
+     */
+    private void write(
+        final Writer writer,
+        final int indent,
+        final DiptraceSpliceWriter splice)
+        throws IOException {
+        
+        ArrayDeque<WriteFrame> stack = new ArrayDeque<>();
+        startWrite(writer, indent, stack);
+        while (!stack.isEmpty()) {
+            WriteFrame frame = stack.peek();
+            if ((frame.fNext < frame.fNumSubItems) && (splice != null)
+                && frame.fSubItems[frame.fNext].isUnchanged(splice)) {
+                
+                copySubItems(splice, frame);
+            } else if (frame.fNext < frame.fNumSubItems) {
+                DiptraceItem subItem = frame.fSubItems[frame.fNext];
+                frame.fNext++;
+                subItem.startWrite(writer, frame.fSubItemIndent, stack);
             } else {
-                newIndent = indent;
+                stack.pop();
+                frame.fItem.writeTail(writer, frame.fIndent, true);
             }
-            
-            if (!fSubItems.isEmpty()) {
-                for (DiptraceItem subItem : fSubItems) {
-                    subItem.write(writer, newIndent);
-                }
-            } else {
+        }
+    }
+    
+    /**
+     * Get whenether the item can be copied from the text that a writer
+     * copies from, which is when the item is parsed from the text and
+     * neither the item nor any item below it is changed since.
+     * @param writer the writer
+     * @return true if the item is not changed
+     */
+    private boolean isUnchanged(final DiptraceSpliceWriter writer) {
+        return (fModificationCount == 0) && (fSourceEnd != 0)
+            && (writer.getSource() != null);
+    }
+    
+    /**
+     * Copy the next sub item of a frame, which is not changed, from the
+     * text that a writer copies from. The sub items after it that are not
+     * changed and are next to it in the text are copied in the same run.
+     * @param writer the writer
+     * @param frame the frame
+     * @throws IOException when IO error occurs
+     */
+    private static void copySubItems(
+        final DiptraceSpliceWriter writer,
+        final WriteFrame frame)
+        throws IOException {
+        
+        DiptraceItem first = frame.fSubItems[frame.fNext];
+        DiptraceItem last = first;
+        frame.fNext++;
+        while (frame.fNext < frame.fNumSubItems) {
+            DiptraceItem next = frame.fSubItems[frame.fNext];
+            if (!next.isUnchanged(writer)
+                || !writer.isBlank(last.fSourceEnd, next.fSourceStart)) {
+                
+                break;
+            }
+            last = next;
+            frame.fNext++;
+        }
+        
+        writeIndent(writer, frame.fSubItemIndent);
+        writer.copy(first.fSourceStart, last.fSourceEnd);
+        writer.append(System.lineSeparator());
+    }
+    
+    /**
+     * Write the start of the item. If the item has sub items that are
+     * created, the item is pushed on the stack and the sub items and the
+     * end of the item are written later. Otherwise the whole item is
+     * written.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the item
+     * @param stack the items whose sub items are being written
+     * @throws IOException when IO error occurs
+     */
+    private void startWrite(
+        final Writer writer,
+        final int indent,
+        final ArrayDeque<WriteFrame> stack)
+        throws IOException {
+        
+        writeHead(writer, indent);
+        
+        int subItemIndent = indent;
+        if (fParent != null) {
+            subItemIndent = indent + INDENT_WIDTH;
+        }
+        
+        DiptraceItem source = this;
+        if (fLazySubItems instanceof CopiedSubItems) {
+            // Write the sub items of the source as if they were created.
+            source = ((CopiedSubItems) fLazySubItems).fSource;
+        } else if (fLazySubItems != null) {
+            // The sub items are not touched. Write them without creating
+            // them.
+            if (fParent != null) {
                 writer.append(System.lineSeparator());
             }
-            
-            return true;
+            fLazySubItems.write(writer, subItemIndent);
+            writeTail(writer, indent, true);
+            return;
+        }
+        
+        if (source.fNumSubItems > 0) {
+            if (fParent != null) {
+                writer.append(System.lineSeparator());
+            }
+            stack.push(new WriteFrame(this, indent, subItemIndent,
+                source.fSubItems, source.fNumSubItems));
         } else {
-            return false;
+            writeTail(writer, indent, false);
         }
     }
     
+    /**
+     * Write the part of the item that is before the sub items.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the item
+     * @throws IOException when IO error occurs
+     */
+    abstract void writeHead(Writer writer, int indent)
+        throws IOException;
+    
+    /**
+     * Write the part of the item that is after the sub items.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the item
+     * @param hasSubItems true if sub items are written after the head
+     * @throws IOException when IO error occurs
+     */
+    abstract void writeTail(Writer writer, int indent, boolean hasSubItems)
+        throws IOException;
+    
+    /**
+     * Write an indent.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces
+     * @throws IOException when IO error occurs
+     */
+    static void writeIndent(final Writer writer, final int indent)
+        throws IOException {
+        
+        int remaining = indent;
+        while (remaining > NUM_SPACES) {
+            writer.write(SPACES, 0, NUM_SPACES);
+            remaining -= NUM_SPACES;
+        }
+        writer.write(SPACES, 0, remaining);
+    }
+    
     /**
      * Creates and returns an instance of a class that inherits DiptraceItem.
-     * It decides what type of class by the identifier of the token.
-     * @param token the token
+     * It decides what type of class by the identifier. The new item has this
+     * item as parent but is not added to this item.
+     * @param symbol the symbol of the identifier
      * @return an instance of a sub class to DiptraceItem
      */
-    private DiptraceItem createItemByIdentifier(final DiptraceToken token) {
+    final DiptraceGenericItem createItemByIdentifier(
+        final DiptraceSymbol symbol) {
         
-        switch (token.getValue()) {
-/*
-            case "Source":
-            case "Units":
-            case "Scale":
-            case "Xpos":
-            case "Ypos":
-            case "Schematic":
-            case "Pages":
-            case "Page":
-            case "Zones":
-            case "PageWidth":
-            case "PageHeight":
-            case "HorzZones":
-            case "VertZones":
-            case "ZoneStandard":
-            case "ZoneFontName":
-            case "ZoneFontSize":
-            case "ZoneBorder":
-            case "HorzZoneBorder":
-            case "VertZoneBorder":
-/*
-            case "Ypos":
-            case "Ypos":
-            case "Ypos":
-            case "Ypos":
-            case "Ypos":
-            case "Ypos":
-            case "Ypos":
-            case "Ypos":
-*/
-            case "Shape":
-                return new DiptraceShapeItem(this, token.getValue());
-                
-            default:
-                return new DiptraceGenericItem(this, token.getValue());
+        if (symbol == SHAPE) {
+            return new DiptraceShapeItem(this, symbol.getName());
         }
+        return new DiptraceGenericItem(this, symbol.getName());
     }
     
     
@@ -340,10 +1087,30 @@ abstract class DiptraceItem implements DiptraceTreeNode {
      * @param indent a string of spaces to indent the tree
      */
     public final void printTree(final String indent) {
-        System.out.format("%s%s%n", indent, fIdentifier);
-        String newIndent = indent + "   ";
-        for (DiptraceItem subItem : fSubItems) {
-            subItem.printTree(newIndent);
+        
+        // The indent of each level below this item.
+        List<String> indents = new ArrayList<>();
+        indents.add(indent);
+        
+        ArrayDeque<DiptraceItem> items = new ArrayDeque<>();
+        ArrayDeque<Integer> levels = new ArrayDeque<>();
+        items.push(this);
+        levels.push(0);
+        while (!items.isEmpty()) {
+            DiptraceItem item = items.pop();
+            int level = levels.pop();
+            if (level == indents.size()) {
+                indents.add(indents.get(level - 1) + "   ");
+            }
+            System.out.format("%s%s%n",
+                indents.get(level), item.fSymbol.getName());
+            
+            // Push the sub items backwards to print them in order.
+            item.materializeSubItems();
+            for (int i = item.fNumSubItems - 1; i >= 0; i--) {
+                items.push(item.fSubItems[i]);
+                levels.push(level + 1);
+            }
         }
     }
     
@@ -352,9 +1119,16 @@ abstract class DiptraceItem implements DiptraceTreeNode {
      * @return the number of children
      */
     final int numChildren() {
-        int count = 1;
-        for (DiptraceItem subItem : fSubItems) {
-            count += subItem.numChildren();
+        int count = 0;
+        ArrayDeque<DiptraceItem> items = new ArrayDeque<>();
+        items.push(this);
+        while (!items.isEmpty()) {
+            DiptraceItem item = items.pop();
+            count++;
+            item.materializeSubItems();
+            for (int i = 0; i < item.fNumSubItems; i++) {
+                items.push(item.fSubItems[i]);
+            }
         }
         return count;
     }
@@ -386,4 +1160,220 @@ abstract class DiptraceItem implements DiptraceTreeNode {
         int layerToDraw,
         SideTransparency sideTransparency);
     
+    /**
+     * A list that is a view of the sub items of this item.
+     */
+    private final class SubItemList extends AbstractList<DiptraceItem> {
+        
+        /**
+         * Get a sub item.
+         * @param index the position of the sub item
+         * @return the sub item
+         */
+        @Override
+        public DiptraceItem get(final int index) {
+            checkIndex(index, fNumSubItems);
+            return fSubItems[index];
+        }
+        
+        /**
+         * Get the number of sub items.
+         * @return the number of sub items
+         */
+        @Override
+        public int size() {
+            return fNumSubItems;
+        }
+        
+        /**
+         * Replace a sub item.
+         * @param index the position of the sub item
+         * @param item the new sub item
+         * @return the old sub item
+         */
+        @Override
+        public DiptraceItem set(final int index, final DiptraceItem item) {
+            checkIndex(index, fNumSubItems);
+            DiptraceJournal journal = beforeChange(true);
+            DiptraceItem oldItem = fSubItems[index];
+            if (journal != null) {
+                journal.recordSubItem(DiptraceJournal.SET_SUB_ITEM,
+                    DiptraceItem.this, index, oldItem, item);
+            }
+            fSubItems[index] = item;
+            fSubItemsIndex = null;
+            return oldItem;
+        }
+        
+        /**
+         * Insert a sub item.
+         * @param index the position of the new sub item
+         * @param item the new sub item
+         */
+        @Override
+        public void add(final int index, final DiptraceItem item) {
+            checkIndex(index, fNumSubItems + 1);
+            DiptraceJournal journal = beforeChange(true);
+            if (journal != null) {
+                journal.recordSubItem(DiptraceJournal.ADD_SUB_ITEM,
+                    DiptraceItem.this, index, null, item);
+            }
+            insertSubItem(index, item);
+            modCount++;
+        }
+        
+        /**
+         * Remove a sub item.
+         * @param index the position of the sub item
+         * @return the removed sub item
+         */
+        @Override
+        public DiptraceItem remove(final int index) {
+            checkIndex(index, fNumSubItems);
+            DiptraceJournal journal = beforeChange(true);
+            if (journal != null) {
+                journal.recordSubItem(DiptraceJournal.REMOVE_SUB_ITEM,
+                    DiptraceItem.this, index, fSubItems[index], null);
+            }
+            modCount++;
+            return removeSubItem(index);
+        }
+        
+        /**
+         * Check that an index is in range.
+         * @param index the index
+         * @param size the number of valid indexes
+         */
+        private void checkIndex(final int index, final int size) {
+            if ((index < 0) || (index >= size)) {
+                throw new IndexOutOfBoundsException(
+                    String.format("Index: %d, Size: %d",
+                        index, fNumSubItems));
+            }
+        }
+        
+    }
+    
+    /**
+     * An item on the stack of write(), whose sub items are being written.
+     */
+    private static final class WriteFrame {
+        
+        /**
+         * The item.
+         */
+        private final DiptraceItem fItem;
+        
+        /**
+         * The indent of the item.
+         */
+        private final int fIndent;
+        
+        /**
+         * The indent of the sub items.
+         */
+        private final int fSubItemIndent;
+        
+        /**
+         * The sub items, which are the sub items of the source if the item
+         * is a copy whose sub items are not created yet.
+         */
+        private final DiptraceItem[] fSubItems;
+        
+        /**
+         * The number of sub items.
+         */
+        private final int fNumSubItems;
+        
+        /**
+         * The position of the next sub item to write.
+         */
+        private int fNext;
+        
+        /**
+         * Initializes a WriteFrame object.
+         * @param item the item
+         * @param indent the indent of the item
+         * @param subItemIndent the indent of the sub items
+         * @param subItems the sub items
+         * @param numSubItems the number of sub items
+         */
+        WriteFrame(
+            final DiptraceItem item,
+            final int indent,
+            final int subItemIndent,
+            final DiptraceItem[] subItems,
+            final int numSubItems) {
+            
+            this.fItem = item;
+            this.fIndent = indent;
+            this.fSubItemIndent = subItemIndent;
+            this.fSubItems = subItems;
+            this.fNumSubItems = numSubItems;
+        }
+        
+    }
+    
+    /**
+     * The sub items of a copy of an item, which are the sub items of the
+     * item until the copy or the item is changed.
+     */
+    private static final class CopiedSubItems
+        implements DiptraceLazySubItems {
+        
+        /**
+         * The item that is copied.
+         */
+        private final DiptraceItem fSource;
+        
+        /**
+         * Initializes a CopiedSubItems object.
+         * @param source the item that is copied
+         */
+        CopiedSubItems(final DiptraceItem source) {
+            this.fSource = source;
+        }
+        
+        /**
+         * Copy the sub items of the source to a copy of the source. The sub
+         * items of the sub items are still shared.
+         * @param item the copy
+         */
+        @Override
+        public void addSubItemsTo(final DiptraceItem item) {
+            fSource.removeLazyCopy(item);
+            for (int i = 0; i < fSource.fNumSubItems; i++) {
+                item.appendSubItem(fSource.fSubItems[i].duplicate(item));
+            }
+        }
+        
+        /**
+         * Write the sub items of the source.
+         * @param writer the writer that writes to the Diptrace ascii file
+         * @param indent the number of spaces to indent the sub items
+         * @throws IOException on any I/O error
+         */
+        @Override
+        public void write(final Writer writer, final int indent)
+            throws IOException {
+            
+            for (int i = 0; i < fSource.fNumSubItems; i++) {
+                fSource.fSubItems[i].write(writer, indent);
+            }
+        }
+        
+        /**
+         * Get the sub items of a copy of the copy, which shares the sub items
+         * of the source too.
+         * @param item the copy of the copy
+         * @return this object
+         */
+        @Override
+        public DiptraceLazySubItems shareWith(final DiptraceItem item) {
+            fSource.addLazyCopy(item);
+            return this;
+        }
+        
+    }
+    
 }
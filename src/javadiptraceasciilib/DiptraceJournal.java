@@ -0,0 +1,579 @@
+package javadiptraceasciilib;
+
+/**
+ * A journal of the changes of the items, which is used to undo and redo
+ * the changes. Each change is a record in a few parallel arrays instead of
+ * an object, so a journal of many changes is small. A record has the list
+ * of attributes or the item that is changed, the position in it, and the
+ * old and the new value.
+ * <P>
+ * The records are kept in a ring buffer. If the journal has a largest
+ * capacity and is full, the oldest changes are forgotten to make room for
+ * new changes. The changes are undone and redone in steps, where a step
+ * is the changes between two checkpoints.
+ */
+final class DiptraceJournal {
+    
+    /**
+     * An attribute is given a new value.
+     */
+    static final byte SET_ATTRIBUTE = 0;
+    
+    /**
+     * An attribute is inserted.
+     */
+    static final byte ADD_ATTRIBUTE = 1;
+    
+    /**
+     * An attribute is removed.
+     */
+    static final byte REMOVE_ATTRIBUTE = 2;
+    
+    /**
+     * A sub item is replaced with another sub item.
+     */
+    static final byte SET_SUB_ITEM = 3;
+    
+    /**
+     * A sub item is inserted.
+     */
+    static final byte ADD_SUB_ITEM = 4;
+    
+    /**
+     * A sub item is removed.
+     */
+    static final byte REMOVE_SUB_ITEM = 5;
+    
+    /**
+     * The size of the arrays when they are created.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    
+    /**
+     * The position of a record that is not kept.
+     */
+    private static final int NONE = -1;
+    
+    /**
+     * The largest number of records.
+     */
+    private final int fMaxCapacity;
+    
+    /**
+     * The size of the arrays.
+     */
+    private int fCapacity;
+    
+    /**
+     * The type of each record.
+     */
+    private byte[] fTypes;
+    
+    /**
+     * True for each record that is the first change of a step.
+     */
+    private boolean[] fStepStarts;
+    
+    /**
+     * The list of attributes or the item that is changed by each record.
+     */
+    private Object[] fTargets;
+    
+    /**
+     * The position of the attribute or the sub item of each record.
+     */
+    private int[] fIndexes;
+    
+    /**
+     * The old kind of the attribute of each record.
+     */
+    private byte[] fOldKinds;
+    
+    /**
+     * The old number of the attribute of each record.
+     */
+    private double[] fOldNumbers;
+    
+    /**
+     * The old text of the attribute or the old sub item of each record.
+     */
+    private Object[] fOldValues;
+    
+    /**
+     * The new kind of the attribute of each record.
+     */
+    private byte[] fNewKinds;
+    
+    /**
+     * The new number of the attribute of each record.
+     */
+    private double[] fNewNumbers;
+    
+    /**
+     * The new text of the attribute or the new sub item of each record.
+     */
+    private Object[] fNewValues;
+    
+    /**
+     * The position in the arrays of the oldest record.
+     */
+    private int fHead;
+    
+    /**
+     * The number of records, including the records that are undone and
+     * can be redone.
+     */
+    private int fSize;
+    
+    /**
+     * The number of records that are not undone.
+     */
+    private int fApplied;
+    
+    /**
+     * The position in the arrays of the last record that was added, or
+     * NONE if the last change was not kept.
+     */
+    private int fLastRecord;
+    
+    /**
+     * True if the next record is the first change of a step.
+     */
+    private boolean fStepPending = true;
+    
+    /**
+     * True while the changes are undone or redone, when the changes are
+     * not recorded.
+     */
+    private boolean fUndoing;
+    
+    /**
+     * True if the last undo or redo changed the sub items of an item or an
+     * attribute that may be a key of the maps of the project.
+     */
+    private boolean fMapsChanged;
+    
+    /**
+     * Initializes a DiptraceJournal object.
+     * @param maxCapacity the largest number of records
+     */
+    DiptraceJournal(final int maxCapacity) {
+        this.fMaxCapacity = maxCapacity;
+        allocate(Math.min(INITIAL_CAPACITY, maxCapacity));
+    }
+    
+    /**
+     * Create the arrays with a capacity. The records are copied to the
+     * start of the new arrays.
+     * @param capacity the capacity
+     */
+    private void allocate(final int capacity) {
+        fTypes = (byte[]) copyRecords(fTypes, new byte[capacity]);
+        fStepStarts
+            = (boolean[]) copyRecords(fStepStarts, new boolean[capacity]);
+        fTargets = (Object[]) copyRecords(fTargets, new Object[capacity]);
+        fIndexes = (int[]) copyRecords(fIndexes, new int[capacity]);
+        fOldKinds = (byte[]) copyRecords(fOldKinds, new byte[capacity]);
+        fOldNumbers
+            = (double[]) copyRecords(fOldNumbers, new double[capacity]);
+        fOldValues = (Object[]) copyRecords(fOldValues, new Object[capacity]);
+        fNewKinds = (byte[]) copyRecords(fNewKinds, new byte[capacity]);
+        fNewNumbers
+            = (double[]) copyRecords(fNewNumbers, new double[capacity]);
+        fNewValues = (Object[]) copyRecords(fNewValues, new Object[capacity]);
+        fHead = 0;
+        fCapacity = capacity;
+    }
+    
+    /**
+     * Copy the records of an array to the start of a new array.
+     * @param array the array, or null if there are no records
+     * @param newArray the new array
+     * @return the new array
+     */
+    private Object copyRecords(final Object array, final Object newArray) {
+        if (array == null) {
+            return newArray;
+        }
+        int firstPart = Math.min(fSize, fCapacity - fHead);
+        System.arraycopy(array, fHead, newArray, 0, firstPart);
+        System.arraycopy(array, 0, newArray, firstPart, fSize - firstPart);
+        return newArray;
+    }
+    
+    /**
+     * Get the position in the arrays of a record.
+     * @param record the number of the record, where the oldest record is
+     * zero
+     * @return the position
+     */
+    private int slot(final int record) {
+        return (fHead + record) % fCapacity;
+    }
+    
+    /**
+     * Record a change of a list of attributes. The new value is recorded
+     * by setNewAttribute() after the change.
+     * @param type SET_ATTRIBUTE, ADD_ATTRIBUTE or REMOVE_ATTRIBUTE
+     * @param list the list
+     * @param index the position of the attribute
+     * @param kind the kind of the attribute before the change, with the
+     * flags as they are stored in the list
+     * @param number the number of the attribute before the change
+     * @param text the text that is stored for the attribute before the
+     * change, or null
+     */
+    void recordAttribute(
+        final byte type,
+        final DiptraceAttributeList list,
+        final int index,
+        final byte kind,
+        final double number,
+        final String text) {
+        
+        if (fUndoing) {
+            return;
+        }
+        int slot = add(type, list, index);
+        if (slot != NONE) {
+            fOldKinds[slot] = kind;
+            fOldNumbers[slot] = number;
+            fOldValues[slot] = text;
+        }
+    }
+    
+    /**
+     * Record the new value of the attribute of the last change.
+     * @param kind the kind of the attribute after the change, with the
+     * flags as they are stored in the list
+     * @param number the number of the attribute after the change
+     * @param text the text that is stored for the attribute after the
+     * change, or null
+     */
+    void setNewAttribute(
+        final byte kind,
+        final double number,
+        final String text) {
+        
+        if (fUndoing) {
+            return;
+        }
+        if (fLastRecord != NONE) {
+            fNewKinds[fLastRecord] = kind;
+            fNewNumbers[fLastRecord] = number;
+            fNewValues[fLastRecord] = text;
+        }
+    }
+    
+    /**
+     * Record a change of the sub items of an item.
+     * @param type SET_SUB_ITEM, ADD_SUB_ITEM or REMOVE_SUB_ITEM
+     * @param item the item
+     * @param index the position of the sub item
+     * @param oldSubItem the sub item before the change, or null if a sub
+     * item is inserted
+     * @param newSubItem the sub item after the change, or null if a sub
+     * item is removed
+     */
+    void recordSubItem(
+        final byte type,
+        final DiptraceItem item,
+        final int index,
+        final DiptraceItem oldSubItem,
+        final DiptraceItem newSubItem) {
+        
+        if (fUndoing) {
+            return;
+        }
+        int slot = add(type, item, index);
+        if (slot != NONE) {
+            fOldValues[slot] = oldSubItem;
+            fNewValues[slot] = newSubItem;
+        }
+    }
+    
+    /**
+     * Add the changes of another journal that are not undone, in order.
+     * It's used to keep the changes of a transaction for undo and redo
+     * when the transaction is committed.
+     * @param journal the other journal
+     */
+    void append(final DiptraceJournal journal) {
+        for (int i = 0; i < journal.fApplied; i++) {
+            int source = journal.slot(i);
+            int slot = add(journal.fTypes[source], journal.fTargets[source],
+                journal.fIndexes[source]);
+            if (slot != NONE) {
+                fOldKinds[slot] = journal.fOldKinds[source];
+                fOldNumbers[slot] = journal.fOldNumbers[source];
+                fOldValues[slot] = journal.fOldValues[source];
+                fNewKinds[slot] = journal.fNewKinds[source];
+                fNewNumbers[slot] = journal.fNewNumbers[source];
+                fNewValues[slot] = journal.fNewValues[source];
+            }
+        }
+    }
+    
+    /**
+     * Add a record. The changes that are undone can't be redone after a
+     * new change. If the journal is full and can't grow, the oldest step
+     * is forgotten. If that was the step that the change belongs to, the
+     * rest of the step is not kept either, so the first record is always
+     * the first change of a step.
+     * @param type the type of the record
+     * @param target the list of attributes or the item
+     * @param index the position of the attribute or the sub item
+     * @return the position of the record in the arrays, or NONE if the
+     * record is not kept
+     */
+    private int add(final byte type, final Object target, final int index) {
+        while (fSize > fApplied) {
+            fSize--;
+            clear(slot(fSize));
+        }
+        
+        if ((fSize == fCapacity) && (fCapacity < fMaxCapacity)) {
+            allocate((int) Math.min(fCapacity * 2L, fMaxCapacity));
+        } else if (fSize == fCapacity) {
+            // A step that is partly forgotten can't be undone.
+            do {
+                clear(fHead);
+                fHead = (fHead + 1) % fCapacity;
+                fSize--;
+            } while ((fSize > 0) && !fStepStarts[fHead]);
+            fApplied = fSize;
+        }
+        
+        if ((fSize == 0) && !fStepPending) {
+            fLastRecord = NONE;
+            return NONE;
+        }
+        
+        int slot = slot(fSize);
+        fTypes[slot] = type;
+        fStepStarts[slot] = fStepPending;
+        fTargets[slot] = target;
+        fIndexes[slot] = index;
+        fStepPending = false;
+        fSize++;
+        fApplied++;
+        fLastRecord = slot;
+        return slot;
+    }
+    
+    /**
+     * Remove the references of a record.
+     * @param slot the position of the record in the arrays
+     */
+    private void clear(final int slot) {
+        fTargets[slot] = null;
+        fOldValues[slot] = null;
+        fNewValues[slot] = null;
+    }
+    
+    /**
+     * Get the number of changes that are not undone.
+     * @return the number of changes
+     */
+    int size() {
+        return fApplied;
+    }
+    
+    /**
+     * Start a new step. The next change is the first change of the step.
+     */
+    void checkpoint() {
+        fStepPending = true;
+    }
+    
+    /**
+     * Get whenether there is a step that can be undone.
+     * @return true if a step can be undone
+     */
+    boolean canUndo() {
+        return (fApplied > 0) && fStepStarts[fHead];
+    }
+    
+    /**
+     * Get whenether there is a step that can be redone.
+     * @return true if a step can be redone
+     */
+    boolean canRedo() {
+        return fApplied < fSize;
+    }
+    
+    /**
+     * Get whenether the last undo or redo changed the sub items of an item
+     * or an attribute that may be a RefDes, a name or a number, so the maps
+     * of the project must be created again. A step that only moves items
+     * doesn't change the maps.
+     * @return true if the maps may have changed
+     */
+    boolean isMapsChanged() {
+        return fMapsChanged;
+    }
+    
+    /**
+     * Get whenether a record changes the sub items of an item or an
+     * attribute that may be a key of the maps of the project.
+     * @param slot the position of the record in the arrays
+     * @return true if the record may change the maps
+     */
+    private boolean changesMaps(final int slot) {
+        if (fTypes[slot] != SET_ATTRIBUTE) {
+            return true;
+        }
+        DiptraceAttributeList list = (DiptraceAttributeList) fTargets[slot];
+        return list.isMapKey(fOldKinds[slot]) || list.isMapKey(fNewKinds[slot]);
+    }
+    
+    /**
+     * Undo the changes of the last step that is not undone, the last
+     * change first.
+     * @return true if a step is undone, false if there is no step to undo
+     */
+    boolean undo() {
+        if (!canUndo()) {
+            return false;
+        }
+        fUndoing = true;
+        fMapsChanged = false;
+        try {
+            do {
+                fApplied--;
+                fMapsChanged |= changesMaps(slot(fApplied));
+                undo(slot(fApplied));
+            } while (!fStepStarts[slot(fApplied)]);
+        } finally {
+            fUndoing = false;
+        }
+        fStepPending = true;
+        return true;
+    }
+    
+    /**
+     * Redo the changes of the first step that is undone.
+     * @return true if a step is redone, false if there is no step to redo
+     */
+    boolean redo() {
+        if (!canRedo()) {
+            return false;
+        }
+        fUndoing = true;
+        fMapsChanged = false;
+        try {
+            do {
+                fMapsChanged |= changesMaps(slot(fApplied));
+                redo(slot(fApplied));
+                fApplied++;
+            } while ((fApplied < fSize) && !fStepStarts[slot(fApplied)]);
+        } finally {
+            fUndoing = false;
+        }
+        fStepPending = true;
+        return true;
+    }
+    
+    /**
+     * Undo all the changes in the journal, the last change first, and
+     * forget the changes.
+     */
+    void undoAll() {
+        fUndoing = true;
+        try {
+            while (fApplied > 0) {
+                fApplied--;
+                undo(slot(fApplied));
+            }
+        } finally {
+            fUndoing = false;
+        }
+        while (fSize > 0) {
+            fSize--;
+            clear(slot(fSize));
+        }
+        fApplied = 0;
+        fStepPending = true;
+    }
+    
+    /**
+     * Undo the change of a record.
+     * @param slot the position of the record in the arrays
+     */
+    private void undo(final int slot) {
+        int index = fIndexes[slot];
+        switch (fTypes[slot]) {
+            case SET_ATTRIBUTE:
+                ((DiptraceAttributeList) fTargets[slot]).restoreSlot(
+                    index, fOldKinds[slot], fOldNumbers[slot],
+                    (String) fOldValues[slot]);
+                break;
+            
+            case ADD_ATTRIBUTE:
+                ((DiptraceAttributeList) fTargets[slot]).removeSlot(index);
+                break;
+            
+            case REMOVE_ATTRIBUTE:
+                ((DiptraceAttributeList) fTargets[slot]).insertSlot(
+                    index, fOldKinds[slot], fOldNumbers[slot],
+                    (String) fOldValues[slot]);
+                break;
+            
+            case SET_SUB_ITEM:
+                ((DiptraceItem) fTargets[slot]).getChildren().set(
+                    index, (DiptraceItem) fOldValues[slot]);
+                break;
+            
+            case ADD_SUB_ITEM:
+                ((DiptraceItem) fTargets[slot]).getChildren().remove(index);
+                break;
+            
+            default:
+                // REMOVE_SUB_ITEM
+                ((DiptraceItem) fTargets[slot]).getChildren().add(
+                    index, (DiptraceItem) fOldValues[slot]);
+                break;
+        }
+    }
+    
+    /**
+     * Redo the change of a record.
+     * @param slot the position of the record in the arrays
+     */
+    private void redo(final int slot) {
+        int index = fIndexes[slot];
+        switch (fTypes[slot]) {
+            case SET_ATTRIBUTE:
+                ((DiptraceAttributeList) fTargets[slot]).restoreSlot(
+                    index, fNewKinds[slot], fNewNumbers[slot],
+                    (String) fNewValues[slot]);
+                break;
+            
+            case ADD_ATTRIBUTE:
+                ((DiptraceAttributeList) fTargets[slot]).insertSlot(
+                    index, fNewKinds[slot], fNewNumbers[slot],
+                    (String) fNewValues[slot]);
+                break;
+            
+            case REMOVE_ATTRIBUTE:
+                ((DiptraceAttributeList) fTargets[slot]).removeSlot(index);
+                break;
+            
+            case SET_SUB_ITEM:
+                ((DiptraceItem) fTargets[slot]).getChildren().set(
+                    index, (DiptraceItem) fNewValues[slot]);
+                break;
+            
+            case ADD_SUB_ITEM:
+                ((DiptraceItem) fTargets[slot]).getChildren().add(
+                    index, (DiptraceItem) fNewValues[slot]);
+                break;
+            
+            default:
+                // REMOVE_SUB_ITEM
+                ((DiptraceItem) fTargets[slot]).getChildren().remove(index);
+                break;
+        }
+    }
+    
+}
@@ -0,0 +1,36 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The sub items of an item that are not created yet. The sub items are
+ * created the first time they are needed, and are written as they are if
+ * they are never needed. The source of the sub items is either never
+ * changed or is copied before it's changed, so several items may share it.
+ */
+interface DiptraceLazySubItems {
+    
+    /**
+     * Create the sub items and add them to an item.
+     * @param item the item
+     * @throws IOException on any I/O error
+     */
+    void addSubItemsTo(DiptraceItem item) throws IOException;
+    
+    /**
+     * Write the sub items.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the sub items
+     * @throws IOException on any I/O error
+     */
+    void write(Writer writer, int indent) throws IOException;
+    
+    /**
+     * Get the sub items of a copy of the item that has these sub items.
+     * @param item the copy
+     * @return the sub items of the copy
+     */
+    DiptraceLazySubItems shareWith(DiptraceItem item);
+    
+}
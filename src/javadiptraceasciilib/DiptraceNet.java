@@ -86,7 +86,71 @@ public class DiptraceNet {
                 newNetNumber,
                 newName);
         
+        fDiptraceProject.addSchematicsNet(newSchematicsNet);
+        fDiptraceProject.addPCBNet(newPCBNet);
+        
         return new DiptraceNet(fDiptraceProject, newSchematicsNet, newPCBNet);
     }
     
+    /**
+     * Get the name of this net.
+     * @return the name
+     */
+    public String getName() {
+        return DiptraceProject.getNetName(fPCBNet);
+    }
+    
+    /**
+     * Give this net a new name.
+     * @param newName the new name
+     * @throws DiptraceNetNameAlreadyExistsException thrown if the new name
+     * already exists
+     */
+    public void rename(final String newName)
+        throws DiptraceNetNameAlreadyExistsException {
+        
+        DiptraceOperations diptraceOperations
+            = fDiptraceProject.getDiptraceOperations();
+        
+        if (diptraceOperations.isNetNameInUse(newName)) {
+            throw new DiptraceNetNameAlreadyExistsException(
+                String.format("The name %s is already in use", newName));
+        }
+        
+        fDiptraceProject.removeSchematicsNet(fSchematicsNet);
+        setName(fSchematicsNet, newName);
+        fDiptraceProject.addSchematicsNet(fSchematicsNet);
+        
+        fDiptraceProject.removePCBNet(fPCBNet);
+        setName(fPCBNet, newName);
+        fDiptraceProject.addPCBNet(fPCBNet);
+    }
+    
+    /**
+     * Remove this net from the schematics and the pcb. Items that refer to
+     * the net, like the pins that are connected to it, are not changed.
+     */
+    public void delete() {
+        
+        DiptraceOperations diptraceOperations
+            = fDiptraceProject.getDiptraceOperations();
+        
+        fDiptraceProject.removeSchematicsNet(fSchematicsNet);
+        diptraceOperations.deleteItem(fSchematicsNet);
+        
+        fDiptraceProject.removePCBNet(fPCBNet);
+        diptraceOperations.deleteItem(fPCBNet);
+    }
+    
+    /**
+     * Set the name of a net in the schematics or in the pcb.
+     * @param net the net
+     * @param name the name
+     */
+    private static void setName(final DiptraceItem net, final String name) {
+        ((DiptraceStringAttribute)
+            ((DiptraceGenericItem) net).getAttributes().get(0))
+                .setString(name);
+    }
+    
 }
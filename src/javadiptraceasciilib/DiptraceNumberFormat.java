@@ -0,0 +1,112 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Formats numbers the way String.format(Locale.ROOT, "%1.3f", value) does,
+ * but without creating any object. The digits are appended one at a time
+ * to the output.
+ */
+final class DiptraceNumberFormat {
+    
+    /**
+     * Ten to the power of the number of decimals.
+     */
+    private static final long SCALE = 1000;
+    
+    /**
+     * The largest absolute value that is formatted by this class. Larger
+     * values, infinity and NaN are formatted by String.format(). Below this
+     * value, the rounding error of value * SCALE is much smaller than
+     * TIE_TOLERANCE.
+     */
+    private static final double MAX_FAST_VALUE = 1e6;
+    
+    /**
+     * If the part of value * SCALE that is rounded away is this close to
+     * one half, the value is formatted by String.format(), which rounds the
+     * decimal text of the value half up.
+     */
+    private static final double TIE_TOLERANCE = 1e-6;
+    
+    /**
+     * One half.
+     */
+    private static final double HALF = 0.5;
+    
+    /**
+     * The radix of the digits.
+     */
+    private static final int RADIX = 10;
+    
+    /**
+     * Initializes a DiptraceNumberFormat object. There are only static
+     * methods in this class.
+     */
+    private DiptraceNumberFormat() {
+    }
+    
+    /**
+     * Format a number with three decimals.
+     * @param value the number
+     * @return the text
+     */
+    static String format(final double value) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            append(sb, value);
+        } catch (IOException e) {
+            // A StringBuilder never throws IOException.
+            throw new RuntimeException(e);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Append a number with three decimals to an output.
+     * @param out the output
+     * @param value the number
+     * @throws IOException on any I/O error
+     */
+    static void append(final Appendable out, final double value)
+        throws IOException {
+        
+        if (!(Math.abs(value) < MAX_FAST_VALUE)) {
+            out.append(String.format(Locale.ROOT, "%1.3f", value));
+            return;
+        }
+        
+        double scaled = Math.abs(value) * SCALE;
+        long units = (long) scaled;
+        double fraction = scaled - units;
+        if (Math.abs(fraction - HALF) < TIE_TOLERANCE) {
+            out.append(String.format(Locale.ROOT, "%1.3f", value));
+            return;
+        }
+        if (fraction > HALF) {
+            units++;
+        }
+        
+        // The sign bit is also set for -0.0, which is formatted as "-0.000".
+        if (Double.doubleToRawLongBits(value) < 0) {
+            out.append('-');
+        }
+        
+        long whole = units / SCALE;
+        long power = 1;
+        while (power * RADIX <= whole) {
+            power *= RADIX;
+        }
+        for (; power > 0; power /= RADIX) {
+            out.append((char) ('0' + (whole / power) % RADIX));
+        }
+        
+        out.append('.');
+        long decimals = units % SCALE;
+        for (long p = SCALE / RADIX; p > 0; p /= RADIX) {
+            out.append((char) ('0' + (decimals / p) % RADIX));
+        }
+    }
+    
+}
@@ -29,34 +29,6 @@ final class DiptraceOperations {
         return fProject;
     }
     
-    /**
-     * Get the component parts in the schematics by its part name.
-     * @param parent the parent DiptraceItem
-     * @param matchItem an object that tells if this item is a match
-     * @return the part
-     * @throws DiptraceNotFoundException if the component part is not found
-     */
-    private List<DiptraceItem> getDiptraceItems(
-        final DiptraceItem parent,
-        final MatchDiptraceItem matchItem)
-        throws DiptraceNotFoundException {
-        
-        List<DiptraceItem> diptraceItems = new ArrayList<>();
-        
-        for (DiptraceItem child : parent.getChildren()) {
-            if (matchItem.match(child)) {
-                diptraceItems.add(child);
-            }
-        }
-        
-        if (diptraceItems.isEmpty()) {
-            throw new DiptraceNotFoundException(
-                String.format("No item is not found"));
-        }
-        
-        return diptraceItems;
-    }
-    
     /**
      * Get the component part in the schematics by its part name.
      * @param name the name of the part
@@ -66,21 +38,14 @@ final class DiptraceOperations {
     public List<DiptraceItem> getSchematicsComponentParts(final String name)
         throws DiptraceNotFoundException {
         
-        List<DiptraceItem> list
-            = getDiptraceItems(fProject.getSchematicsComponents(),
-                (DiptraceItem item) -> {
-                    DiptraceGenericItem genericItem
-                        = (DiptraceGenericItem) item;
-                    return (name.equals(
-                        genericItem.getAttributes().get(1).getString()));
-                });
+        List<DiptraceItem> list = fProject.getSchematicsComponentParts(name);
         
-        if (list.isEmpty()) {
+        if (list == null) {
             throw new DiptraceNotFoundException(
                 String.format("PCB Component %s is not found", name));
         }
         
-        return list;
+        return new ArrayList<>(list);
     }
     
     /**
@@ -92,21 +57,14 @@ final class DiptraceOperations {
     public DiptraceItem getPCBComponent(final String name)
         throws DiptraceNotFoundException {
         
-        List<DiptraceItem> list
-            = getDiptraceItems(fProject.getPCBComponents(),
-                (DiptraceItem item) -> {
-                    DiptraceGenericItem genericItem
-                        = (DiptraceGenericItem) item;
-                    return (name.equals(
-                        genericItem.getAttributes().get(1).getString()));
-                });
+        DiptraceItem item = fProject.getPCBComponent(name);
         
-        if (list.isEmpty()) {
+        if (item == null) {
             throw new DiptraceNotFoundException(
                 String.format("PCB Component %s is not found", name));
         }
         
-        return list.get(0);
+        return item;
     }
     
     /**
@@ -116,16 +74,9 @@ final class DiptraceOperations {
      */
     public boolean isRefDesInUse(final String refDes) {
         
-        try {
-            List<DiptraceItem> list = getSchematicsComponentParts(refDes);
-            DiptraceItem item = getPCBComponent(refDes);
-        } catch (DiptraceNotFoundException ex) {
-            // The RefDes is not found
-            return false;
-        }
-        
-        // The RefDes is found in either schematics or pcb
-        return true;
+        // The RefDes is in use if it's found in either schematics or pcb
+        return (fProject.getSchematicsComponentParts(refDes) != null)
+            || (fProject.getPCBComponent(refDes) != null);
     }
     
     /**
@@ -137,21 +88,14 @@ final class DiptraceOperations {
     public DiptraceItem getSchematicsNet(final String name)
         throws DiptraceNotFoundException {
         
-        List<DiptraceItem> list
-            = getDiptraceItems(fProject.getSchematicsNets(),
-                (DiptraceItem item) -> {
-                    DiptraceGenericItem genericItem
-                        = (DiptraceGenericItem) item;
-                    return (name.equals(
-                        genericItem.getAttributes().get(0).getString()));
-                });
+        DiptraceItem item = fProject.getSchematicsNet(name);
         
-        if (list.isEmpty()) {
+        if (item == null) {
             throw new DiptraceNotFoundException(
                 String.format("Schematics net %s is not found", name));
         }
         
-        return list.get(0);
+        return item;
     }
     
     /**
@@ -163,22 +107,14 @@ final class DiptraceOperations {
     public DiptraceItem getPCBNet(final String name)
         throws DiptraceNotFoundException {
         
-        List<DiptraceItem> list
-            = getDiptraceItems(fProject.getPCBNets(),
-                (DiptraceItem item) -> {
-                    DiptraceGenericItem genericItem
-                        = (DiptraceGenericItem) item;
-                    return (name.equals(
-                        genericItem.getAttributes().get(0).getString()));
-//                    return (name.equals(genericItem.getAttributes(" ")));
-                });
-        
-        if (list.isEmpty()) {
+        DiptraceItem item = fProject.getPCBNet(name);
+        
+        if (item == null) {
             throw new DiptraceNotFoundException(
                 String.format("PCB net %s is not found", name));
         }
         
-        return list.get(0);
+        return item;
     }
     
     /**
@@ -188,16 +124,9 @@ final class DiptraceOperations {
      */
     public boolean isNetNameInUse(final String name) {
         
-        try {
-            getSchematicsNet(name);
-            getPCBNet(name);
-        } catch (DiptraceNotFoundException ex) {
-            // The name is not found
-            return false;
-        }
-        
-        // The name is found in either schematics or pcb
-        return true;
+        // The name is in use if it's found in either schematics or pcb
+        return (fProject.getSchematicsNet(name) != null)
+            || (fProject.getPCBNet(name) != null);
     }
     
     /**
@@ -209,11 +138,25 @@ final class DiptraceOperations {
     public DiptraceItem duplicateItem(final DiptraceItem item) {
         DiptraceItem newItem = item.duplicate(item.getParent());
         
-        item.getChildren().add(newItem);
+        item.getParent().addSubItem(newItem);
         
         return newItem;
     }
     
+    /**
+     * Remove an item from the tree.
+     * @param item the item to remove
+     */
+    public void deleteItem(final DiptraceItem item) {
+        List<DiptraceItem> siblings = item.getParent().getChildren();
+        for (int i = 0; i < siblings.size(); i++) {
+            if (siblings.get(i) == item) {
+                siblings.remove(i);
+                return;
+            }
+        }
+    }
+    
     /**
      * Duplicate an item with all its children, gives it a new number and adds
      * the new item to the tree.
@@ -250,7 +193,7 @@ final class DiptraceOperations {
                 .get(0))
                     .setInt(newHiddenIdentifier);
         
-        parent.getChildren().add(newItem);
+        parent.addSubItem(newItem);
         
         return newItem;
     }
@@ -285,7 +228,7 @@ final class DiptraceOperations {
                 .get(0))
                     .setInt(newNumber);
         
-        parent.getChildren().add(newItem);
+        parent.addSubItem(newItem);
         
         return newItem;
     }
@@ -380,20 +323,4 @@ final class DiptraceOperations {
         attrAngle.setInt(attrAngle.getInt() + angle);
     }
     
-    
-    
-    /**
-     * An interface that answers whenether the item is a match.
-     */
-    private interface MatchDiptraceItem {
-        
-        /**
-         * Is this item a match?
-         * @param item the item
-         * @return true if it's a match
-         */
-        boolean match(DiptraceItem item);
-    }
-    
-    
 }
@@ -4,16 +4,28 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * This class is holds a diptrace project. It can have both the schematics
@@ -80,6 +92,54 @@ public final class DiptraceProject {
      */
     private int fLastNetNumber = 0;
     
+    /**
+     * Map of the component parts in the schematics where the key is the
+     * RefDes of the component. A component may have several parts.
+     */
+    private final Map<String, List<DiptraceItem>>
+        fSchematicsComponentRefDesMap = new HashMap<>();
+    
+    /**
+     * Map of the components in the pcb where the key is the component's
+     * RefDes.
+     */
+    private final Map<String, DiptraceItem> fPCBComponentRefDesMap
+        = new HashMap<>();
+    
+    /**
+     * Map of the nets in the schematics where the key is the net's name.
+     */
+    private final Map<String, DiptraceItem> fSchematicsNetNameMap
+        = new HashMap<>();
+    
+    /**
+     * Map of the nets in the pcb where the key is the net's name.
+     */
+    private final Map<String, DiptraceItem> fPCBNetNameMap
+        = new HashMap<>();
+    
+    /**
+     * The connections between the components and the nets on the pcb. Null
+     * until it's needed.
+     */
+    private DiptraceConnectivity fConnectivity;
+    
+    /**
+     * The modification count of the pcb when fConnectivity was created.
+     */
+    private int fConnectivityModificationCount;
+    
+    /**
+     * The spatial index of the pcb. Null until it's needed.
+     */
+    private DiptraceSpatialIndex fSpatialIndex;
+    
+    /**
+     * The modification count of the pcb when fSpatialIndex was created or
+     * last updated.
+     */
+    private int fSpatialIndexModificationCount;
+    
     /**
      * The list of layers on the PCB.
      */
@@ -91,12 +151,247 @@ public final class DiptraceProject {
     private final List<DiptracePCBNonSignalLayer> fPCBNonSignalLayers
         = new ArrayList<>();
     
+    /**
+     * The sections that parseSchematics() and parsePCB() need.
+     */
+    private static final List<String> REQUIRED_SECTIONS
+        = Arrays.asList("Components", "Nets", "Layers", "NonSignals");
+    
+    /**
+     * The identifiers of the items whose sub items are parsed the first time
+     * they are needed.
+     */
+    private final Set<String> fLazySections = new HashSet<>();
+    
+    /**
+     * The identifiers of the sections that are loaded when a file is read.
+     * If empty, all sections are loaded.
+     */
+    private final Set<String> fLoadedSections = new HashSet<>();
+    
+    /**
+     * The pool that parses the sections in parallel, or null if the files
+     * are parsed by the calling thread only.
+     */
+    private ForkJoinPool fParsingPool;
+    
+    /**
+     * True while the sections of a file are found, before they are parsed
+     * in parallel.
+     */
+    private boolean fFindingSections;
+    
+    /**
+     * True if the files are kept in a DiptraceDocument when they are read.
+     */
+    private boolean fColumnarStore;
+    
+    /**
+     * True if the items that are not changed are copied from the files that
+     * were read when the files are written.
+     */
+    private boolean fSpliceWrite;
+    
+    /**
+     * The open transaction, or null.
+     */
+    private DiptraceTransaction fTransaction;
+    
+    /**
+     * The largest number of changes that are kept for undo and redo, or
+     * zero if the changes are not kept.
+     */
+    private int fUndoCapacity;
+    
+    /**
+     * The changes that are kept for undo and redo, or null.
+     */
+    private DiptraceJournal fUndoJournal;
+    
     /**
      * Constructs a DiptraceProject.
      */
     public DiptraceProject() {
     }
     
+    /**
+     * Set the sections that are parsed lazily. When a file is read, the sub
+     * items of an item with one of these identifiers are not parsed. Only
+     * the position of the sub items in the file is kept, and the sub items
+     * are parsed the first time they are needed. If they are never needed,
+     * the original text is written as it is when the file is written.
+     * <P>
+     * For example, "CacheLib" has most of the lines of a pcb file but is
+     * seldom needed. The setting is used by the files that are read after
+     * this method is called.
+     * @param identifiers the identifiers of the sections
+     */
+    public void setLazySections(final Collection<String> identifiers) {
+        fLazySections.clear();
+        fLazySections.addAll(identifiers);
+    }
+    
+    /**
+     * Set the sections that are loaded when a file is read. A section is a
+     * sub item of a top level item, for example "Components" in "Board" or
+     * in "Schematic". The sub items of the other sections are skipped by
+     * only counting the parentheses, and are parsed the first time they are
+     * needed, in the same way as the sections that are set by
+     * setLazySections().
+     * <P>
+     * The sections "Components", "Nets", "Layers" and "NonSignals" are
+     * always loaded since they are needed by the project. The setting is
+     * used by the files that are read after this method is called.
+     * @param identifiers the identifiers of the sections, or an empty
+     * collection to load all the sections
+     */
+    public void setLoadedSections(final Collection<String> identifiers) {
+        fLoadedSections.clear();
+        fLoadedSections.addAll(identifiers);
+        if (!fLoadedSections.isEmpty()) {
+            fLoadedSections.addAll(REQUIRED_SECTIONS);
+        }
+    }
+    
+    /**
+     * Set the pool that parses the files in parallel. When a file is read,
+     * the sections of the file are first found by only counting the
+     * parentheses. Then each section is parsed as a task in the pool. A
+     * section is a sub item of a top level item, for example "Components"
+     * or "CacheLib" in "Board". The sections that are not loaded or are
+     * lazy are not parsed.
+     * <P>
+     * Note that only the parsing is done in parallel. The project must still
+     * be used by one thread at a time.
+     * @param pool the pool, for example ForkJoinPool.commonPool(), or null
+     * to parse the files in the calling thread only
+     */
+    public void setParsingPool(final ForkJoinPool pool) {
+        fParsingPool = pool;
+    }
+    
+    /**
+     * Set whenether the files are kept in flat arrays when they are read.
+     * The whole file is parsed into a DiptraceDocument, where each item is
+     * an index in a few arrays instead of objects. The items of the tree are
+     * created from the document one level at a time the first time they
+     * are needed, and the parts of the tree that are never needed are
+     * written straight from the document.
+     * <P>
+     * This is useful for large files and for programs that keep many
+     * projects in memory. The lazy sections, the loaded sections and the
+     * parsing pool are not used when the files are kept in flat arrays.
+     * The setting is used by the files that are read after this method is
+     * called.
+     * @param columnarStore true to keep the files in flat arrays
+     */
+    public void setColumnarStore(final boolean columnarStore) {
+        fColumnarStore = columnarStore;
+    }
+    
+    /**
+     * Set whenether writeSchematicsAndPCB() copies the items that are not
+     * changed from the files that were read. Only the items on the paths
+     * from the changed items to the top of the file are written item by
+     * item, so a small change to a large file is written fast, and the
+     * parts of the file that are not changed are written exactly as they
+     * were read.
+     * <P>
+     * If the files are read by readMappedSchematicsAndPCB(), large parts
+     * are copied from file to file without being decoded. If a file is
+     * written to the same file as it was read from, the new file is
+     * written next to it and then replaces it.
+     * @param spliceWrite true to copy the items that are not changed
+     */
+    public void setSpliceWrite(final boolean spliceWrite) {
+        fSpliceWrite = spliceWrite;
+    }
+    
+    /**
+     * Parse a file into a root item. If there is a parsing pool, the
+     * sections are parsed in parallel.
+     * @param root the root item
+     * @param tokenizer the tokenizer that parses the Diptrace ascii file
+     * @throws IOException when IO error occurs
+     */
+    private void parseRoot(
+        final DiptraceRootItem root,
+        final DiptraceTokenizer tokenizer)
+        throws IOException {
+        
+        root.setSourceText(tokenizer.getText());
+        
+        // The changes of the old tree can't be undone in the new tree.
+        setUndoCapacity(fUndoCapacity);
+        
+        if (fColumnarStore) {
+            DiptraceDocument document = DiptraceDocument.parse(tokenizer);
+            root.setLazySubItems(
+                document.getSubItems(DiptraceDocument.ROOT));
+            return;
+        }
+        
+        if (fParsingPool == null) {
+            root.parse(tokenizer);
+            return;
+        }
+        
+        fFindingSections = true;
+        try {
+            root.parse(tokenizer);
+        } finally {
+            fFindingSections = false;
+        }
+        
+        // The sections are already in the tree in the order of the file. The
+        // tasks only parse the sub items of each section.
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (DiptraceItem topLevelItem : root.getChildren()) {
+            if (topLevelItem.getLazySubItems() != null) {
+                continue;
+            }
+            for (DiptraceItem section : topLevelItem.getChildren()) {
+                if ((section.getLazySubItems() != null)
+                    && !isLazySection(section)) {
+                    
+                    tasks.add(fParsingPool.submit(
+                        () -> section.materializeSubItems()));
+                }
+            }
+        }
+        
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+    
+    /**
+     * Get whenether the sub items of an item are parsed the first time they
+     * are needed instead of when the file is read.
+     * @param item the item
+     * @return true if the sub items are parsed lazily
+     */
+    boolean isLazySection(final DiptraceItem item) {
+        
+        if (fLazySections.contains(item.getIdentifier())) {
+            return true;
+        }
+        
+        // Is the item a section, that is a sub item of a top level item?
+        if ((item.getParent() == null)
+            || !(item.getParent().getParent() instanceof DiptraceRootItem)) {
+            
+            return false;
+        }
+        
+        if (fFindingSections) {
+            return true;
+        }
+        
+        return !fLoadedSections.isEmpty()
+            && !fLoadedSections.contains(item.getIdentifier());
+    }
+    
     /**
      * Get the DiptraceOperations object.
      * @return diptracePrimitiveOperations
@@ -215,6 +510,161 @@ public final class DiptraceProject {
         return fPCBNetNumberMap.get(number);
     }
     
+    /**
+     * Get the component parts in the schematics by the RefDes.
+     * @param refDes the RefDes
+     * @return the parts or null if there is no such component
+     */
+    List<DiptraceItem> getSchematicsComponentParts(final String refDes) {
+        return fSchematicsComponentRefDesMap.get(refDes);
+    }
+    
+    /**
+     * Get the component in the pcb by the RefDes.
+     * @param refDes the RefDes
+     * @return the component or null if there is no such component
+     */
+    DiptraceItem getPCBComponent(final String refDes) {
+        return fPCBComponentRefDesMap.get(refDes);
+    }
+    
+    /**
+     * Get the net in the schematics by its name.
+     * @param name the name
+     * @return the net or null if there is no such net
+     */
+    DiptraceItem getSchematicsNet(final String name) {
+        return fSchematicsNetNameMap.get(name);
+    }
+    
+    /**
+     * Get the net in the pcb by its name.
+     * @param name the name
+     * @return the net or null if there is no such net
+     */
+    DiptraceItem getPCBNet(final String name) {
+        return fPCBNetNameMap.get(name);
+    }
+    
+    /**
+     * Add a component part in the schematics to the maps of the project.
+     * It's called when the part is read and when it gets a new RefDes.
+     * @param part the part
+     */
+    void addSchematicsComponentPart(final DiptraceItem part) {
+        fSchematicsComponentRefDesMap
+            .computeIfAbsent(getRefDes(part), (key) -> new ArrayList<>())
+            .add(part);
+        fSchematicsComponentNumberMap.put(getNumber(part), part);
+    }
+    
+    /**
+     * Remove a component part in the schematics from the maps of the
+     * project. It's called when the part is removed and before it gets a
+     * new RefDes.
+     * @param part the part
+     */
+    void removeSchematicsComponentPart(final DiptraceItem part) {
+        String refDes = getRefDes(part);
+        List<DiptraceItem> parts = fSchematicsComponentRefDesMap.get(refDes);
+        if (parts != null) {
+            parts.remove(part);
+            if (parts.isEmpty()) {
+                fSchematicsComponentRefDesMap.remove(refDes);
+            }
+        }
+        fSchematicsComponentNumberMap.remove(getNumber(part), part);
+    }
+    
+    /**
+     * Add a component in the pcb to the maps of the project. If there are
+     * several components with the same RefDes, the first one is kept.
+     * @param component the component
+     */
+    void addPCBComponent(final DiptraceItem component) {
+        fPCBComponentRefDesMap.putIfAbsent(getRefDes(component), component);
+        fPCBComponentNumberMap.put(getNumber(component), component);
+    }
+    
+    /**
+     * Remove a component in the pcb from the maps of the project.
+     * @param component the component
+     */
+    void removePCBComponent(final DiptraceItem component) {
+        fPCBComponentRefDesMap.remove(getRefDes(component), component);
+        fPCBComponentNumberMap.remove(getNumber(component), component);
+    }
+    
+    /**
+     * Add a net in the schematics to the maps of the project. If there are
+     * several nets with the same name, the first one is kept.
+     * @param net the net
+     */
+    void addSchematicsNet(final DiptraceItem net) {
+        fSchematicsNetNameMap.putIfAbsent(getNetName(net), net);
+        fSchematicsNetNumberMap.put(getNumber(net), net);
+    }
+    
+    /**
+     * Remove a net in the schematics from the maps of the project.
+     * @param net the net
+     */
+    void removeSchematicsNet(final DiptraceItem net) {
+        fSchematicsNetNameMap.remove(getNetName(net), net);
+        fSchematicsNetNumberMap.remove(getNumber(net), net);
+    }
+    
+    /**
+     * Add a net in the pcb to the maps of the project. If there are several
+     * nets with the same name, the first one is kept.
+     * @param net the net
+     */
+    void addPCBNet(final DiptraceItem net) {
+        fPCBNetNameMap.putIfAbsent(getNetName(net), net);
+        fPCBNetNumberMap.put(getNumber(net), net);
+    }
+    
+    /**
+     * Remove a net in the pcb from the maps of the project.
+     * @param net the net
+     */
+    void removePCBNet(final DiptraceItem net) {
+        fPCBNetNameMap.remove(getNetName(net), net);
+        fPCBNetNumberMap.remove(getNumber(net), net);
+    }
+    
+    /**
+     * Get the RefDes of a component part in the schematics or of a
+     * component in the pcb.
+     * @param component the part or the component
+     * @return the RefDes
+     */
+    static String getRefDes(final DiptraceItem component) {
+        return ((DiptraceGenericItem) component).getAttributes().get(1)
+            .getString();
+    }
+    
+    /**
+     * Get the name of a net in the schematics or in the pcb.
+     * @param net the net
+     * @return the name
+     */
+    static String getNetName(final DiptraceItem net) {
+        return ((DiptraceGenericItem) net).getAttributes().get(0).getString();
+    }
+    
+    /**
+     * Get the number of a component or a net.
+     * @param item the component or the net
+     * @return the number
+     */
+    private static int getNumber(final DiptraceItem item) {
+        DiptraceGenericItem numberItem
+            = (DiptraceGenericItem) item.getSubItem("Number");
+        DiptraceAttribute numberAttr = numberItem.getAttributes().get(0);
+        return ((DiptraceDoubleAttribute) numberAttr).getInt();
+    }
+    
     /**
      * Update the last component number.
      * @param number a component number
@@ -305,6 +755,283 @@ public final class DiptraceProject {
         return fPCBRoot.getSubItem("Board").getSubItem("Nets");
     }
     
+    /**
+     * Get the connections between the components and the nets on the pcb.
+     * The connections are found the first time they are needed and are
+     * found again if the pcb has been changed since then.
+     * @return the connections
+     */
+    public DiptraceConnectivity getConnectivity() {
+        if ((fConnectivity == null)
+            || (fConnectivityModificationCount
+                != fPCBRoot.getModificationCount())) {
+            
+            fConnectivity
+                = new DiptraceConnectivity(getPCBComponents(), getPCBNets());
+            fConnectivityModificationCount = fPCBRoot.getModificationCount();
+        }
+        return fConnectivity;
+    }
+    
+    /**
+     * Get the shapes on the pcb.
+     * @return the DiptraceItem that has all the shapes on the board as
+     * DiptraceItem children, or null if the board has no shapes
+     */
+    DiptraceItem getPCBShapes() {
+        return fPCBRoot.getSubItem("Board").getSubItem("Shapes");
+    }
+    
+    /**
+     * Get the spatial index of the pcb. The index is created the first time
+     * it's needed and is created again if the pcb has been changed since
+     * then, except when components are moved by DiptraceComponent, which
+     * updates the index.
+     * @return the spatial index
+     */
+    public DiptraceSpatialIndex getSpatialIndex() {
+        if (getCurrentSpatialIndex() == null) {
+            fSpatialIndex = new DiptraceSpatialIndex(this);
+            fSpatialIndexModificationCount = fPCBRoot.getModificationCount();
+        }
+        return fSpatialIndex;
+    }
+    
+    /**
+     * Get the spatial index of the pcb if it's up to date.
+     * @return the spatial index or null if it's not created or if the pcb
+     * has been changed since it was created
+     */
+    DiptraceSpatialIndex getCurrentSpatialIndex() {
+        if ((fSpatialIndex == null)
+            || (fSpatialIndexModificationCount
+                != fPCBRoot.getModificationCount())) {
+            
+            return null;
+        }
+        return fSpatialIndex;
+    }
+    
+    /**
+     * Update the spatial index after a component has been moved. The index
+     * must have been up to date before the component was moved.
+     * @param spatialIndex the spatial index that was up to date
+     * @param component the Component item on the pcb
+     */
+    void updateSpatialIndex(
+        final DiptraceSpatialIndex spatialIndex,
+        final DiptraceItem component) {
+        
+        if ((spatialIndex == null) || (spatialIndex != fSpatialIndex)) {
+            return;
+        }
+        if (fTransaction != null) {
+            // The component is updated when the transaction is committed.
+            fTransaction.addMovedComponent(spatialIndex, component);
+            return;
+        }
+        spatialIndex.updateComponent(component);
+        fSpatialIndexModificationCount = fPCBRoot.getModificationCount();
+    }
+    
+    /**
+     * Mark the spatial index as up to date, after the changes of the pcb
+     * since it was up to date have been undone.
+     * @param spatialIndex the spatial index that was up to date, or null
+     */
+    void validateSpatialIndex(final DiptraceSpatialIndex spatialIndex) {
+        if ((spatialIndex != null) && (spatialIndex == fSpatialIndex)) {
+            fSpatialIndexModificationCount = fPCBRoot.getModificationCount();
+        }
+    }
+    
+    /**
+     * Start a transaction. The changes of the project until the
+     * transaction is ended are kept by DiptraceTransaction.commit() or are
+     * undone by DiptraceTransaction.rollback(). Only one transaction can be
+     * open at a time.
+     * @return the transaction
+     */
+    public DiptraceTransaction beginTransaction() {
+        if (fTransaction != null) {
+            throw new IllegalStateException(
+                "The project is already in a transaction");
+        }
+        fTransaction = new DiptraceTransaction(this, getCurrentSpatialIndex(),
+            fLastComponentNumber, fLastComponentHiddenIdentifier,
+            fLastNetNumber);
+        return fTransaction;
+    }
+    
+    /**
+     * Get the open transaction.
+     * @return the transaction, or null if the project is not in a
+     * transaction
+     */
+    DiptraceTransaction getTransaction() {
+        return fTransaction;
+    }
+    
+    /**
+     * Called when a transaction is ended.
+     * @param transaction the transaction
+     */
+    void endTransaction(final DiptraceTransaction transaction) {
+        if (fTransaction == transaction) {
+            fTransaction = null;
+        }
+    }
+    
+    /**
+     * Keep the changes of the project for undo and redo. Each change of an
+     * attribute or of the sub items of an item is recorded with the old and
+     * the new value, so the project doesn't have to be copied to undo the
+     * changes. If more changes are made than the capacity, the oldest
+     * changes are forgotten. The changes that are kept are forgotten when
+     * this method is called and when a file is read.
+     * @param capacity the largest number of changes that are kept, or zero
+     * to not keep the changes
+     */
+    public void setUndoCapacity(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(
+                "The capacity must not be negative");
+        }
+        fUndoCapacity = capacity;
+        fUndoJournal = null;
+        if (capacity > 0) {
+            fUndoJournal = new DiptraceJournal(capacity);
+        }
+    }
+    
+    /**
+     * Get the journal that the changes are kept in for undo and redo.
+     * @return the journal, or null if the changes are not kept
+     */
+    DiptraceJournal getUndoJournal() {
+        return fUndoJournal;
+    }
+    
+    /**
+     * Mark the end of a step of the changes that are kept for undo and redo.
+     * The changes after the last checkpoint are undone together by undo().
+     */
+    public void checkpoint() {
+        if (fUndoJournal != null) {
+            fUndoJournal.checkpoint();
+        }
+    }
+    
+    /**
+     * Get whenether there is a step of changes that can be undone.
+     * @return true if undo() would undo a step
+     */
+    public boolean canUndo() {
+        return (fUndoJournal != null) && fUndoJournal.canUndo();
+    }
+    
+    /**
+     * Get whenether there is a step of changes that can be redone.
+     * @return true if redo() would redo a step
+     */
+    public boolean canRedo() {
+        return (fUndoJournal != null) && fUndoJournal.canRedo();
+    }
+    
+    /**
+     * Undo the changes since the last checkpoint that is not undone.
+     * @return true if a step of changes is undone, false if there are no
+     * changes to undo
+     */
+    public boolean undo() {
+        checkNotInTransaction();
+        if (!canUndo()) {
+            return false;
+        }
+        fUndoJournal.undo();
+        if (fUndoJournal.isMapsChanged()) {
+            rebuildMaps();
+        }
+        return true;
+    }
+    
+    /**
+     * Redo the changes of the last step that was undone.
+     * @return true if a step of changes is redone, false if there are no
+     * changes to redo
+     */
+    public boolean redo() {
+        checkNotInTransaction();
+        if (!canRedo()) {
+            return false;
+        }
+        fUndoJournal.redo();
+        if (fUndoJournal.isMapsChanged()) {
+            rebuildMaps();
+        }
+        return true;
+    }
+    
+    /**
+     * Check that the project is not in a transaction.
+     */
+    private void checkNotInTransaction() {
+        if (fTransaction != null) {
+            throw new IllegalStateException(
+                "The project is in a transaction");
+        }
+    }
+    
+    /**
+     * Set the last used numbers as they were before a transaction.
+     * @param lastComponentNumber the last used component number
+     * @param lastComponentHiddenIdentifier the last used component hidden
+     * identifier
+     * @param lastNetNumber the last used net number
+     */
+    void restoreLastNumbers(
+        final int lastComponentNumber,
+        final int lastComponentHiddenIdentifier,
+        final int lastNetNumber) {
+        
+        fLastComponentNumber = lastComponentNumber;
+        fLastComponentHiddenIdentifier = lastComponentHiddenIdentifier;
+        fLastNetNumber = lastNetNumber;
+    }
+    
+    /**
+     * Create the maps of the components and the nets again from the items,
+     * after changes have been undone or redone.
+     */
+    void rebuildMaps() {
+        fSchematicsComponentNumberMap.clear();
+        fSchematicsComponentRefDesMap.clear();
+        fSchematicsNetNumberMap.clear();
+        fSchematicsNetNameMap.clear();
+        fPCBComponentNumberMap.clear();
+        fPCBComponentRefDesMap.clear();
+        fPCBNetNumberMap.clear();
+        fPCBNetNameMap.clear();
+        
+        if (fSchematicsRoot.numChildren() > 0) {
+            for (DiptraceItem part : getSchematicsComponents().getChildren()) {
+                addSchematicsComponentPart(part);
+            }
+            for (DiptraceItem net : getSchematicsNets().getChildren()) {
+                addSchematicsNet(net);
+            }
+        }
+        
+        if (fPCBRoot.numChildren() > 0) {
+            for (DiptraceItem component : getPCBComponents().getChildren()) {
+                addPCBComponent(component);
+            }
+            for (DiptraceItem net : getPCBNets().getChildren()) {
+                addPCBNet(net);
+            }
+        }
+    }
+    
     /**
      * Parse a schematics file.
      * @param tokenizer the tokenizer that parses the Diptrace ascii file
@@ -313,7 +1040,7 @@ public final class DiptraceProject {
     void parseSchematics(final DiptraceTokenizer tokenizer)
         throws IOException {
         
-        fSchematicsRoot.parse(tokenizer);
+        parseRoot(fSchematicsRoot, tokenizer);
         
         DiptraceItem components = getSchematicsComponents();
         for (DiptraceItem part : components.getChildren()) {
@@ -330,7 +1057,7 @@ public final class DiptraceProject {
                     hiddenIdentifierItem.getAttributes().get(0))
                     .getInt();
             updateLastComponentHiddenIdentifier(hiddenIdentifier);
-            fSchematicsComponentNumberMap.put(number, part);
+            addSchematicsComponentPart(part);
         }
         
         DiptraceItem nets = getSchematicsNets();
@@ -340,7 +1067,7 @@ public final class DiptraceProject {
             DiptraceAttribute numberAttr = numberItem.getAttributes().get(0);
             int number = ((DiptraceDoubleAttribute) numberAttr).getInt();
             updateLastNetNumber(number);
-            fSchematicsNetNumberMap.put(number, net);
+            addSchematicsNet(net);
         }
     }
     
@@ -352,7 +1079,7 @@ public final class DiptraceProject {
     void parsePCB(final DiptraceTokenizer tokenizer)
         throws IOException {
         
-        fPCBRoot.parse(tokenizer);
+        parseRoot(fPCBRoot, tokenizer);
         
         DiptraceItem components = getPCBComponents();
         for (DiptraceItem component : components.getChildren()) {
@@ -361,7 +1088,7 @@ public final class DiptraceProject {
             DiptraceAttribute numberAttr = numberItem.getAttributes().get(0);
             int number = ((DiptraceDoubleAttribute) numberAttr).getInt();
             updateLastComponentNumber(number);
-            fPCBComponentNumberMap.put(number, component);
+            addPCBComponent(component);
         }
         
         DiptraceItem nets = getPCBNets();
@@ -371,7 +1098,7 @@ public final class DiptraceProject {
             DiptraceAttribute numberAttr = numberItem.getAttributes().get(0);
             int number = ((DiptraceDoubleAttribute) numberAttr).getInt();
             updateLastNetNumber(number);
-            fPCBNetNumberMap.put(number, net);
+            addPCBNet(net);
         }
         
         fPCBLayers.clear();
@@ -425,6 +1152,41 @@ public final class DiptraceProject {
         }
     }
     
+    /**
+     * Read schematics and pcb from files by memory mapping the files. The
+     * tokenizer reads the bytes of the files directly, so the files are not
+     * decoded and not copied into memory. Only strings with non ASCII
+     * characters are decoded. The files must be UTF-8 encoded.
+     * <P>
+     * The lazy sections and the sections that are not loaded are read from
+     * the mappings when they are used. If the project is written to the
+     * files that it's read from, the texts of the files are first copied
+     * into memory and the files are then replaced, so the project stops
+     * using the mappings. On Windows a file can't be replaced while it's
+     * mapped, and a mapping is only released when it's garbage collected,
+     * so writing to the same files may fail there. Use
+     * readSchematicsAndPCB() for files that are written back in place on
+     * Windows.
+     * @param schematicsFilename the schematics file name
+     * @param pcbFilename the pcb file name
+     * @throws IOException if any I/O error occurs
+     */
+    public void readMappedSchematicsAndPCB(
+        final String schematicsFilename,
+        final String pcbFilename)
+        throws IOException {
+        
+        DiptraceTokenizer tokenizer;
+        
+        tokenizer = new DiptraceTokenizer(
+            DiptraceText.map(Paths.get(schematicsFilename)));
+        parseSchematics(tokenizer);
+        
+        tokenizer = new DiptraceTokenizer(
+            DiptraceText.map(Paths.get(pcbFilename)));
+        parsePCB(tokenizer);
+    }
+    
     /**
      * Write a schematics file.
      * @param writer the writer that writes to the Diptrace ascii file
@@ -433,7 +1195,7 @@ public final class DiptraceProject {
     void writeSchematics(final Writer writer)
         throws IOException {
         
-        fSchematicsRoot.write(writer, "");
+        fSchematicsRoot.write(writer, 0);
     }
     
     /**
@@ -444,11 +1206,13 @@ public final class DiptraceProject {
     void writePCB(final Writer writer)
         throws IOException {
         
-        fPCBRoot.write(writer, "");
+        fPCBRoot.write(writer, 0);
     }
     
     /**
-     * Write schematics and pcb to files.
+     * Write schematics and pcb to files. The files can't be written while
+     * the project is in a transaction, since the items above the changed
+     * items are not marked as changed until the transaction ends.
      * @param schematicsFilename the schematics file name
      * @param pcbFilename the pcb file name
      * @throws IOException if any I/O error occurs
@@ -458,21 +1222,201 @@ public final class DiptraceProject {
         final String pcbFilename)
         throws IOException {
         
-        try (BufferedWriter schematicsWriter
-                = new BufferedWriter(
-                    new OutputStreamWriter(
-                        new FileOutputStream(schematicsFilename),
-                        StandardCharsets.UTF_8));
-            BufferedWriter pcbWriter
-                = new BufferedWriter(
-                    new OutputStreamWriter(
-                        new FileOutputStream(pcbFilename),
-                        StandardCharsets.UTF_8))) {
+        checkNotInTransaction();
+        if (fSpliceWrite) {
+            writeSpliced(fSchematicsRoot, Paths.get(schematicsFilename));
+            writeSpliced(fPCBRoot, Paths.get(pcbFilename));
+            return;
+        }
+        
+        write(fSchematicsRoot, Paths.get(schematicsFilename));
+        write(fPCBRoot, Paths.get(pcbFilename));
+    }
+    
+    /**
+     * Write a tree to a file. If the tree is memory mapped from the file,
+     * the tree is written to a temporary file that replaces the file, since
+     * the lazy sections and the sections that are not loaded are still read
+     * from the mapping while the tree is written. The text of the tree is
+     * then copied into memory, so the tree doesn't use the mapping of the
+     * file that is replaced.
+     * @param root the root of the tree
+     * @param path the file
+     * @throws IOException if any I/O error occurs
+     */
+    private static void write(final DiptraceRootItem root, final Path path)
+        throws IOException {
+        
+        if (!isMappedFrom(root, path)) {
+            writeTo(root, path);
+            return;
+        }
+        
+        Path tempPath = createReplacement(path);
+        try {
+            writeTo(root, tempPath);
+            root.getSourceText().detach();
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+    
+    /**
+     * Create a temporary file that replaces a file when it's written. The
+     * temporary file is in the same directory as the file, so it can be
+     * moved over the file, and it gets the permissions of the file.
+     * @param path the file
+     * @return the temporary file
+     * @throws IOException if any I/O error occurs
+     */
+    private static Path createReplacement(final Path path)
+        throws IOException {
+        
+        Path tempPath = Files.createTempFile(
+            path.toAbsolutePath().getParent(),
+            path.getFileName().toString(),
+            ".tmp");
+        PosixFileAttributeView view = Files.getFileAttributeView(
+            path, PosixFileAttributeView.class);
+        if (view != null) {
+            Files.setPosixFilePermissions(
+                tempPath, view.readAttributes().permissions());
+        }
+        return tempPath;
+    }
+    
+    /**
+     * Write a tree to a file.
+     * @param root the root of the tree
+     * @param path the file
+     * @throws IOException if any I/O error occurs
+     */
+    private static void writeTo(final DiptraceRootItem root, final Path path)
+        throws IOException {
+        
+        try (BufferedWriter writer
+                = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
             
-            writeSchematics(schematicsWriter);
-            writePCB(pcbWriter);
+            root.write(writer, 0);
+        }
+    }
+    
+    /**
+     * Get whenether a tree is memory mapped from a file.
+     * @param root the root of the tree
+     * @param path the file
+     * @return true if the text that the tree is parsed from is a mapping of
+     * the file
+     * @throws IOException if any I/O error occurs
+     */
+    private static boolean isMappedFrom(
+        final DiptraceRootItem root,
+        final Path path)
+        throws IOException {
+        
+        DiptraceText source = root.getSourceText();
+        if ((source == null) || (source.getPath() == null)) {
+            return false;
+        }
+        return Files.exists(path) && Files.isSameFile(path, source.getPath());
+    }
+    
+    /**
+     * Write a tree to a file and copy the items that are not changed from
+     * the file that the tree was read from.
+     * @param root the root of the tree
+     * @param path the file
+     * @throws IOException if any I/O error occurs
+     */
+    private void writeSpliced(final DiptraceRootItem root, final Path path)
+        throws IOException {
+        
+        DiptraceText source = root.getSourceText();
+        Path sourcePath = null;
+        if (source != null) {
+            sourcePath = source.getPath();
+        }
+        
+        if (!isMappedFrom(root, path)) {
+            writeSpliced(root, path, sourcePath);
+            return;
+        }
+        
+        // The file is copied from while it's written, so it can't be
+        // truncated first. The text is copied into memory before the file
+        // is replaced.
+        Path tempPath = createReplacement(path);
+        try {
+            writeSpliced(root, tempPath, sourcePath);
+            source.detach();
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+    
+    /**
+     * Write a tree to a file and copy the items that are not changed from
+     * the file that the tree was read from.
+     * @param root the root of the tree
+     * @param path the file
+     * @param sourcePath the file that the tree is memory mapped from, or
+     * null
+     * @throws IOException if any I/O error occurs
+     */
+    private void writeSpliced(
+        final DiptraceRootItem root,
+        final Path path,
+        final Path sourcePath)
+        throws IOException {
+        
+        DiptraceText source = root.getSourceText();
+        
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            FileChannel sourceChannel = openSource(source, sourcePath);
+            DiptraceSpliceWriter writer
+                = new DiptraceSpliceWriter(channel, source, sourceChannel)) {
             
+            root.writeSpliced(writer, 0);
+        }
+    }
+    
+    /**
+     * Open the file that a text is memory mapped from, if the file is still
+     * the file that was mapped and has the same size as the text. A file
+     * that has replaced the mapped file, for example when the text was
+     * written to the same path, is not opened.
+     * @param source the text
+     * @param sourcePath the file, or null
+     * @return the channel of the file, or null if the file is not opened
+     * @throws IOException if any I/O error occurs
+     */
+    private static FileChannel openSource(
+        final DiptraceText source,
+        final Path sourcePath)
+        throws IOException {
+        
+        if (sourcePath == null) {
+            return null;
+        }
+        
+        Object fileKey
+            = Files.readAttributes(sourcePath, BasicFileAttributes.class)
+                .fileKey();
+        boolean replaced = (fileKey != null)
+            && !fileKey.equals(source.getFileKey());
+        
+        FileChannel channel
+            = FileChannel.open(sourcePath, StandardOpenOption.READ);
+        if (replaced || (channel.size() != source.length())) {
+            channel.close();
+            return null;
         }
+        return channel;
     }
     
     /**
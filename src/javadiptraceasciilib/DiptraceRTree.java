@@ -0,0 +1,746 @@
+package javadiptraceasciilib;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * An R-tree of rectangles, where each rectangle has an int id. The tree is
+ * either bulk loaded with the Sort-Tile-Recursive (STR) algorithm, which
+ * gives full nodes that overlap little, or built by inserting one rectangle
+ * at a time. Rectangles may be inserted and removed after a bulk load.
+ */
+final class DiptraceRTree {
+    
+    /**
+     * The largest number of entries in a node.
+     */
+    static final int MAX_ENTRIES = 16;
+    
+    /**
+     * Computes the exact distance from a point to the shape of an entry,
+     * which may be larger than the distance to its rectangle.
+     */
+    interface EntryDistance {
+        
+        /**
+         * Get the distance from a point to an entry.
+         * @param id the id of the entry
+         * @param x the x position of the point
+         * @param y the y position of the point
+         * @return the distance
+         */
+        double distance(int id, double x, double y);
+    }
+    
+    /**
+     * The root node.
+     */
+    private Node fRoot = new Node(true);
+    
+    /**
+     * The number of entries.
+     */
+    private int fSize;
+    
+    /**
+     * Create a tree with rectangles, packed with the Sort-Tile-Recursive
+     * algorithm.
+     * @param ids the ids of the rectangles
+     * @param minX the smallest x of each rectangle
+     * @param minY the smallest y of each rectangle
+     * @param maxX the largest x of each rectangle
+     * @param maxY the largest y of each rectangle
+     * @param count the number of rectangles
+     * @return the tree
+     */
+    static DiptraceRTree bulkLoad(
+        final int[] ids,
+        final double[] minX,
+        final double[] minY,
+        final double[] maxX,
+        final double[] maxY,
+        final int count) {
+        
+        DiptraceRTree tree = new DiptraceRTree();
+        tree.fSize = count;
+        if (count == 0) {
+            return tree;
+        }
+        
+        // Pack the rectangles into leaves.
+        Integer[] order = strOrder(minX, minY, maxX, maxY, count);
+        Node[] nodes = new Node[(count + MAX_ENTRIES - 1) / MAX_ENTRIES];
+        for (int i = 0; i < count; i++) {
+            int j = order[i];
+            if (i % MAX_ENTRIES == 0) {
+                nodes[i / MAX_ENTRIES] = new Node(true);
+            }
+            nodes[i / MAX_ENTRIES].add(
+                ids[j], null, minX[j], minY[j], maxX[j], maxY[j]);
+        }
+        
+        // Pack the nodes into parents until there is only one node.
+        while (nodes.length > 1) {
+            int numNodes = nodes.length;
+            double[] nodeMinX = new double[numNodes];
+            double[] nodeMinY = new double[numNodes];
+            double[] nodeMaxX = new double[numNodes];
+            double[] nodeMaxY = new double[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                nodeMinX[i] = nodes[i].minX();
+                nodeMinY[i] = nodes[i].minY();
+                nodeMaxX[i] = nodes[i].maxX();
+                nodeMaxY[i] = nodes[i].maxY();
+            }
+            
+            order = strOrder(nodeMinX, nodeMinY, nodeMaxX, nodeMaxY, numNodes);
+            Node[] parents
+                = new Node[(numNodes + MAX_ENTRIES - 1) / MAX_ENTRIES];
+            for (int i = 0; i < numNodes; i++) {
+                int j = order[i];
+                if (i % MAX_ENTRIES == 0) {
+                    parents[i / MAX_ENTRIES] = new Node(false);
+                }
+                parents[i / MAX_ENTRIES].add(0, nodes[j],
+                    nodeMinX[j], nodeMinY[j], nodeMaxX[j], nodeMaxY[j]);
+            }
+            nodes = parents;
+        }
+        
+        tree.fRoot = nodes[0];
+        return tree;
+    }
+    
+    /**
+     * Sort rectangles in the Sort-Tile-Recursive order. The rectangles are
+     * sorted by x into vertical slices of about the square root of the
+     * number of nodes, and each slice is sorted by y. Each run of
+     * MAX_ENTRIES rectangles in the order is then one node.
+     * @param minX the smallest x of each rectangle
+     * @param minY the smallest y of each rectangle
+     * @param maxX the largest x of each rectangle
+     * @param maxY the largest y of each rectangle
+     * @param count the number of rectangles
+     * @return the positions of the rectangles in order
+     */
+    private static Integer[] strOrder(
+        final double[] minX,
+        final double[] minY,
+        final double[] maxX,
+        final double[] maxY,
+        final int count) {
+        
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        
+        Arrays.sort(order,
+            Comparator.comparingDouble((Integer i) -> minX[i] + maxX[i]));
+        
+        int numNodes = (count + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        int numSlices = (int) Math.ceil(Math.sqrt(numNodes));
+        int sliceSize = numSlices * MAX_ENTRIES;
+        for (int start = 0; start < count; start += sliceSize) {
+            Arrays.sort(order, start, Math.min(count, start + sliceSize),
+                Comparator.comparingDouble((Integer i) -> minY[i] + maxY[i]));
+        }
+        return order;
+    }
+    
+    /**
+     * Get the number of entries.
+     * @return the number of entries
+     */
+    int size() {
+        return fSize;
+    }
+    
+    /**
+     * Insert a rectangle.
+     * @param id the id of the rectangle
+     * @param minX the smallest x
+     * @param minY the smallest y
+     * @param maxX the largest x
+     * @param maxY the largest y
+     */
+    void insert(
+        final int id,
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY) {
+        
+        Node sibling = insert(fRoot, id, minX, minY, maxX, maxY);
+        if (sibling != null) {
+            Node root = new Node(false);
+            root.add(0, fRoot,
+                fRoot.minX(), fRoot.minY(), fRoot.maxX(), fRoot.maxY());
+            root.add(0, sibling,
+                sibling.minX(), sibling.minY(), sibling.maxX(), sibling.maxY());
+            fRoot = root;
+        }
+        fSize++;
+    }
+    
+    /**
+     * Insert a rectangle below a node.
+     * @param node the node
+     * @param id the id of the rectangle
+     * @param minX the smallest x
+     * @param minY the smallest y
+     * @param maxX the largest x
+     * @param maxY the largest y
+     * @return the new node if the node was split, or null
+     */
+    private static Node insert(
+        final Node node,
+        final int id,
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY) {
+        
+        if (node.fLeaf) {
+            node.add(id, null, minX, minY, maxX, maxY);
+        } else {
+            int i = node.chooseChild(minX, minY, maxX, maxY);
+            Node child = node.fChildren[i];
+            Node sibling = insert(child, id, minX, minY, maxX, maxY);
+            node.setBounds(i, child);
+            if (sibling != null) {
+                node.add(0, sibling, sibling.minX(), sibling.minY(),
+                    sibling.maxX(), sibling.maxY());
+            }
+        }
+        
+        if (node.fSize > MAX_ENTRIES) {
+            return node.split();
+        }
+        return null;
+    }
+    
+    /**
+     * Remove a rectangle. The rectangle must be the same as when it was
+     * inserted.
+     * @param id the id of the rectangle
+     * @param minX the smallest x
+     * @param minY the smallest y
+     * @param maxX the largest x
+     * @param maxY the largest y
+     * @return true if the rectangle was found
+     */
+    boolean remove(
+        final int id,
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY) {
+        
+        if (!remove(fRoot, id, minX, minY, maxX, maxY)) {
+            return false;
+        }
+        fSize--;
+        
+        // Remove the roots that have only one child.
+        while (!fRoot.fLeaf && (fRoot.fSize == 1)) {
+            fRoot = fRoot.fChildren[0];
+        }
+        if (fRoot.fSize == 0) {
+            fRoot = new Node(true);
+        }
+        return true;
+    }
+    
+    /**
+     * Remove a rectangle below a node. A node that becomes empty is removed
+     * from its parent. Nodes that are less than full are kept, so the tree
+     * is still valid but may get less compact after many removes.
+     * @param node the node
+     * @param id the id of the rectangle
+     * @param minX the smallest x
+     * @param minY the smallest y
+     * @param maxX the largest x
+     * @param maxY the largest y
+     * @return true if the rectangle was found
+     */
+    private static boolean remove(
+        final Node node,
+        final int id,
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY) {
+        
+        for (int i = 0; i < node.fSize; i++) {
+            if (node.fLeaf) {
+                if (node.fIds[i] == id) {
+                    node.removeAt(i);
+                    return true;
+                }
+            } else if (node.contains(i, minX, minY, maxX, maxY)) {
+                Node child = node.fChildren[i];
+                if (remove(child, id, minX, minY, maxX, maxY)) {
+                    if (child.fSize == 0) {
+                        node.removeAt(i);
+                    } else {
+                        node.setBounds(i, child);
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Find the rectangles that intersect a region.
+     * @param minX the smallest x of the region
+     * @param minY the smallest y of the region
+     * @param maxX the largest x of the region
+     * @param maxY the largest y of the region
+     * @param result the list where the ids of the rectangles are added
+     */
+    void search(
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY,
+        final DiptraceIntList result) {
+        
+        search(fRoot, minX, minY, maxX, maxY, result);
+    }
+    
+    /**
+     * Find the rectangles below a node that intersect a region.
+     * @param node the node
+     * @param minX the smallest x of the region
+     * @param minY the smallest y of the region
+     * @param maxX the largest x of the region
+     * @param maxY the largest y of the region
+     * @param result the list where the ids of the rectangles are added
+     */
+    private static void search(
+        final Node node,
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY,
+        final DiptraceIntList result) {
+        
+        for (int i = 0; i < node.fSize; i++) {
+            if (node.intersects(i, minX, minY, maxX, maxY)) {
+                if (node.fLeaf) {
+                    result.add(node.fIds[i]);
+                } else {
+                    search(node.fChildren[i], minX, minY, maxX, maxY, result);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Find the entry that is nearest to a point. The nodes are visited in
+     * the order of the distance to their rectangles, so only the nodes
+     * that are nearer than the nearest entry found so far are visited.
+     * @param x the x position of the point
+     * @param y the y position of the point
+     * @param distance the exact distance to an entry, or null to use the
+     * distance to the rectangle of the entry
+     * @return the id of the entry or -1 if the tree is empty
+     */
+    int nearest(
+        final double x,
+        final double y,
+        final EntryDistance distance) {
+        
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        queue.add(new Candidate(0, fRoot, 0));
+        
+        while (!queue.isEmpty()) {
+            Candidate candidate = queue.poll();
+            Node node = candidate.fNode;
+            if (node == null) {
+                // The nearest entry is nearer than anything in the queue.
+                return candidate.fId;
+            }
+            for (int i = 0; i < node.fSize; i++) {
+                double boxDistance = node.distance(i, x, y);
+                if (!node.fLeaf) {
+                    queue.add(
+                        new Candidate(boxDistance, node.fChildren[i], 0));
+                } else if (distance == null) {
+                    queue.add(new Candidate(boxDistance, null, node.fIds[i]));
+                } else {
+                    queue.add(new Candidate(
+                        distance.distance(node.fIds[i], x, y),
+                        null,
+                        node.fIds[i]));
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * A node or an entry in the queue of nearest().
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        
+        /**
+         * The distance to the point.
+         */
+        private final double fDistance;
+        
+        /**
+         * The node, or null if this is an entry.
+         */
+        private final Node fNode;
+        
+        /**
+         * The id of the entry.
+         */
+        private final int fId;
+        
+        /**
+         * Initializes a Candidate object.
+         * @param distance the distance to the point
+         * @param node the node, or null if this is an entry
+         * @param id the id of the entry
+         */
+        Candidate(final double distance, final Node node, final int id) {
+            this.fDistance = distance;
+            this.fNode = node;
+            this.fId = id;
+        }
+        
+        /**
+         * Compare the distance of this candidate with another.
+         * @param other the other candidate
+         * @return the order of the distances
+         */
+        @Override
+        public int compareTo(final Candidate other) {
+            return Double.compare(fDistance, other.fDistance);
+        }
+        
+    }
+    
+    /**
+     * A node in the tree. The rectangles of the entries are in arrays with
+     * room for one more entry than a node may have, so a node can be split
+     * after the entry that makes it too large is added.
+     */
+    private static final class Node {
+        
+        /**
+         * Whenether this node is a leaf, which has ids instead of children.
+         */
+        private final boolean fLeaf;
+        
+        /**
+         * The number of entries.
+         */
+        private int fSize;
+        
+        /**
+         * The smallest x of each entry.
+         */
+        private final double[] fMinX = new double[MAX_ENTRIES + 1];
+        
+        /**
+         * The smallest y of each entry.
+         */
+        private final double[] fMinY = new double[MAX_ENTRIES + 1];
+        
+        /**
+         * The largest x of each entry.
+         */
+        private final double[] fMaxX = new double[MAX_ENTRIES + 1];
+        
+        /**
+         * The largest y of each entry.
+         */
+        private final double[] fMaxY = new double[MAX_ENTRIES + 1];
+        
+        /**
+         * The ids of the entries of a leaf. Null if this is not a leaf.
+         */
+        private final int[] fIds;
+        
+        /**
+         * The children of a node that is not a leaf. Null if this is a leaf.
+         */
+        private final Node[] fChildren;
+        
+        /**
+         * Initializes a Node object.
+         * @param leaf whenether the node is a leaf
+         */
+        Node(final boolean leaf) {
+            this.fLeaf = leaf;
+            if (leaf) {
+                fIds = new int[MAX_ENTRIES + 1];
+                fChildren = null;
+            } else {
+                fIds = null;
+                fChildren = new Node[MAX_ENTRIES + 1];
+            }
+        }
+        
+        /**
+         * Add an entry.
+         * @param id the id if this is a leaf
+         * @param child the child if this is not a leaf
+         * @param minX the smallest x
+         * @param minY the smallest y
+         * @param maxX the largest x
+         * @param maxY the largest y
+         */
+        void add(
+            final int id,
+            final Node child,
+            final double minX,
+            final double minY,
+            final double maxX,
+            final double maxY) {
+            
+            if (fLeaf) {
+                fIds[fSize] = id;
+            } else {
+                fChildren[fSize] = child;
+            }
+            fMinX[fSize] = minX;
+            fMinY[fSize] = minY;
+            fMaxX[fSize] = maxX;
+            fMaxY[fSize] = maxY;
+            fSize++;
+        }
+        
+        /**
+         * Remove an entry. The last entry is moved to its position.
+         * @param i the position of the entry
+         */
+        void removeAt(final int i) {
+            fSize--;
+            if (fLeaf) {
+                fIds[i] = fIds[fSize];
+            } else {
+                fChildren[i] = fChildren[fSize];
+                fChildren[fSize] = null;
+            }
+            fMinX[i] = fMinX[fSize];
+            fMinY[i] = fMinY[fSize];
+            fMaxX[i] = fMaxX[fSize];
+            fMaxY[i] = fMaxY[fSize];
+        }
+        
+        /**
+         * Set the rectangle of an entry to the bounds of a child.
+         * @param i the position of the entry
+         * @param child the child
+         */
+        void setBounds(final int i, final Node child) {
+            fMinX[i] = child.minX();
+            fMinY[i] = child.minY();
+            fMaxX[i] = child.maxX();
+            fMaxY[i] = child.maxY();
+        }
+        
+        /**
+         * Get the smallest x of all the entries.
+         * @return the smallest x
+         */
+        double minX() {
+            double value = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < fSize; i++) {
+                value = Math.min(value, fMinX[i]);
+            }
+            return value;
+        }
+        
+        /**
+         * Get the smallest y of all the entries.
+         * @return the smallest y
+         */
+        double minY() {
+            double value = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < fSize; i++) {
+                value = Math.min(value, fMinY[i]);
+            }
+            return value;
+        }
+        
+        /**
+         * Get the largest x of all the entries.
+         * @return the largest x
+         */
+        double maxX() {
+            double value = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < fSize; i++) {
+                value = Math.max(value, fMaxX[i]);
+            }
+            return value;
+        }
+        
+        /**
+         * Get the largest y of all the entries.
+         * @return the largest y
+         */
+        double maxY() {
+            double value = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < fSize; i++) {
+                value = Math.max(value, fMaxY[i]);
+            }
+            return value;
+        }
+        
+        /**
+         * Get whenether the rectangle of an entry intersects a region.
+         * @param i the position of the entry
+         * @param minX the smallest x of the region
+         * @param minY the smallest y of the region
+         * @param maxX the largest x of the region
+         * @param maxY the largest y of the region
+         * @return true if they intersect
+         */
+        boolean intersects(
+            final int i,
+            final double minX,
+            final double minY,
+            final double maxX,
+            final double maxY) {
+            
+            return (fMinX[i] <= maxX) && (fMaxX[i] >= minX)
+                && (fMinY[i] <= maxY) && (fMaxY[i] >= minY);
+        }
+        
+        /**
+         * Get whenether the rectangle of an entry contains a rectangle.
+         * @param i the position of the entry
+         * @param minX the smallest x of the rectangle
+         * @param minY the smallest y of the rectangle
+         * @param maxX the largest x of the rectangle
+         * @param maxY the largest y of the rectangle
+         * @return true if the entry contains the rectangle
+         */
+        boolean contains(
+            final int i,
+            final double minX,
+            final double minY,
+            final double maxX,
+            final double maxY) {
+            
+            return (fMinX[i] <= minX) && (fMaxX[i] >= maxX)
+                && (fMinY[i] <= minY) && (fMaxY[i] >= maxY);
+        }
+        
+        /**
+         * Get the distance from a point to the rectangle of an entry.
+         * @param i the position of the entry
+         * @param x the x position of the point
+         * @param y the y position of the point
+         * @return the distance, which is zero if the point is inside
+         */
+        double distance(final int i, final double x, final double y) {
+            double dx = Math.max(0, Math.max(fMinX[i] - x, x - fMaxX[i]));
+            double dy = Math.max(0, Math.max(fMinY[i] - y, y - fMaxY[i]));
+            return Math.hypot(dx, dy);
+        }
+        
+        /**
+         * Choose the child whose rectangle grows the least when a rectangle
+         * is added to it. Ties are broken by the smallest area.
+         * @param minX the smallest x of the rectangle
+         * @param minY the smallest y of the rectangle
+         * @param maxX the largest x of the rectangle
+         * @param maxY the largest y of the rectangle
+         * @return the position of the child
+         */
+        int chooseChild(
+            final double minX,
+            final double minY,
+            final double maxX,
+            final double maxY) {
+            
+            int best = 0;
+            double bestGrowth = Double.POSITIVE_INFINITY;
+            double bestArea = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < fSize; i++) {
+                double area = (fMaxX[i] - fMinX[i]) * (fMaxY[i] - fMinY[i]);
+                double grownArea
+                    = (Math.max(fMaxX[i], maxX) - Math.min(fMinX[i], minX))
+                    * (Math.max(fMaxY[i], maxY) - Math.min(fMinY[i], minY));
+                double growth = grownArea - area;
+                if ((growth < bestGrowth)
+                    || ((growth == bestGrowth) && (area < bestArea))) {
+                    
+                    best = i;
+                    bestGrowth = growth;
+                    bestArea = area;
+                }
+            }
+            return best;
+        }
+        
+        /**
+         * Split this node in two halves along the axis where the centers of
+         * the entries are the most spread out.
+         * @return the new node with the upper half of the entries
+         */
+        Node split() {
+            double spreadX = maxX() - minX();
+            double spreadY = maxY() - minY();
+            Integer[] order = new Integer[fSize];
+            for (int i = 0; i < fSize; i++) {
+                order[i] = i;
+            }
+            if (spreadX >= spreadY) {
+                Arrays.sort(order, Comparator.comparingDouble(
+                    (Integer i) -> fMinX[i] + fMaxX[i]));
+            } else {
+                Arrays.sort(order, Comparator.comparingDouble(
+                    (Integer i) -> fMinY[i] + fMaxY[i]));
+            }
+            
+            Node lower = new Node(fLeaf);
+            Node upper = new Node(fLeaf);
+            for (int k = 0; k < fSize; k++) {
+                int i = order[k];
+                Node half = upper;
+                if (k < fSize / 2) {
+                    half = lower;
+                }
+                int id = 0;
+                Node child = null;
+                if (fLeaf) {
+                    id = fIds[i];
+                } else {
+                    child = fChildren[i];
+                }
+                half.add(id, child, fMinX[i], fMinY[i], fMaxX[i], fMaxY[i]);
+            }
+            
+            // Keep the lower half in this node.
+            fSize = 0;
+            for (int i = 0; i < lower.fSize; i++) {
+                Node child = null;
+                int id = 0;
+                if (fLeaf) {
+                    id = lower.fIds[i];
+                } else {
+                    child = lower.fChildren[i];
+                }
+                add(id, child, lower.fMinX[i], lower.fMinY[i],
+                    lower.fMaxX[i], lower.fMaxY[i]);
+            }
+            if (!fLeaf) {
+                Arrays.fill(fChildren, fSize, fChildren.length, null);
+            }
+            return upper;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,429 @@
+package javadiptraceasciilib;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Reads a DipTrace ascii file one event at a time, without building the
+ * tree of items.
+ * <P>
+ * Call next() to move to the next event. Each "(Identifier" gives a
+ * START_ITEM event, each attribute of the item gives an ATTRIBUTE event and
+ * the ")" gives an END_ITEM event. No object is created for each event. The
+ * identifier and the value are returned as CharSequence views of the file
+ * that are only valid until the next call to next(). Use toString() on the
+ * view to keep the text, or compare it with String.contentEquals().
+ * <P>
+ * Example that prints the number of each component in the schematics, where
+ * the path to the number is Schematic, Components, Component, Number:
+ * <pre>
+ * DiptraceReader reader = DiptraceReader.open("schematics.asc");
+ * boolean inComponents = false;
+ * DiptraceEvent event;
+ * while ((event = reader.next()) != null) {
+ *     if ((event == DiptraceEvent.START_ITEM)
+ *         &amp;&amp; (reader.getDepth() == 2)) {
+ *         inComponents = "Components".contentEquals(reader.getIdentifier());
+ *     } else if ((event == DiptraceEvent.START_ITEM)
+ *         &amp;&amp; inComponents
+ *         &amp;&amp; (reader.getDepth() == 4)
+ *         &amp;&amp; "Number".contentEquals(reader.getIdentifier())) {
+ *         reader.next();
+ *         System.out.println(reader.getIntValue());
+ *     }
+ * }
+ * </pre>
+ */
+public final class DiptraceReader {
+    
+    /**
+     * The initial size of the stack of open items.
+     */
+    private static final int INITIAL_STACK_SIZE = 32;
+    
+    /**
+     * The tokenizer.
+     */
+    private final DiptraceTokenizer fTokenizer;
+    
+    /**
+     * The view of the identifier of the current item.
+     */
+    private final DiptraceTextView fIdentifier = new DiptraceTextView();
+    
+    /**
+     * The view of the value of the current attribute.
+     */
+    private final DiptraceTextView fValue = new DiptraceTextView();
+    
+    /**
+     * The start of the identifier of each open item.
+     */
+    private int[] fIdentifierStarts = new int[INITIAL_STACK_SIZE];
+    
+    /**
+     * The end of the identifier of each open item.
+     */
+    private int[] fIdentifierEnds = new int[INITIAL_STACK_SIZE];
+    
+    /**
+     * The number of open items.
+     */
+    private int fDepth;
+    
+    /**
+     * The depth of the item of the current event.
+     */
+    private int fEventDepth;
+    
+    /**
+     * The current event.
+     */
+    private DiptraceEvent fEvent;
+    
+    /**
+     * The type of the value of the current attribute.
+     */
+    private DiptraceValueType fValueType;
+    
+    /**
+     * The integer value of the current attribute.
+     */
+    private int fIntValue;
+    
+    /**
+     * The double value of the current attribute.
+     */
+    private double fDoubleValue;
+    
+    /**
+     * Initializes a DiptraceReader object that reads from a reader. The whole
+     * reader is read into memory.
+     * @param reader the reader
+     * @throws IOException on any I/O error
+     */
+    public DiptraceReader(final Reader reader) throws IOException {
+        this(new DiptraceTokenizer(new BufferedReader(reader)));
+    }
+    
+    /**
+     * Initializes a DiptraceReader object that reads from a tokenizer.
+     * @param tokenizer the tokenizer
+     */
+    DiptraceReader(final DiptraceTokenizer tokenizer) {
+        this.fTokenizer = tokenizer;
+    }
+    
+    /**
+     * Create a DiptraceReader that reads a file. The file is memory mapped
+     * and is expected to be UTF-8 encoded.
+     * @param filename the name of the file
+     * @return the reader
+     * @throws IOException on any I/O error
+     */
+    public static DiptraceReader open(final String filename)
+        throws IOException {
+        
+        return new DiptraceReader(
+            new DiptraceTokenizer(DiptraceText.map(Paths.get(filename))));
+    }
+    
+    /**
+     * Read a file and send its events to a handler. The file is memory
+     * mapped, so the heap that is used doesn't depend on the size of the
+     * file.
+     * @param filename the name of the file
+     * @param handler the handler
+     * @throws IOException on any I/O error
+     */
+    public static void parse(
+        final String filename,
+        final DiptraceEventHandler handler)
+        throws IOException {
+        
+        open(filename).parse(handler);
+    }
+    
+    /**
+     * Read the rest of the events and send them to a handler.
+     * @param handler the handler
+     */
+    //CHECKSTYLE.OFF: InnerAssignment - Allow assignment in while loop
+    public void parse(final DiptraceEventHandler handler) {
+        
+        DiptraceEvent event;
+        while ((event = next()) != null) {
+            switch (event) {
+                case START_ITEM:
+                    if (!handler.startItem(fIdentifier, fEventDepth)) {
+                        skipItem();
+                        handler.endItem(fIdentifier, fEventDepth);
+                    }
+                    break;
+                
+                case ATTRIBUTE:
+                    handler.attribute(fValueType, fValue, fDoubleValue);
+                    break;
+                
+                default:
+                    handler.endItem(fIdentifier, fEventDepth);
+            }
+        }
+    }
+    //CHECKSTYLE.ON: InnerAssignment - Allow assignment in while loop
+    
+    /**
+     * Move to the next event.
+     * @return the event or null on end of file
+     * @throws RuntimeException if the file is not a valid DipTrace ascii
+     * file
+     */
+    public DiptraceEvent next() {
+        
+        DiptraceTokenType type = fTokenizer.lex();
+        
+        if (type == null) {
+            return endOfFile();
+        }
+        
+        switch (type) {
+            case LEFT_PARENTHESES:
+                type = fTokenizer.lex();
+                if (type != DiptraceTokenType.IDENTIFIER) {
+                    throw new RuntimeException(
+                        String.format(
+                            "Token is not an identifier: Type: %s, LineNo: %d",
+                            String.valueOf(type),
+                            fTokenizer.getLineNo()));
+                }
+                push(fTokenizer.getTokenStart(), fTokenizer.getTokenEnd());
+                fEventDepth = fDepth;
+                fEvent = DiptraceEvent.START_ITEM;
+                break;
+            
+            case RIGHT_PARENTHESES:
+                if (fDepth == 0) {
+                    throw new RuntimeException(
+                        String.format(
+                            "Right parentheses outside of an item. LineNo: %d",
+                            fTokenizer.getLineNo()));
+                }
+                fEventDepth = fDepth;
+                pop();
+                fEvent = DiptraceEvent.END_ITEM;
+                break;
+            
+            default:
+                if (fDepth == 0) {
+                    throw new RuntimeException(
+                        String.format(
+                            "Attribute outside of an item. LineNo: %d",
+                            fTokenizer.getLineNo()));
+                }
+                readAttribute(type);
+                fEventDepth = fDepth;
+                fEvent = DiptraceEvent.ATTRIBUTE;
+        }
+        
+        return fEvent;
+    }
+    
+    /**
+     * Skip the rest of the current item. If the current event is
+     * START_ITEM or ATTRIBUTE, the reader moves to the END_ITEM event of the
+     * item. The tokens of the sub items are read but no events are reported
+     * for them.
+     * @return the event, which is END_ITEM
+     * @throws RuntimeException if the current event is END_ITEM or if the
+     * file is not a valid DipTrace ascii file
+     */
+    public DiptraceEvent skipItem() {
+        
+        if ((fEvent == null) || (fEvent == DiptraceEvent.END_ITEM)) {
+            throw new RuntimeException("There is no item to skip");
+        }
+        
+        int depth = fEventDepth;
+        while ((next() != DiptraceEvent.END_ITEM) || (fEventDepth != depth)) {
+            if (fEvent == null) {
+                throw new RuntimeException(
+                    "End of file has been reached premature.");
+            }
+        }
+        return fEvent;
+    }
+    
+    /**
+     * Handle end of file. The last item of the file may be without the
+     * right parentheses.
+     * @return the event, which is END_ITEM or null
+     */
+    private DiptraceEvent endOfFile() {
+        
+        if (fDepth == 0) {
+            fEvent = null;
+            fEventDepth = 0;
+            return null;
+        }
+        
+        if (fDepth > 1) {
+            throw new RuntimeException(
+                "End of file has been reached premature.");
+        }
+        
+        fEventDepth = fDepth;
+        pop();
+        fEvent = DiptraceEvent.END_ITEM;
+        return fEvent;
+    }
+    
+    /**
+     * Read the value of an attribute.
+     * @param type the type of the token
+     */
+    private void readAttribute(final DiptraceTokenType type) {
+        
+        fIntValue = 0;
+        fDoubleValue = 0;
+        
+        switch (type) {
+            case STRING:
+                fValueType = DiptraceValueType.STRING;
+                break;
+            
+            case INTEGER:
+                fValueType = DiptraceValueType.INTEGER;
+                fIntValue = fTokenizer.getIntValue();
+                fDoubleValue = fIntValue;
+                break;
+            
+            case DOUBLE:
+                fValueType = DiptraceValueType.DOUBLE;
+                fDoubleValue = fTokenizer.getDoubleValue();
+                break;
+            
+            case PERCENT:
+                fValueType = DiptraceValueType.PERCENT;
+                fDoubleValue = fTokenizer.getDoubleValue();
+                break;
+            
+            default:
+                // IDENTIFIER or NON_QUOTED_STRING
+                fValueType = DiptraceValueType.NON_QUOTED_STRING;
+        }
+        
+        fValue.set(
+            fTokenizer.getText(),
+            fTokenizer.getTokenStart(),
+            fTokenizer.getTokenEnd());
+    }
+    
+    /**
+     * Push an item on the stack of open items.
+     * @param start the start of the identifier
+     * @param end the end of the identifier
+     */
+    private void push(final int start, final int end) {
+        if (fDepth == fIdentifierStarts.length) {
+            fIdentifierStarts = Arrays.copyOf(fIdentifierStarts, fDepth * 2);
+            fIdentifierEnds = Arrays.copyOf(fIdentifierEnds, fDepth * 2);
+        }
+        fIdentifierStarts[fDepth] = start;
+        fIdentifierEnds[fDepth] = end;
+        fDepth++;
+        fIdentifier.set(fTokenizer.getText(), start, end);
+    }
+    
+    /**
+     * Pop an item from the stack of open items. The identifier view is set
+     * to the popped item.
+     */
+    private void pop() {
+        fDepth--;
+        fIdentifier.set(
+            fTokenizer.getText(),
+            fIdentifierStarts[fDepth],
+            fIdentifierEnds[fDepth]);
+    }
+    
+    /**
+     * Get the current event.
+     * @return the event or null if next() has not been called or if end of
+     * file has been reached
+     */
+    public DiptraceEvent getEvent() {
+        return fEvent;
+    }
+    
+    /**
+     * Get the depth of the item of the current event. The items at the top
+     * level of the file have depth 1.
+     * @return the depth
+     */
+    public int getDepth() {
+        return fEventDepth;
+    }
+    
+    /**
+     * Get the identifier of the item of the current event. For an ATTRIBUTE
+     * event, this is the identifier of the item that has the attribute.
+     * The view is valid until next() is called.
+     * @return the identifier
+     */
+    public CharSequence getIdentifier() {
+        if (fEvent == DiptraceEvent.ATTRIBUTE) {
+            fIdentifier.set(
+                fTokenizer.getText(),
+                fIdentifierStarts[fDepth - 1],
+                fIdentifierEnds[fDepth - 1]);
+        }
+        return fIdentifier;
+    }
+    
+    /**
+     * Get the type of the value of the current attribute.
+     * @return the type
+     */
+    public DiptraceValueType getValueType() {
+        return fValueType;
+    }
+    
+    /**
+     * Get the value of the current attribute as it is written in the file.
+     * A string in double quotes is returned without the quotes. The view is
+     * valid until next() is called.
+     * @return the value
+     */
+    public CharSequence getValue() {
+        return fValue;
+    }
+    
+    /**
+     * Get the integer value of the current attribute.
+     * @return the value if the type is INTEGER, otherwise 0
+     */
+    public int getIntValue() {
+        return fIntValue;
+    }
+    
+    /**
+     * Get the double value of the current attribute.
+     * @return the value if the type is INTEGER, DOUBLE or PERCENT,
+     * otherwise 0
+     */
+    public double getDoubleValue() {
+        return fDoubleValue;
+    }
+    
+    /**
+     * Get the line number of the current event.
+     * @return the line number
+     */
+    public int getLineNumber() {
+        return fTokenizer.getLineNo();
+    }
+    
+}
@@ -17,6 +17,11 @@ final class DiptraceRootItem extends DiptraceItem {
      */
     private final DiptraceProject fProject;
     
+    /**
+     * The text of the file that the tree is parsed from, or null.
+     */
+    private DiptraceText fSourceText;
+    
     /**
      * Initializes the DiptraceRootItem object.
      * @param project the project
@@ -36,6 +41,46 @@ final class DiptraceRootItem extends DiptraceItem {
         return fProject;
     }
     
+    /**
+     * Get the transaction that the project of this tree is in.
+     * @return the transaction, or null if the project is not in a
+     * transaction
+     */
+    DiptraceTransaction getTransaction() {
+        if (fProject == null) {
+            return null;
+        }
+        return fProject.getTransaction();
+    }
+    
+    /**
+     * Get the journal that the project of this tree keeps for undo and redo.
+     * @return the journal, or null if the project doesn't keep the changes
+     */
+    DiptraceJournal getUndoJournal() {
+        if (fProject == null) {
+            return null;
+        }
+        return fProject.getUndoJournal();
+    }
+    
+    /**
+     * Get the text of the file that the tree is parsed from. The items that
+     * are not changed since they were parsed can be copied from the text.
+     * @return the text, or null if the tree is not parsed from a file
+     */
+    DiptraceText getSourceText() {
+        return fSourceText;
+    }
+    
+    /**
+     * Set the text of the file that the tree is parsed from.
+     * @param sourceText the text
+     */
+    void setSourceText(final DiptraceText sourceText) {
+        fSourceText = sourceText;
+    }
+    
     /**
      * Duplicate this item. This method always throws a RuntimeException since
      * the root must not be duplicated.
@@ -60,16 +105,45 @@ final class DiptraceRootItem extends DiptraceItem {
     }
     
     /**
-     * Write the item.
+     * Parse the attributes of the item. The root has no attributes, only
+     * sub items.
+     * @param tokenizer the tokenizer that parses the Diptrace ascii file
+     * @param project the project of the item
+     * @return always true
+     */
+    @Override
+    boolean parseAttributes(
+        final DiptraceTokenizer tokenizer,
+        final DiptraceProject project) {
+        
+        return true;
+    }
+    
+    /**
+     * Write the part of the item that is before the sub items. The root is
+     * not in the file, so nothing is written.
      * @param writer the writer that writes to the Diptrace ascii file
-     * @param indent a string of spaces to indent the tree in the ascii file
-     * @throws IOException when IO error occurs
+     * @param indent the number of spaces to indent the item
      */
     @Override
-    public void write(final Writer writer, final String indent)
-        throws IOException {
+    void writeHead(final Writer writer, final int indent) {
+        // Do nothing.
+    }
+    
+    /**
+     * Write the part of the item that is after the sub items. The root is
+     * not in the file, so nothing is written.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the item
+     * @param hasSubItems true if sub items are written after the head
+     */
+    @Override
+    void writeTail(
+        final Writer writer,
+        final int indent,
+        final boolean hasSubItems) {
         
-        this.writeSubItems(writer, indent);
+        // Do nothing.
     }
     
     
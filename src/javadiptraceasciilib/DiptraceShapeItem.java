@@ -40,13 +40,8 @@ class DiptraceShapeItem extends DiptraceGenericItem {
         
         newItem.setMayHaveSubItems(this.getMayHaveSubItems());
         
-        List<DiptraceAttribute> newAttributes = newItem.getAttributes();
-        for (DiptraceAttribute attribute : getAttributes()) {
-            newAttributes.add(attribute.duplicate());
-        }
-        for (DiptraceItem subItem : getChildren()) {
-            newItem.addSubItem(subItem.duplicate(newItem));
-        }
+        newItem.getAttributes().addAll(getAttributes());
+        copySubItemsTo(newItem);
         return newItem;
     }
     
@@ -0,0 +1,623 @@
+package javadiptraceasciilib;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A spatial index of the pcb. It has the components with their pads, the
+ * shapes on the board and the segments of the lines of the nets, in one
+ * R-tree for each layer.
+ * <P>
+ * Each component, shape and segment is an entry, which is numbered from
+ * zero. The rectangle of a component covers its position, its body and its
+ * pads. The rectangle of a segment covers the width of the line.
+ * <P>
+ * The trees are bulk loaded when the index is created. When a component is
+ * moved on the pcb by DiptraceComponent, the index is updated by removing
+ * the old rectangle of the component and inserting the new one. Use
+ * DiptraceProject.getSpatialIndex() to get an index that is up to date.
+ */
+public final class DiptraceSpatialIndex {
+    
+    /**
+     * The value of a missing entry.
+     */
+    public static final int NONE = -1;
+    
+    /**
+     * An entry that is a component.
+     */
+    public static final int COMPONENT = 0;
+    
+    /**
+     * An entry that is a shape on the board.
+     */
+    public static final int SHAPE = 1;
+    
+    /**
+     * An entry that is a segment of a line of a net.
+     */
+    public static final int SEGMENT = 2;
+    
+    /**
+     * The layer of the components on the top side.
+     */
+    private static final int TOP_LAYER = 0;
+    
+    /**
+     * The layer of the components on the bottom side.
+     */
+    private static final int BOTTOM_LAYER = 1;
+    
+    /**
+     * The number of degrees of a quarter turn.
+     */
+    private static final double QUARTER_TURN = 90;
+    
+    /**
+     * The number of degrees of a half turn.
+     */
+    private static final double HALF_TURN = 180;
+    
+    /**
+     * The position of the x offset of a pad in the attributes of the pad.
+     */
+    private static final int PAD_X = 3;
+    
+    /**
+     * The position of the y offset of a pad in the attributes of the pad.
+     */
+    private static final int PAD_Y = 4;
+    
+    /**
+     * The position of the layer in the attributes of a point of a line.
+     */
+    private static final int POINT_LAYER = 2;
+    
+    /**
+     * The position of the width in the attributes of a point of a line.
+     */
+    private static final int POINT_WIDTH = 4;
+    
+    /**
+     * The size of the arrays when the index is created.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+    
+    /**
+     * The item of each entry. For a segment, it's the Line item.
+     */
+    private DiptraceItem[] fItems = new DiptraceItem[INITIAL_CAPACITY];
+    
+    /**
+     * The kind of each entry.
+     */
+    private int[] fKinds = new int[INITIAL_CAPACITY];
+    
+    /**
+     * The layer of each entry.
+     */
+    private int[] fLayers = new int[INITIAL_CAPACITY];
+    
+    /**
+     * The smallest x of the rectangle of each entry.
+     */
+    private double[] fMinX = new double[INITIAL_CAPACITY];
+    
+    /**
+     * The smallest y of the rectangle of each entry.
+     */
+    private double[] fMinY = new double[INITIAL_CAPACITY];
+    
+    /**
+     * The largest x of the rectangle of each entry.
+     */
+    private double[] fMaxX = new double[INITIAL_CAPACITY];
+    
+    /**
+     * The largest y of the rectangle of each entry.
+     */
+    private double[] fMaxY = new double[INITIAL_CAPACITY];
+    
+    /**
+     * The x of the start of each segment.
+     */
+    private double[] fX1 = new double[INITIAL_CAPACITY];
+    
+    /**
+     * The y of the start of each segment.
+     */
+    private double[] fY1 = new double[INITIAL_CAPACITY];
+    
+    /**
+     * The x of the end of each segment.
+     */
+    private double[] fX2 = new double[INITIAL_CAPACITY];
+    
+    /**
+     * The y of the end of each segment.
+     */
+    private double[] fY2 = new double[INITIAL_CAPACITY];
+    
+    /**
+     * Half the width of the line of each segment.
+     */
+    private double[] fHalfWidths = new double[INITIAL_CAPACITY];
+    
+    /**
+     * The number of entries.
+     */
+    private int fSize;
+    
+    /**
+     * The R-tree of each layer.
+     */
+    private final Map<Integer, DiptraceRTree> fTrees = new HashMap<>();
+    
+    /**
+     * Map of the entries of the components where the key is the component.
+     */
+    private final Map<DiptraceItem, Integer> fComponentEntries
+        = new IdentityHashMap<>();
+    
+    /**
+     * Initializes a DiptraceSpatialIndex object with the pcb of a project.
+     * @param project the project
+     */
+    DiptraceSpatialIndex(final DiptraceProject project) {
+        
+        for (DiptraceItem component
+            : project.getPCBComponents().getChildren()) {
+            
+            int entry = addEntry(COMPONENT, component);
+            setComponentBounds(entry);
+            fComponentEntries.put(component, entry);
+        }
+        
+        DiptraceItem shapes = project.getPCBShapes();
+        if (shapes != null) {
+            for (DiptraceItem shape : shapes.getChildren()) {
+                if ((shape instanceof DiptraceShapeItem)
+                    && ((DiptraceShapeItem) shape).getAttributes().isEmpty()) {
+                    
+                    addShape((DiptraceShapeItem) shape);
+                }
+            }
+        }
+        
+        for (DiptraceItem net : project.getPCBNets().getChildren()) {
+            DiptraceItem lines = net.getSubItem("Lines");
+            if (lines != null) {
+                for (DiptraceItem line : lines.getChildren()) {
+                    addSegments(line);
+                }
+            }
+        }
+        
+        bulkLoad();
+    }
+    
+    /**
+     * Get the layers that have entries.
+     * @return the layers in increasing order
+     */
+    public int[] getLayers() {
+        int[] layers = new int[fTrees.size()];
+        int i = 0;
+        for (int layer : fTrees.keySet()) {
+            layers[i++] = layer;
+        }
+        Arrays.sort(layers);
+        return layers;
+    }
+    
+    /**
+     * Find the entries on a layer whose rectangles intersect a region. This
+     * is also how the entries in a viewport are found.
+     * @param layer the layer
+     * @param minX the smallest x of the region
+     * @param minY the smallest y of the region
+     * @param maxX the largest x of the region
+     * @param maxY the largest y of the region
+     * @return the entries
+     */
+    public int[] queryRegion(
+        final int layer,
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY) {
+        
+        DiptraceRTree tree = fTrees.get(layer);
+        if (tree == null) {
+            return new int[0];
+        }
+        DiptraceIntList result = new DiptraceIntList();
+        tree.search(minX, minY, maxX, maxY, result);
+        return result.toArray();
+    }
+    
+    /**
+     * Find the entry on a layer that is nearest to a point. The distance to
+     * a segment is the distance to the edge of the line, and the distance
+     * to a component or a shape is the distance to its rectangle.
+     * @param layer the layer
+     * @param x the x position of the point
+     * @param y the y position of the point
+     * @return the entry or NONE if the layer has no entries
+     */
+    public int nearest(final int layer, final double x, final double y) {
+        DiptraceRTree tree = fTrees.get(layer);
+        if (tree == null) {
+            return NONE;
+        }
+        return tree.nearest(x, y, this::distance);
+    }
+    
+    /**
+     * Get the number of entries.
+     * @return the number of entries
+     */
+    public int size() {
+        return fSize;
+    }
+    
+    /**
+     * Get the kind of an entry.
+     * @param entry the entry
+     * @return COMPONENT, SHAPE or SEGMENT
+     */
+    public int getKind(final int entry) {
+        return fKinds[entry];
+    }
+    
+    /**
+     * Get the layer of an entry.
+     * @param entry the entry
+     * @return the layer
+     */
+    public int getLayer(final int entry) {
+        return fLayers[entry];
+    }
+    
+    /**
+     * Get the smallest x of the rectangle of an entry.
+     * @param entry the entry
+     * @return the smallest x
+     */
+    public double getMinX(final int entry) {
+        return fMinX[entry];
+    }
+    
+    /**
+     * Get the smallest y of the rectangle of an entry.
+     * @param entry the entry
+     * @return the smallest y
+     */
+    public double getMinY(final int entry) {
+        return fMinY[entry];
+    }
+    
+    /**
+     * Get the largest x of the rectangle of an entry.
+     * @param entry the entry
+     * @return the largest x
+     */
+    public double getMaxX(final int entry) {
+        return fMaxX[entry];
+    }
+    
+    /**
+     * Get the largest y of the rectangle of an entry.
+     * @param entry the entry
+     * @return the largest y
+     */
+    public double getMaxY(final int entry) {
+        return fMaxY[entry];
+    }
+    
+    /**
+     * Get the RefDes of the component of an entry.
+     * @param entry the entry
+     * @return the RefDes or null if the entry is not a component
+     */
+    public String getRefDes(final int entry) {
+        if (fKinds[entry] != COMPONENT) {
+            return null;
+        }
+        return DiptraceProject.getRefDes(fItems[entry]);
+    }
+    
+    /**
+     * Get the item of an entry.
+     * @param entry the entry
+     * @return the Component, Shape or Line item
+     */
+    DiptraceItem getItem(final int entry) {
+        return fItems[entry];
+    }
+    
+    /**
+     * Move the rectangle of a component after the component has been moved.
+     * @param component the Component item
+     */
+    void updateComponent(final DiptraceItem component) {
+        Integer entry = fComponentEntries.get(component);
+        if (entry == null) {
+            return;
+        }
+        fTrees.get(fLayers[entry]).remove(entry,
+            fMinX[entry], fMinY[entry], fMaxX[entry], fMaxY[entry]);
+        setComponentBounds(entry);
+        fTrees.computeIfAbsent(fLayers[entry], (key) -> new DiptraceRTree())
+            .insert(entry,
+                fMinX[entry], fMinY[entry], fMaxX[entry], fMaxY[entry]);
+    }
+    
+    /**
+     * Add an entry. The rectangle is empty until it's set.
+     * @param kind the kind
+     * @param item the item
+     * @return the entry
+     */
+    private int addEntry(final int kind, final DiptraceItem item) {
+        if (fSize == fItems.length) {
+            int capacity = fSize * 2;
+            fItems = Arrays.copyOf(fItems, capacity);
+            fKinds = Arrays.copyOf(fKinds, capacity);
+            fLayers = Arrays.copyOf(fLayers, capacity);
+            fMinX = Arrays.copyOf(fMinX, capacity);
+            fMinY = Arrays.copyOf(fMinY, capacity);
+            fMaxX = Arrays.copyOf(fMaxX, capacity);
+            fMaxY = Arrays.copyOf(fMaxY, capacity);
+            fX1 = Arrays.copyOf(fX1, capacity);
+            fY1 = Arrays.copyOf(fY1, capacity);
+            fX2 = Arrays.copyOf(fX2, capacity);
+            fY2 = Arrays.copyOf(fY2, capacity);
+            fHalfWidths = Arrays.copyOf(fHalfWidths, capacity);
+        }
+        int entry = fSize;
+        fItems[entry] = item;
+        fKinds[entry] = kind;
+        fMinX[entry] = Double.POSITIVE_INFINITY;
+        fMinY[entry] = Double.POSITIVE_INFINITY;
+        fMaxX[entry] = Double.NEGATIVE_INFINITY;
+        fMaxY[entry] = Double.NEGATIVE_INFINITY;
+        fSize++;
+        return entry;
+    }
+    
+    /**
+     * Grow the rectangle of an entry to cover a rectangle around a point.
+     * @param entry the entry
+     * @param x the x position of the point
+     * @param y the y position of the point
+     * @param halfWidth half the width of the rectangle around the point
+     * @param halfHeight half the height of the rectangle around the point
+     */
+    private void cover(
+        final int entry,
+        final double x,
+        final double y,
+        final double halfWidth,
+        final double halfHeight) {
+        
+        fMinX[entry] = Math.min(fMinX[entry], x - halfWidth);
+        fMinY[entry] = Math.min(fMinY[entry], y - halfHeight);
+        fMaxX[entry] = Math.max(fMaxX[entry], x + halfWidth);
+        fMaxY[entry] = Math.max(fMaxY[entry], y + halfHeight);
+    }
+    
+    /**
+     * Set the layer and the rectangle of a component from its position,
+     * angle, side, size and pads. The pads are at offsets from the
+     * position of the component, which are rotated by the angle.
+     * @param entry the entry of the component
+     */
+    private void setComponentBounds(final int entry) {
+        
+        DiptraceItem component = fItems[entry];
+        double x = getNumber(component, "X");
+        double y = getNumber(component, "Y");
+        double angle = getNumber(component, "Angle");
+        double cos = Math.cos(Math.toRadians(angle));
+        double sin = Math.sin(Math.toRadians(angle));
+        
+        fLayers[entry] = TOP_LAYER;
+        DiptraceItem side = component.getSubItem("BottomSide");
+        if ((side != null)
+            && "Y".equals(((DiptraceGenericItem) side).getAttributes()
+                .get(0).getString())) {
+            
+            fLayers[entry] = BOTTOM_LAYER;
+        }
+        
+        fMinX[entry] = x;
+        fMinY[entry] = y;
+        fMaxX[entry] = x;
+        fMaxY[entry] = y;
+        coverRotated(entry, x, y, angle,
+            getNumber(component, "Width"), getNumber(component, "Height"));
+        
+        DiptraceItem pads = component.getSubItem("Pads");
+        if (pads == null) {
+            return;
+        }
+        double defaultWidth = getNumber(component, "PadWidth");
+        double defaultHeight = getNumber(component, "PadHeight");
+        for (DiptraceItem pad : pads.getChildren()) {
+            DiptraceAttributeList attributes
+                = ((DiptraceGenericItem) pad).getAttributes();
+            if (attributes.size() <= PAD_Y) {
+                continue;
+            }
+            double dx = attributes.getNumber(PAD_X);
+            double dy = attributes.getNumber(PAD_Y);
+            double width = defaultWidth;
+            double height = defaultHeight;
+            if (pad.getSubItem("PadWidth") != null) {
+                width = getNumber(pad, "PadWidth");
+                height = getNumber(pad, "PadHeight");
+            }
+            coverRotated(entry,
+                x + dx * cos - dy * sin,
+                y + dx * sin + dy * cos,
+                angle, width, height);
+        }
+    }
+    
+    /**
+     * Grow the rectangle of an entry to cover a rotated rectangle. A
+     * rectangle that is not rotated a multiple of a quarter turn is covered
+     * by the square around its circumscribed circle.
+     * @param entry the entry
+     * @param x the x position of the center of the rectangle
+     * @param y the y position of the center of the rectangle
+     * @param angle the angle in degrees
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    private void coverRotated(
+        final int entry,
+        final double x,
+        final double y,
+        final double angle,
+        final double width,
+        final double height) {
+        
+        double turn = Math.abs(angle % HALF_TURN);
+        if (turn == 0) {
+            cover(entry, x, y, width / 2, height / 2);
+        } else if (turn == QUARTER_TURN) {
+            cover(entry, x, y, height / 2, width / 2);
+        } else {
+            double radius = Math.hypot(width, height) / 2;
+            cover(entry, x, y, radius, radius);
+        }
+    }
+    
+    /**
+     * Add a shape on the board.
+     * @param shape the shape
+     */
+    private void addShape(final DiptraceShapeItem shape) {
+        List<Point2D.Double> points = shape.getPoints();
+        if (points.isEmpty()) {
+            return;
+        }
+        int entry = addEntry(SHAPE, shape);
+        fLayers[entry] = shape.getLayerNo();
+        double halfWidth = getNumber(shape, "PenWidth") / 2;
+        for (Point2D.Double point : points) {
+            cover(entry, point.x, point.y, halfWidth, halfWidth);
+        }
+    }
+    
+    /**
+     * Add the segments between the points of a line of a net. Each point
+     * is (pt x y layer type width ...) and a segment is on the layer of its
+     * first point.
+     * @param line the Line item
+     */
+    private void addSegments(final DiptraceItem line) {
+        DiptraceItem points = line.getSubItem("Points");
+        if ((points == null) || (points.getNumSubItems() < 2)) {
+            return;
+        }
+        
+        DiptraceAttributeList previous = null;
+        for (DiptraceItem point : points.getChildren()) {
+            DiptraceAttributeList attributes
+                = ((DiptraceGenericItem) point).getAttributes();
+            if (attributes.size() <= POINT_WIDTH) {
+                continue;
+            }
+            if (previous != null) {
+                int entry = addEntry(SEGMENT, line);
+                fLayers[entry] = (int) previous.getNumber(POINT_LAYER);
+                fX1[entry] = previous.getNumber(0);
+                fY1[entry] = previous.getNumber(1);
+                fX2[entry] = attributes.getNumber(0);
+                fY2[entry] = attributes.getNumber(1);
+                fHalfWidths[entry] = previous.getNumber(POINT_WIDTH) / 2;
+                cover(entry, fX1[entry], fY1[entry],
+                    fHalfWidths[entry], fHalfWidths[entry]);
+                cover(entry, fX2[entry], fY2[entry],
+                    fHalfWidths[entry], fHalfWidths[entry]);
+            }
+            previous = attributes;
+        }
+    }
+    
+    /**
+     * Bulk load one R-tree for each layer.
+     */
+    private void bulkLoad() {
+        Map<Integer, DiptraceIntList> layerEntries = new HashMap<>();
+        for (int entry = 0; entry < fSize; entry++) {
+            layerEntries
+                .computeIfAbsent(fLayers[entry], (key) -> new DiptraceIntList())
+                .add(entry);
+        }
+        
+        for (Map.Entry<Integer, DiptraceIntList> layer
+            : layerEntries.entrySet()) {
+            
+            int[] ids = layer.getValue().toArray();
+            double[] minX = new double[ids.length];
+            double[] minY = new double[ids.length];
+            double[] maxX = new double[ids.length];
+            double[] maxY = new double[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                minX[i] = fMinX[ids[i]];
+                minY[i] = fMinY[ids[i]];
+                maxX[i] = fMaxX[ids[i]];
+                maxY[i] = fMaxY[ids[i]];
+            }
+            fTrees.put(layer.getKey(), DiptraceRTree.bulkLoad(
+                ids, minX, minY, maxX, maxY, ids.length));
+        }
+    }
+    
+    /**
+     * Get the distance from a point to an entry.
+     * @param entry the entry
+     * @param x the x position of the point
+     * @param y the y position of the point
+     * @return the distance
+     */
+    private double distance(final int entry, final double x, final double y) {
+        if (fKinds[entry] == SEGMENT) {
+            double distance = Line2D.ptSegDist(
+                fX1[entry], fY1[entry], fX2[entry], fY2[entry], x, y);
+            return Math.max(0, distance - fHalfWidths[entry]);
+        }
+        double dx = Math.max(0, Math.max(fMinX[entry] - x, x - fMaxX[entry]));
+        double dy = Math.max(0, Math.max(fMinY[entry] - y, y - fMaxY[entry]));
+        return Math.hypot(dx, dy);
+    }
+    
+    /**
+     * Get the number of a sub item like (Width 1.5).
+     * @param item the item
+     * @param identifier the identifier of the sub item
+     * @return the number or zero if there is no such sub item
+     */
+    private static double getNumber(
+        final DiptraceItem item,
+        final String identifier) {
+        
+        DiptraceGenericItem subItem
+            = (DiptraceGenericItem) item.getSubItem(identifier);
+        if ((subItem == null) || subItem.getAttributes().isEmpty()) {
+            return 0;
+        }
+        return subItem.getAttributes().getNumber(0);
+    }
+    
+}
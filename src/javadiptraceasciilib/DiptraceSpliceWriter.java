@@ -0,0 +1,189 @@
+package javadiptraceasciilib;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A writer that writes a Diptrace ascii file where the parts that are not
+ * changed are copied from the file that was read. The items that are
+ * changed are written to the writer as usual, and the items that are not
+ * changed are copied from the source text by copy().
+ * <P>
+ * If the source text is memory mapped from a file and the new file is
+ * written to a file channel, large parts are copied from file to file by
+ * FileChannel.transferTo(), so they are never decoded or encoded.
+ */
+final class DiptraceSpliceWriter extends Writer {
+    
+    /**
+     * The smallest part that is copied by FileChannel.transferTo(). Smaller
+     * parts are written through the writer, since the writer must be
+     * flushed before each transfer.
+     */
+    private static final int MIN_TRANSFER_SIZE = 8192;
+    
+    /**
+     * The writer that the text is written to.
+     */
+    private final Writer fWriter;
+    
+    /**
+     * The text that the items that are not changed are copied from, or
+     * null.
+     */
+    private final DiptraceText fSource;
+    
+    /**
+     * The channel that the writer writes to, or null.
+     */
+    private final FileChannel fChannel;
+    
+    /**
+     * The channel of the file that the source text is mapped from, or null.
+     */
+    private final FileChannel fSourceChannel;
+    
+    /**
+     * Initializes a DiptraceSpliceWriter object that writes to a writer.
+     * @param writer the writer
+     * @param source the text that the items that are not changed are copied
+     * from, or null
+     */
+    DiptraceSpliceWriter(final Writer writer, final DiptraceText source) {
+        this.fWriter = writer;
+        this.fSource = source;
+        this.fChannel = null;
+        this.fSourceChannel = null;
+    }
+    
+    /**
+     * Initializes a DiptraceSpliceWriter object that writes UTF-8 encoded
+     * text to a file channel. The channels are not closed by this writer.
+     * @param channel the channel
+     * @param source the text that the items that are not changed are copied
+     * from, or null
+     * @param sourceChannel the channel of the file that the source text is
+     * memory mapped from, or null if the parts are copied from the text
+     */
+    DiptraceSpliceWriter(
+        final FileChannel channel,
+        final DiptraceText source,
+        final FileChannel sourceChannel) {
+        
+        this.fWriter = new BufferedWriter(
+            new OutputStreamWriter(
+                Channels.newOutputStream(channel),
+                StandardCharsets.UTF_8));
+        this.fSource = source;
+        this.fChannel = channel;
+        this.fSourceChannel = sourceChannel;
+    }
+    
+    /**
+     * Get the text that the items that are not changed are copied from.
+     * @return the text, or null
+     */
+    DiptraceText getSource() {
+        return fSource;
+    }
+    
+    /**
+     * Get whenether a part of the source text has only whitespace.
+     * @param start the start of the part
+     * @param end the end of the part
+     * @return true if the part has only whitespace, false if it has any
+     * other character or if the end is before the start
+     */
+    boolean isBlank(final int start, final int end) {
+        if (end < start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (fSource.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Copy a part of the source text.
+     * @param start the start of the part
+     * @param end the end of the part
+     * @throws IOException when IO error occurs
+     */
+    void copy(final int start, final int end) throws IOException {
+        
+        if ((fSourceChannel == null) || (end - start < MIN_TRANSFER_SIZE)) {
+            fSource.write(fWriter, start, end);
+            return;
+        }
+        
+        // The text that is written before the part must be in the file
+        // before the part is transferred.
+        fWriter.flush();
+        long position = start;
+        while (position < end) {
+            long count
+                = fSourceChannel.transferTo(position, end - position, fChannel);
+            if (count <= 0) {
+                throw new IOException(
+                    "The file that is copied from has been changed");
+            }
+            position += count;
+        }
+    }
+    
+    /**
+     * Write a part of an array of characters.
+     * @param buffer the characters
+     * @param offset the position of the first character to write
+     * @param length the number of characters to write
+     * @throws IOException when IO error occurs
+     */
+    @Override
+    public void write(final char[] buffer, final int offset, final int length)
+        throws IOException {
+        
+        fWriter.write(buffer, offset, length);
+    }
+    
+    /**
+     * Write a part of a string.
+     * @param str the string
+     * @param offset the position of the first character to write
+     * @param length the number of characters to write
+     * @throws IOException when IO error occurs
+     */
+    @Override
+    public void write(final String str, final int offset, final int length)
+        throws IOException {
+        
+        fWriter.write(str, offset, length);
+    }
+    
+    /**
+     * Flush the writer.
+     * @throws IOException when IO error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        fWriter.flush();
+    }
+    
+    /**
+     * Close the writer. The writer is flushed, but the writer or the
+     * channels that it writes to are not closed.
+     * @throws IOException when IO error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        fWriter.flush();
+    }
+    
+}
@@ -1,28 +1,48 @@
 package javadiptraceasciilib;
 
 /**
- * A Diptrace string attribute.
+ * A Diptrace string attribute. This object is a view of one attribute in a
+ * DiptraceAttributeList.
  */
 final class DiptraceStringAttribute implements DiptraceAttribute {
     
     /**
-     * The value as a String.
+     * The list that has the attribute.
      */
-    private String fStringValue;
+    private final DiptraceAttributeList fList;
     
     /**
-     * Whenether we should use quotes.
+     * The position of the attribute in the list.
      */
-    private final UseQuotes fQuotes;
+    private final int fIndex;
     
     /**
      * Initialize a DiptraceStringAttribute object.
-     * @param value the value
-     * @param quotes whenether to use quotes
+     * @param list the list that has the attribute
+     * @param index the position of the attribute in the list
+     */
+    DiptraceStringAttribute(
+        final DiptraceAttributeList list,
+        final int index) {
+        
+        this.fList = list;
+        this.fIndex = index;
+    }
+    
+    /**
+     * Get the list that has the attribute.
+     * @return the list
      */
-    DiptraceStringAttribute(final String value, final UseQuotes quotes) {
-        this.fStringValue = value;
-        this.fQuotes = quotes;
+    DiptraceAttributeList getList() {
+        return fList;
+    }
+    
+    /**
+     * Get the position of the attribute in the list.
+     * @return the position
+     */
+    int getIndex() {
+        return fIndex;
     }
     
     /**
@@ -31,7 +51,9 @@ final class DiptraceStringAttribute implements DiptraceAttribute {
      */
     @Override
     public DiptraceAttribute duplicate() {
-        return new DiptraceStringAttribute(fStringValue, fQuotes);
+        DiptraceAttributeList list = new DiptraceAttributeList();
+        list.add(this);
+        return list.get(0);
     }
     
     /**
@@ -40,7 +62,7 @@ final class DiptraceStringAttribute implements DiptraceAttribute {
      */
     @Override
     public String getString() {
-        return fStringValue;
+        return fList.getText(fIndex);
     }
     
     /**
@@ -49,19 +71,12 @@ final class DiptraceStringAttribute implements DiptraceAttribute {
      */
     @Override
     public String getFormattedString() {
-        switch (fQuotes) {
-            case DOUBLE_QUOTES:
-                return "\"" + fStringValue + "\"";
-                
-            case NO_QUOTES:
-                return fStringValue;
-                
-            default:
-                throw new RuntimeException(
-                    String.format(
-                        "fQuotes has invalid value: %s",
-                        fQuotes.name()));
+        if (fList.getKind(fIndex)
+            == DiptraceAttributeList.KIND_QUOTED_STRING) {
+            
+            return "\"" + fList.getText(fIndex) + "\"";
         }
+        return fList.getText(fIndex);
     }
     
     /**
@@ -69,10 +84,9 @@ final class DiptraceStringAttribute implements DiptraceAttribute {
      * @param value the value
      */
     public void setString(final String value) {
-        fStringValue = value;
+        fList.setText(fIndex, value);
     }
     
-    
     /**
      * Whenether to use quotes or not.
      */
@@ -88,4 +102,5 @@ final class DiptraceStringAttribute implements DiptraceAttribute {
          */
         NO_QUOTES,
     }
+    
 }
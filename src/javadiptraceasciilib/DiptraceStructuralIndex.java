@@ -0,0 +1,96 @@
+package javadiptraceasciilib;
+
+import java.util.Arrays;
+
+/**
+ * The positions of all the structural characters in a DipTrace ascii text.
+ * The structural characters are '(', ')', '"', '\n' and '\r'. The positions
+ * are found in one pass over the text, so code that only needs to know the
+ * structure of the text, like skipping items, can jump from one structural
+ * character to the next instead of reading every character.
+ */
+final class DiptraceStructuralIndex {
+    
+    /**
+     * The smallest initial size of the array of positions.
+     */
+    private static final int MIN_INITIAL_SIZE = 1024;
+    
+    /**
+     * The expected number of characters for each structural character. A
+     * typical line like "(PadWidth 1.2)" has three structural characters.
+     */
+    private static final int CHARS_PER_POSITION = 8;
+    
+    /**
+     * The positions in increasing order.
+     */
+    private int[] fPositions;
+    
+    /**
+     * The number of positions.
+     */
+    private int fSize;
+    
+    /**
+     * Initializes a DiptraceStructuralIndex object.
+     * @param textLength the length of the text that is indexed
+     */
+    DiptraceStructuralIndex(final int textLength) {
+        fPositions = new int[
+            Math.max(MIN_INITIAL_SIZE, textLength / CHARS_PER_POSITION)];
+    }
+    
+    /**
+     * Get whenether a character is a structural character.
+     * @param c the character
+     * @return true if the character is a structural character
+     */
+    static boolean isStructural(final char c) {
+        return (c == '(') || (c == ')') || (c == '"')
+            || (c == '\n') || (c == '\r');
+    }
+    
+    /**
+     * Add a position. The positions must be added in increasing order.
+     * @param position the position
+     */
+    void add(final int position) {
+        if (fSize == fPositions.length) {
+            fPositions = Arrays.copyOf(fPositions, fSize * 2);
+        }
+        fPositions[fSize++] = position;
+    }
+    
+    /**
+     * Get the number of positions.
+     * @return the number of positions
+     */
+    int size() {
+        return fSize;
+    }
+    
+    /**
+     * Get a position.
+     * @param index the index of the position
+     * @return the position
+     */
+    int get(final int index) {
+        return fPositions[index];
+    }
+    
+    /**
+     * Find the first position that is greater than or equal to a position.
+     * @param position the position
+     * @return the index of the first such position, or size() if there is
+     * none
+     */
+    int indexOf(final int position) {
+        int index = Arrays.binarySearch(fPositions, 0, fSize, position);
+        if (index < 0) {
+            return -index - 1;
+        }
+        return index;
+    }
+    
+}
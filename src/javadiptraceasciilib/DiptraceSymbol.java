@@ -0,0 +1,75 @@
+package javadiptraceasciilib;
+
+/**
+ * An identifier of an item in a DipTrace ascii file, like "PadWidth" or
+ * "cl_Pin". There is only one DiptraceSymbol object for each identifier, so
+ * two symbols are equal only if they are the same object. Each symbol has a
+ * small integer id that is unique in the DiptraceSymbolTable.
+ */
+final class DiptraceSymbol {
+    
+    /**
+     * The identifier.
+     */
+    private final String fName;
+    
+    /**
+     * The id of the symbol.
+     */
+    private final int fId;
+    
+    /**
+     * Initializes a DiptraceSymbol object.
+     * @param name the identifier
+     * @param id the id of the symbol
+     */
+    DiptraceSymbol(final String name, final int id) {
+        this.fName = name;
+        this.fId = id;
+    }
+    
+    /**
+     * Get the identifier.
+     * @return the identifier
+     */
+    String getName() {
+        return fName;
+    }
+    
+    /**
+     * Get the id of the symbol.
+     * @return the id
+     */
+    int getId() {
+        return fId;
+    }
+    
+    /**
+     * Returns the hash code of this symbol, which is its id.
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return fId;
+    }
+    
+    /**
+     * Returns whenether an object is this symbol.
+     * @param obj the object
+     * @return true if the object is this symbol
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        return this == obj;
+    }
+    
+    /**
+     * Returns the identifier.
+     * @return the identifier
+     */
+    @Override
+    public String toString() {
+        return fName;
+    }
+    
+}
@@ -0,0 +1,264 @@
+package javadiptraceasciilib;
+
+import java.util.Arrays;
+
+/**
+ * A table with a DiptraceSymbol for each identifier of the items. The
+ * identifiers are the same in all DipTrace ascii files, so there is one
+ * global table that is shared by all projects and threads. Each item keeps
+ * the symbol instead of its own copy of the identifier, and the items are
+ * compared by the symbol instead of by the string.
+ * <P>
+ * A tokenizer also uses its own table as a pool of the strings of the
+ * attributes, so that a string that is in many items is only kept once.
+ * <P>
+ * Looking up a symbol doesn't need any lock. Adding a symbol is done while
+ * holding the lock of the table.
+ */
+final class DiptraceSymbolTable {
+    
+    /**
+     * The global table.
+     */
+    static final DiptraceSymbolTable GLOBAL = new DiptraceSymbolTable();
+    
+    /**
+     * The initial number of slots. Must be a power of two.
+     */
+    private static final int INITIAL_SLOTS = 512;
+    
+    /**
+     * The hash multiplier that String.hashCode() uses.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+    
+    /**
+     * The number of bits to shift the hash code to spread its high bits
+     * to the low bits.
+     */
+    private static final int HASH_SHIFT = 16;
+    
+    /**
+     * The slots of the open addressing hash table. A new array is published
+     * when the table grows, so the readers always see a complete table. A
+     * reader that doesn't see a newly added symbol looks again while holding
+     * the lock.
+     */
+    private volatile DiptraceSymbol[] fSlots
+        = new DiptraceSymbol[INITIAL_SLOTS];
+    
+    /**
+     * The symbols by their id. A new array is published when it grows. A
+     * reader that doesn't see a newly added symbol looks again while holding
+     * the lock.
+     */
+    private volatile DiptraceSymbol[] fSymbolsById
+        = new DiptraceSymbol[INITIAL_SLOTS];
+    
+    /**
+     * The number of symbols. Guarded by the lock of the table.
+     */
+    private int fSize;
+    
+    /**
+     * Get the symbol of an identifier, if the identifier is in the table.
+     * A symbol that another thread is adding at the same time may not be
+     * found.
+     * @param name the identifier
+     * @return the symbol or null if there is no such symbol
+     */
+    DiptraceSymbol find(final String name) {
+        return find(fSlots, name, name.hashCode());
+    }
+    
+    /**
+     * Get the symbol of an identifier. The symbol is added to the table if
+     * it is not there.
+     * @param name the identifier
+     * @return the symbol
+     */
+    DiptraceSymbol intern(final String name) {
+        DiptraceSymbol symbol = find(fSlots, name, name.hashCode());
+        if (symbol == null) {
+            symbol = add(name);
+        }
+        return symbol;
+    }
+    
+    /**
+     * Get the symbol of an identifier in a text. The symbol is added to the
+     * table if it is not there. No string is created if the symbol is in
+     * the table.
+     * @param text the text
+     * @param start the start of the identifier
+     * @param end the end of the identifier
+     * @return the symbol
+     */
+    DiptraceSymbol intern(
+        final DiptraceText text,
+        final int start,
+        final int end) {
+        
+        if (text.needsDecoding(start, end)) {
+            return intern(text.substring(start, end));
+        }
+        
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = HASH_MULTIPLIER * hash + text.charAt(i);
+        }
+        
+        DiptraceSymbol[] slots = fSlots;
+        int mask = slots.length - 1;
+        for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+            DiptraceSymbol symbol = slots[i];
+            if (symbol == null) {
+                return add(text.substring(start, end));
+            }
+            if (contentEquals(symbol.getName(), text, start, end)) {
+                return symbol;
+            }
+        }
+    }
+    
+    /**
+     * Get a symbol by its id.
+     * @param id the id
+     * @return the symbol
+     */
+    DiptraceSymbol get(final int id) {
+        DiptraceSymbol[] symbolsById = fSymbolsById;
+        DiptraceSymbol symbol = null;
+        if (id < symbolsById.length) {
+            symbol = symbolsById[id];
+        }
+        if (symbol == null) {
+            synchronized (this) {
+                symbol = fSymbolsById[id];
+            }
+        }
+        return symbol;
+    }
+    
+    /**
+     * Get the number of symbols in the table.
+     * @return the number of symbols
+     */
+    synchronized int size() {
+        return fSize;
+    }
+    
+    /**
+     * Add an identifier to the table if it is not there.
+     * @param name the identifier
+     * @return the symbol
+     */
+    private synchronized DiptraceSymbol add(final String name) {
+        
+        DiptraceSymbol symbol = find(fSlots, name, name.hashCode());
+        if (symbol != null) {
+            return symbol;
+        }
+        
+        symbol = new DiptraceSymbol(name, fSize);
+        DiptraceSymbol[] symbolsById = fSymbolsById;
+        if (fSize == symbolsById.length) {
+            symbolsById = Arrays.copyOf(symbolsById, fSize * 2);
+            symbolsById[fSize] = symbol;
+            fSymbolsById = symbolsById;
+        } else {
+            symbolsById[fSize] = symbol;
+        }
+        fSize++;
+        
+        DiptraceSymbol[] slots = fSlots;
+        if (fSize * 2 > slots.length) {
+            // Build the new table before it's published.
+            DiptraceSymbol[] newSlots = new DiptraceSymbol[slots.length * 2];
+            for (DiptraceSymbol oldSymbol : slots) {
+                if (oldSymbol != null) {
+                    put(newSlots, oldSymbol);
+                }
+            }
+            put(newSlots, symbol);
+            fSlots = newSlots;
+        } else {
+            put(slots, symbol);
+        }
+        
+        return symbol;
+    }
+    
+    /**
+     * Put a symbol in the first free slot.
+     * @param slots the slots
+     * @param symbol the symbol
+     */
+    private static void put(
+        final DiptraceSymbol[] slots,
+        final DiptraceSymbol symbol) {
+        
+        int mask = slots.length - 1;
+        int i = spread(symbol.getName().hashCode()) & mask;
+        while (slots[i] != null) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = symbol;
+    }
+    
+    /**
+     * Find an identifier in the slots.
+     * @param slots the slots
+     * @param name the identifier
+     * @param hash the hash code of the identifier
+     * @return the symbol or null if there is no such symbol
+     */
+    private static DiptraceSymbol find(
+        final DiptraceSymbol[] slots,
+        final String name,
+        final int hash) {
+        
+        int mask = slots.length - 1;
+        for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+            DiptraceSymbol symbol = slots[i];
+            if ((symbol == null) || name.equals(symbol.getName())) {
+                return symbol;
+            }
+        }
+    }
+    
+    /**
+     * Spread the high bits of a hash code to the low bits.
+     * @param hash the hash code
+     * @return the spread hash code
+     */
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> HASH_SHIFT);
+    }
+    
+    /**
+     * Get whenether a string has the same characters as a part of a text.
+     * @param name the string
+     * @param text the text
+     * @param start the start of the part of the text
+     * @param end the end of the part of the text
+     * @return true if the characters are the same
+     */
+    private static boolean contentEquals(
+        final String name,
+        final DiptraceText text,
+        final int start,
+        final int end) {
+        
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+}
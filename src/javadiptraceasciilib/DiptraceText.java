@@ -0,0 +1,513 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The text of a DipTrace ascii file that the tokenizer reads from.
+ * <P>
+ * The text is either an array of characters or a buffer of UTF-8 encoded
+ * bytes, for example a memory mapped file. All the characters that have a
+ * meaning for the tokenizer, like parentheses, double quotes, spaces and new
+ * lines, are ASCII characters. Since a byte of a multi byte UTF-8 character
+ * never looks like an ASCII character, the tokenizer can read the bytes
+ * directly. Only words and strings that have non ASCII characters need to be
+ * decoded.
+ */
+abstract class DiptraceText {
+    
+    /**
+     * The first character that is not an ASCII character.
+     */
+    static final char FIRST_NON_ASCII_CHAR = 0x80;
+    
+    /**
+     * A mask that converts a signed byte to an unsigned value.
+     */
+    private static final int BYTE_MASK = 0xFF;
+    
+    /**
+     * The structural index of the text, or null if it's not created yet.
+     */
+    private DiptraceStructuralIndex fStructuralIndex;
+    
+    /**
+     * Create a text from an array of characters. The array is not copied.
+     * @param buffer the characters
+     * @return the text
+     */
+    static DiptraceText wrap(final char[] buffer) {
+        return new CharArrayText(buffer);
+    }
+    
+    /**
+     * Create a text from a buffer of UTF-8 encoded bytes. The buffer is not
+     * copied. The text starts at position zero of the buffer and ends at the
+     * limit of the buffer.
+     * @param buffer the bytes
+     * @return the text
+     */
+    static DiptraceText wrap(final ByteBuffer buffer) {
+        return new ByteBufferText(buffer, null, null);
+    }
+    
+    /**
+     * Create a text from a file by memory mapping the file. The file is
+     * expected to be UTF-8 encoded.
+     * @param path the path of the file
+     * @return the text
+     * @throws IOException on any I/O error or if the file is larger than
+     * 2 GB
+     */
+    static DiptraceText map(final Path path) throws IOException {
+        try (FileChannel channel
+                = FileChannel.open(path, StandardOpenOption.READ)) {
+            
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(
+                    String.format(
+                        "The file %s is too large to be memory mapped",
+                        path));
+            }
+            
+            Object fileKey
+                = Files.readAttributes(path, BasicFileAttributes.class)
+                    .fileKey();
+            
+            // The mapping is valid after the channel is closed.
+            return new ByteBufferText(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size),
+                path, fileKey);
+        }
+    }
+    
+    /**
+     * Get the length of the text. For a text of bytes, this is the number
+     * of bytes.
+     * @return the length
+     */
+    abstract int length();
+    
+    /**
+     * Get the character at a position. For a text of bytes, a non ASCII
+     * byte is returned as a character that is not an ASCII character, but
+     * the character is not decoded.
+     * @param index the position
+     * @return the character
+     */
+    abstract char charAt(int index);
+    
+    /**
+     * Get a part of the text as a string. The part is decoded if needed.
+     * @param start the start of the part
+     * @param end the end of the part
+     * @return the string
+     */
+    abstract String substring(int start, int end);
+    
+    /**
+     * Get whenether charAt() returns other characters than the decoded
+     * characters of a part of the text.
+     * @param start the start of the part
+     * @param end the end of the part
+     * @return true if the part must be decoded to be read as characters
+     */
+    abstract boolean needsDecoding(int start, int end);
+    
+    /**
+     * Get the structural index of the text. The index is created the first
+     * time it's needed.
+     * @return the index
+     */
+    final synchronized DiptraceStructuralIndex getStructuralIndex() {
+        if (fStructuralIndex == null) {
+            DiptraceStructuralIndex index
+                = new DiptraceStructuralIndex(length());
+            findStructuralChars(index);
+            fStructuralIndex = index;
+        }
+        return fStructuralIndex;
+    }
+    
+    /**
+     * Add the position of each structural character in the text to an
+     * index.
+     * @param index the index
+     */
+    abstract void findStructuralChars(DiptraceStructuralIndex index);
+    
+    /**
+     * Get the file that the text is memory mapped from. The position of
+     * each character in the text is the position of the byte in the file.
+     * @return the path of the file, or null if the text is not mapped from
+     * a file
+     */
+    Path getPath() {
+        return null;
+    }
+    
+    /**
+     * Get the key that identified the file that the text is memory mapped
+     * from when it was mapped. If the file has been replaced, the path has
+     * another key.
+     * @return the key of the file, or null if the text is not mapped from a
+     * file or the file system has no keys
+     */
+    Object getFileKey() {
+        return null;
+    }
+    
+    /**
+     * Stop using the file that the text is memory mapped from. The text is
+     * copied into memory, so the parts of the text can still be read after
+     * the file is replaced, and the mapping can be released. A text that is
+     * not mapped from a file is not changed.
+     */
+    void detach() {
+    }
+    
+    /**
+     * Write a part of the text to a writer. The part is decoded if needed.
+     * @param writer the writer
+     * @param start the start of the part
+     * @param end the end of the part
+     * @throws IOException when IO error occurs
+     */
+    void write(final Writer writer, final int start, final int end)
+        throws IOException {
+        
+        writer.write(substring(start, end));
+    }
+    
+    
+    /**
+     * A text that is an array of characters.
+     */
+    private static final class CharArrayText extends DiptraceText {
+        
+        /**
+         * The characters.
+         */
+        private final char[] fBuffer;
+        
+        /**
+         * Initialize a CharArrayText object.
+         * @param buffer the characters
+         */
+        CharArrayText(final char[] buffer) {
+            this.fBuffer = buffer;
+        }
+        
+        /**
+         * Get the length of the text.
+         * @return the length
+         */
+        @Override
+        int length() {
+            return fBuffer.length;
+        }
+        
+        /**
+         * Get the character at a position.
+         * @param index the position
+         * @return the character
+         */
+        @Override
+        char charAt(final int index) {
+            return fBuffer[index];
+        }
+        
+        /**
+         * Get a part of the text as a string.
+         * @param start the start of the part
+         * @param end the end of the part
+         * @return the string
+         */
+        @Override
+        String substring(final int start, final int end) {
+            return new String(fBuffer, start, end - start);
+        }
+        
+        /**
+         * Get whenether a part of the text must be decoded. Characters never
+         * need to be decoded.
+         * @param start the start of the part
+         * @param end the end of the part
+         * @return false
+         */
+        @Override
+        boolean needsDecoding(final int start, final int end) {
+            return false;
+        }
+        
+        /**
+         * Write a part of the text to a writer.
+         * @param writer the writer
+         * @param start the start of the part
+         * @param end the end of the part
+         * @throws IOException when IO error occurs
+         */
+        @Override
+        void write(final Writer writer, final int start, final int end)
+            throws IOException {
+            
+            writer.write(fBuffer, start, end - start);
+        }
+        
+        /**
+         * Add the position of each structural character to an index.
+         * @param index the index
+         */
+        @Override
+        void findStructuralChars(final DiptraceStructuralIndex index) {
+            for (int i = 0; i < fBuffer.length; i++) {
+                if (DiptraceStructuralIndex.isStructural(fBuffer[i])) {
+                    index.add(i);
+                }
+            }
+        }
+        
+    }
+    
+    
+    /**
+     * A text that is a buffer of UTF-8 encoded bytes.
+     */
+    private static final class ByteBufferText extends DiptraceText {
+        
+        /**
+         * A long with the value one in each byte.
+         */
+        private static final long ONES = 0x0101010101010101L;
+        
+        /**
+         * A long with the seven low bits set in each byte.
+         */
+        private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+        
+        /**
+         * A left parentheses in each byte.
+         */
+        private static final long LEFT_PARENTHESES = '(' * ONES;
+        
+        /**
+         * A right parentheses in each byte.
+         */
+        private static final long RIGHT_PARENTHESES = ')' * ONES;
+        
+        /**
+         * A double quote in each byte.
+         */
+        private static final long DOUBLE_QUOTES = '"' * ONES;
+        
+        /**
+         * A line feed in each byte.
+         */
+        private static final long LINE_FEEDS = '\n' * ONES;
+        
+        /**
+         * A carriage return in each byte.
+         */
+        private static final long CARRIAGE_RETURNS = '\r' * ONES;
+        
+        /**
+         * The bytes.
+         */
+        private ByteBuffer fBuffer;
+        
+        /**
+         * The file that the bytes are mapped from, or null.
+         */
+        private Path fPath;
+        
+        /**
+         * The key of the file that the bytes are mapped from, or null.
+         */
+        private Object fFileKey;
+        
+        /**
+         * Initialize a ByteBufferText object.
+         * @param buffer the bytes
+         * @param path the file that the bytes are mapped from, or null
+         * @param fileKey the key of the file, or null
+         */
+        ByteBufferText(
+            final ByteBuffer buffer,
+            final Path path,
+            final Object fileKey) {
+            
+            this.fBuffer = buffer;
+            this.fPath = path;
+            this.fFileKey = fileKey;
+        }
+        
+        /**
+         * Get the file that the text is memory mapped from.
+         * @return the path of the file, or null
+         */
+        @Override
+        Path getPath() {
+            return fPath;
+        }
+        
+        /**
+         * Get the key of the file that the text is memory mapped from.
+         * @return the key, or null
+         */
+        @Override
+        Object getFileKey() {
+            return fFileKey;
+        }
+        
+        /**
+         * Copy the bytes that are mapped from a file into memory.
+         */
+        @Override
+        void detach() {
+            if (fPath == null) {
+                return;
+            }
+            ByteBuffer bytes = fBuffer.duplicate();
+            bytes.rewind();
+            ByteBuffer copy = ByteBuffer.allocate(bytes.limit());
+            copy.put(bytes);
+            copy.rewind();
+            fBuffer = copy;
+            fPath = null;
+            fFileKey = null;
+        }
+        
+        /**
+         * Get the length of the text.
+         * @return the length
+         */
+        @Override
+        int length() {
+            return fBuffer.limit();
+        }
+        
+        /**
+         * Get the byte at a position as a character.
+         * @param index the position
+         * @return the character
+         */
+        @Override
+        char charAt(final int index) {
+            return (char) (fBuffer.get(index) & BYTE_MASK);
+        }
+        
+        /**
+         * Get a part of the text as a string. If the part has only ASCII
+         * characters, the bytes are used as they are. Otherwise the part is
+         * decoded from UTF-8.
+         * @param start the start of the part
+         * @param end the end of the part
+         * @return the string
+         */
+        @Override
+        String substring(final int start, final int end) {
+            char[] chars = new char[end - start];
+            for (int i = start; i < end; i++) {
+                byte b = fBuffer.get(i);
+                if (b < 0) {
+                    return decode(start, end);
+                }
+                chars[i - start] = (char) b;
+            }
+            return new String(chars);
+        }
+        
+        /**
+         * Get whenether a part of the text has non ASCII characters that
+         * must be decoded from UTF-8.
+         * @param start the start of the part
+         * @param end the end of the part
+         * @return true if the part has any non ASCII byte
+         */
+        @Override
+        boolean needsDecoding(final int start, final int end) {
+            for (int i = start; i < end; i++) {
+                if (fBuffer.get(i) < 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Add the position of each structural character to an index. The
+         * bytes are read eight at a time as a long, and all the bytes in the
+         * long are compared with the structural characters at once. A long
+         * without any structural character is skipped as a whole.
+         * @param index the index
+         */
+        @Override
+        void findStructuralChars(final DiptraceStructuralIndex index) {
+            
+            ByteBuffer words = fBuffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            int length = fBuffer.limit();
+            int pos = 0;
+            
+            for (; pos + Long.BYTES <= length; pos += Long.BYTES) {
+                long word = words.getLong(pos);
+                
+                long mask = findZeroBytes(word ^ LEFT_PARENTHESES)
+                    | findZeroBytes(word ^ RIGHT_PARENTHESES)
+                    | findZeroBytes(word ^ DOUBLE_QUOTES)
+                    | findZeroBytes(word ^ LINE_FEEDS)
+                    | findZeroBytes(word ^ CARRIAGE_RETURNS);
+                
+                // The high bit of each byte of the mask is set if the byte
+                // is a structural character. The first byte is the highest
+                // byte.
+                while (mask != 0) {
+                    int bit = Long.numberOfLeadingZeros(mask);
+                    index.add(pos + bit / Byte.SIZE);
+                    mask &= ~(Long.MIN_VALUE >>> bit);
+                }
+            }
+            
+            for (; pos < length; pos++) {
+                if (DiptraceStructuralIndex.isStructural(charAt(pos))) {
+                    index.add(pos);
+                }
+            }
+        }
+        
+        /**
+         * Find the bytes in a long that are zero.
+         * @param word the long
+         * @return a long where the high bit of a byte is set if the byte is
+         * zero in the word, and all other bits are zero
+         */
+        private static long findZeroBytes(final long word) {
+            long sum = (word & LOW_BITS) + LOW_BITS;
+            return ~(sum | word | LOW_BITS);
+        }
+        
+        /**
+         * Decode a part of the text from UTF-8.
+         * @param start the start of the part
+         * @param end the end of the part
+         * @return the string
+         */
+        private String decode(final int start, final int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = start; i < end; i++) {
+                bytes[i - start] = fBuffer.get(i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+    }
+    
+}
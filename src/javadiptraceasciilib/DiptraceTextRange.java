@@ -0,0 +1,121 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A part of the text of a DipTrace ascii file. It's used to keep the sub
+ * items of an item unparsed until they are needed. Note that the range keeps
+ * a reference to the whole text.
+ */
+final class DiptraceTextRange implements DiptraceLazySubItems {
+    
+    /**
+     * The text.
+     */
+    private final DiptraceText fText;
+    
+    /**
+     * The start of the part.
+     */
+    private final int fStart;
+    
+    /**
+     * The end of the part.
+     */
+    private final int fEnd;
+    
+    /**
+     * Initializes a DiptraceTextRange object.
+     * @param text the text
+     * @param start the start of the part
+     * @param end the end of the part
+     */
+    DiptraceTextRange(
+        final DiptraceText text,
+        final int start,
+        final int end) {
+        
+        this.fText = text;
+        this.fStart = start;
+        this.fEnd = end;
+    }
+    
+    /**
+     * Get the text.
+     * @return the text
+     */
+    DiptraceText getText() {
+        return fText;
+    }
+    
+    /**
+     * Get the start of the part.
+     * @return the start
+     */
+    int getStart() {
+        return fStart;
+    }
+    
+    /**
+     * Get the end of the part.
+     * @return the end
+     */
+    int getEnd() {
+        return fEnd;
+    }
+    
+    /**
+     * Create a tokenizer that reads this part of the text.
+     * @return the tokenizer
+     */
+    DiptraceTokenizer createTokenizer() {
+        return new DiptraceTokenizer(fText, fStart, fEnd);
+    }
+    
+    /**
+     * Write this part of the text as it is.
+     * @param writer the writer
+     * @throws IOException when IO error occurs
+     */
+    void write(final Writer writer) throws IOException {
+        fText.write(writer, fStart, fEnd);
+    }
+    
+    /**
+     * Parse the sub items in this part of the text and add them to an item.
+     * @param item the item
+     * @throws IOException on any I/O error
+     */
+    @Override
+    public void addSubItemsTo(final DiptraceItem item) throws IOException {
+        item.parseSubItems(createTokenizer());
+    }
+    
+    /**
+     * Write the sub items in this part of the text as they are.
+     * @param writer the writer that writes to the Diptrace ascii file
+     * @param indent the number of spaces to indent the sub items
+     * @throws IOException on any I/O error
+     */
+    @Override
+    public void write(final Writer writer, final int indent)
+        throws IOException {
+        
+        DiptraceItem.writeIndent(writer, indent);
+        write(writer);
+        writer.append(System.lineSeparator());
+    }
+    
+    /**
+     * Get the sub items of a copy of the item. The text is never changed, so
+     * the copy can use the same text.
+     * @param item the copy
+     * @return this object
+     */
+    @Override
+    public DiptraceLazySubItems shareWith(final DiptraceItem item) {
+        return this;
+    }
+    
+}
@@ -0,0 +1,118 @@
+package javadiptraceasciilib;
+
+/**
+ * A CharSequence view of a part of a DiptraceText. The view doesn't copy the
+ * characters unless the part must be decoded, and the same view object can
+ * be moved to another part of the text with set().
+ */
+final class DiptraceTextView implements CharSequence {
+    
+    /**
+     * The text.
+     */
+    private DiptraceText fText;
+    
+    /**
+     * The start of the part.
+     */
+    private int fStart;
+    
+    /**
+     * The end of the part.
+     */
+    private int fEnd;
+    
+    /**
+     * The decoded part, or null if the part is not decoded yet.
+     */
+    private String fDecoded;
+    
+    /**
+     * True if the part has been checked whenether it needs to be decoded.
+     */
+    private boolean fChecked;
+    
+    /**
+     * Move the view to a part of a text.
+     * @param text the text
+     * @param start the start of the part
+     * @param end the end of the part
+     */
+    void set(final DiptraceText text, final int start, final int end) {
+        fText = text;
+        fStart = start;
+        fEnd = end;
+        fDecoded = null;
+        fChecked = false;
+    }
+    
+    /**
+     * Get the decoded part if the part needs to be decoded.
+     * @return the decoded string or null if the part doesn't need decoding
+     */
+    private String getDecoded() {
+        if (!fChecked) {
+            fChecked = true;
+            if (fText.needsDecoding(fStart, fEnd)) {
+                fDecoded = fText.substring(fStart, fEnd);
+            }
+        }
+        return fDecoded;
+    }
+    
+    /**
+     * Get the length of the part.
+     * @return the length
+     */
+    @Override
+    public int length() {
+        String decoded = getDecoded();
+        if (decoded != null) {
+            return decoded.length();
+        }
+        return fEnd - fStart;
+    }
+    
+    /**
+     * Get the character at a position in the part.
+     * @param index the position
+     * @return the character
+     */
+    @Override
+    public char charAt(final int index) {
+        String decoded = getDecoded();
+        if (decoded != null) {
+            return decoded.charAt(index);
+        }
+        if ((index < 0) || (index >= fEnd - fStart)) {
+            throw new IndexOutOfBoundsException(
+                String.format("Index %d is out of bounds", index));
+        }
+        return fText.charAt(fStart + index);
+    }
+    
+    /**
+     * Get a part of this part. The returned sequence is a copy.
+     * @param start the start
+     * @param end the end
+     * @return the sequence
+     */
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return toString().substring(start, end);
+    }
+    
+    /**
+     * Get the part as a string.
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        String decoded = getDecoded();
+        if (decoded != null) {
+            return decoded;
+        }
+        return fText.substring(fStart, fEnd);
+    }
+    
+}
@@ -2,21 +2,54 @@ package javadiptraceasciilib;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * This class has methods to parse a DipTrace ascii file into tokens.
+ * <P>
+ * The tokenizer walks a text, either a char array or a buffer of bytes, with
+ * an offset cursor. The characters are never moved or copied when a token is
+ * consumed, only the cursor is advanced. Each line is trimmed by moving the
+ * start and end offsets of the line, so the token stream is the same as if
+ * the file was read line by line and each line was trimmed.
  */
 final class DiptraceTokenizer {
     
     /**
-     * The reader that the tokenizer reads from.
+     * The initial size of the buffer when the whole reader is read.
      */
-    private final BufferedReader fReader;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
     
     /**
-     * The current line that the tokenizer reads from.
+     * The text that the tokenizer reads from.
      */
-    private final StringBuilder fCurrentLine;
+    private final DiptraceText fText;
+    
+    /**
+     * The end of the text that the tokenizer reads from.
+     */
+    private final int fEnd;
+    
+    /**
+     * True if there is any input at all.
+     */
+    private final boolean fHasInput;
+    
+    /**
+     * The cursor. The position of the next character to read on the current
+     * line.
+     */
+    private int fPos;
+    
+    /**
+     * The end of the current line, after the line is trimmed.
+     */
+    private int fLineEnd;
+    
+    /**
+     * The start of the next line.
+     */
+    private int fNextLineStart;
     
     /**
      * The line number of the current line.
@@ -28,29 +61,164 @@ final class DiptraceTokenizer {
      */
     private boolean fLastTokenWasLeftParentheses = false;
     
+    /**
+     * The start of the value of the last token read by lex().
+     */
+    private int fTokenStart;
+    
+    /**
+     * The end of the value of the last token read by lex().
+     */
+    private int fTokenEnd;
+    
+    /**
+     * True if the last token read by lex() was the first token on a line.
+     */
+    private boolean fTokenPrecededWithNewline;
+    
     /**
      * The next token.
      */
     private DiptraceToken fNextToken;
     
+    /**
+     * The position of the next token in the text, if the next token has
+     * been fetched.
+     */
+    private int fNextTokenStart;
+    
+    /**
+     * The scanner that classifies words that are not in double quotes.
+     */
+    private final DiptraceWordScanner fWordScanner = new DiptraceWordScanner();
+    
+    /**
+     * The strings that have been read, so that each different string is
+     * only kept once in the items.
+     */
+    private final DiptraceSymbolTable fStrings = new DiptraceSymbolTable();
+    
     /**
      * Initializes a DiptraceTokenizer object with a reader that reads a
-     * Diptrace ASCII file.
+     * Diptrace ASCII file. The whole reader is read into memory.
      * @param reader the reader
      * @throws IOException on any I/O error
      */
     DiptraceTokenizer(final BufferedReader reader) throws IOException {
+        this(readFully(reader));
+    }
+    
+    /**
+     * Initializes a DiptraceTokenizer object with the characters of a
+     * Diptrace ASCII file.
+     * @param buffer the characters
+     */
+    DiptraceTokenizer(final char[] buffer) {
+        this(DiptraceText.wrap(buffer), 0, buffer.length);
+    }
+    
+    /**
+     * Initializes a DiptraceTokenizer object with a part of an array of
+     * characters of a Diptrace ASCII file. The array is not copied.
+     * @param buffer the characters
+     * @param start the position of the first character to read
+     * @param end the position after the last character to read
+     */
+    DiptraceTokenizer(final char[] buffer, final int start, final int end) {
+        this(DiptraceText.wrap(buffer), start, end);
+    }
+    
+    /**
+     * Initializes a DiptraceTokenizer object with a text of a Diptrace ASCII
+     * file.
+     * @param text the text
+     */
+    DiptraceTokenizer(final DiptraceText text) {
+        this(text, 0, text.length());
+    }
+    
+    /**
+     * Initializes a DiptraceTokenizer object with a part of a text of a
+     * Diptrace ASCII file. The text is not copied.
+     * @param text the text
+     * @param start the position of the first character to read
+     * @param end the position after the last character to read
+     */
+    DiptraceTokenizer(
+        final DiptraceText text,
+        final int start,
+        final int end) {
         
-        this.fReader = reader;
+        this.fText = text;
+        this.fEnd = end;
+        this.fHasInput = start < end;
         
-        String line = reader.readLine();
-        if (line != null) {
-            this.fCurrentLine = new StringBuilder(line.trim());
-        } else {
-            this.fCurrentLine = null;
+        if (fHasInput) {
+            loadLine(start);
         }
     }
     
+    /**
+     * Read all characters from a reader.
+     * @param reader the reader
+     * @return an array with the characters
+     * @throws IOException on any I/O error
+     */
+    private static char[] readFully(final BufferedReader reader)
+        throws IOException {
+        
+        char[] buffer = new char[INITIAL_BUFFER_SIZE];
+        int length = 0;
+        int count;
+        while ((count = reader.read(buffer, length, buffer.length - length))
+            != -1) {
+            
+            length += count;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+    
+    /**
+     * Set the cursor to the start of a line and find the end of the line.
+     * The line is trimmed in the same way as String.trim() does.
+     * @param start the start of the line
+     */
+    private void loadLine(final int start) {
+        
+        int end = start;
+        while ((end < fEnd)
+            && (fText.charAt(end) != '\n')
+            && (fText.charAt(end) != '\r')) {
+            end++;
+        }
+        
+        // Find the start of the next line. "\r\n" is one line terminator.
+        fNextLineStart = end;
+        if (fNextLineStart < fEnd) {
+            if ((fText.charAt(fNextLineStart) == '\r')
+                && (fNextLineStart + 1 < fEnd)
+                && (fText.charAt(fNextLineStart + 1) == '\n')) {
+                
+                fNextLineStart++;
+            }
+            fNextLineStart++;
+        }
+        
+        int pos = start;
+        while ((pos < end) && (fText.charAt(pos) <= ' ')) {
+            pos++;
+        }
+        while ((end > pos) && (fText.charAt(end - 1) <= ' ')) {
+            end--;
+        }
+        
+        fPos = pos;
+        fLineEnd = end;
+    }
+    
     /**
      * Eat the current token. It checks that the token is of a particular type.
      * @param type the type of token that is expected.
@@ -104,178 +272,500 @@ final class DiptraceTokenizer {
     DiptraceToken previewNextToken() throws IOException {
         if (fNextToken == null) {
             fNextToken = fetchNextToken();
+            fNextTokenStart = fTokenStart;
         }
         return fNextToken;
     }
     
     
     /**
-     * Fetch the next token from the reader.
-     * @return the next token
+     * Get the position in the text of the token that previewNextToken()
+     * returned.
+     * @return the position of the first character of the token
+     */
+    int getNextTokenStart() {
+        return fNextTokenStart;
+    }
+    
+    
+    /**
+     * Skip the sub items of an item without parsing them. The next token
+     * must be the left parentheses of the first sub item. After this call,
+     * the next token is the right parentheses of the item, or end of file.
+     * @return the part of the text that has the sub items
+     * @throws RuntimeException if the next token is not a left parentheses
      * @throws IOException on any I/O error
      */
-    //CHECKSTYLE.OFF: MethodLength - Difficult to split method
-    private DiptraceToken fetchNextToken() throws IOException {
+    DiptraceTextRange skipSubItems() throws IOException {
+        
+        DiptraceToken token = previewNextToken();
+        if ((token == null)
+            || (token.getType() != DiptraceTokenType.LEFT_PARENTHESES)) {
+            
+            throw new RuntimeException(
+                "Token is not a LEFT_PARENTHESES token");
+        }
+        
+        int start = fNextTokenStart;
+        int end = fEnd;
+        fNextToken = null;
+        
+        if (skipToEndOfItem()) {
+            // Keep the right parentheses of the item for the caller.
+            end = fTokenStart;
+            fNextTokenStart = fTokenStart;
+            fNextToken = new DiptraceToken(
+                DiptraceTokenType.RIGHT_PARENTHESES,
+                fTokenPrecededWithNewline);
+        }
+        
+        while ((end > start) && (fText.charAt(end - 1) <= ' ')) {
+            end--;
+        }
+        
+        return new DiptraceTextRange(fText, start, end);
+    }
+    
+    /**
+     * Skip to the right parentheses that ends the current item. The left
+     * parentheses of the first sub item must already be read.
+     * <P>
+     * This method doesn't read the text character by character. It jumps
+     * from one structural character to the next by the structural index of
+     * the text, and only looks at the characters around each structural
+     * character to decide if it starts a token in the same way as lex()
+     * would do. A parentheses or a double quote inside a word is not a
+     * token, and everything inside a string is skipped.
+     * @return true if the right parentheses is found, false on end of file.
+     * If true, the position of the right parentheses is available from
+     * getTokenStart().
+     */
+    private boolean skipToEndOfItem() {
         
-        boolean firstTokenOnLine = false;
+        DiptraceStructuralIndex index = fText.getStructuralIndex();
+        int size = index.size();
         
-        while ((fCurrentLine != null) && (fCurrentLine.length() == 0)) {
-            fCurrentLine.setLength(0);
-            String line = fReader.readLine();
+        int depth = 1;
+        int lineNo = fLineNo;
+        boolean firstLine = true;
+        // The part of the current line before the cursor is already read, so
+        // the line is handled as if it starts at the cursor.
+        int lineStart = fPos;
+        int lineTrimmedStart = fPos;
+        int lineTrimmedEnd = fLineEnd;
+        int lastTokenEnd = fPos;
+        boolean lastTokenWasLeftParentheses = fLastTokenWasLeftParentheses;
+        
+        for (int i = index.indexOf(fPos); i < size; i++) {
             
-            // End of file?
-            if (line == null) {
-                return null;
+            int pos = index.get(i);
+            if (pos >= fEnd) {
+                break;
             }
             
-            fCurrentLine.append(line.trim());
-            fLineNo++;
-            
-            firstTokenOnLine = true;
-        }
-        
-        if (fCurrentLine == null) {
-            return null;
-        } else if (fCurrentLine.charAt(0) == '(') {
-            fCurrentLine.delete(0, 1);
-            fLastTokenWasLeftParentheses = true;
-            return new DiptraceToken(
-                            DiptraceTokenType.LEFT_PARENTHESES,
-                            firstTokenOnLine);
-        } else if (fCurrentLine.charAt(0) == ')') {
-            fCurrentLine.delete(0, 1);
-            return new DiptraceToken(
-                            DiptraceTokenType.RIGHT_PARENTHESES,
-                            firstTokenOnLine);
-        } else {
-            String tokenValue;
+            char c = fText.charAt(pos);
             
-            if (fCurrentLine.charAt(0) == '"') {
-                int pos = 1;
-                while ((pos < fCurrentLine.length())
-                        && (fCurrentLine.charAt(pos) != '"')) {
-                    pos++;
-                }
-                
-                if (pos == fCurrentLine.length()) {
-                    throw new RuntimeException(
-                        String.format(
-                            "Invalid string token. No \" at end of string."
-                            + "LineNo: %d, %s",
-                        fLineNo,
-                        fCurrentLine));
+            if ((c == '\n') || (c == '\r')) {
+                int next = pos + 1;
+                if ((c == '\r') && (next < fEnd)
+                    && (fText.charAt(next) == '\n')) {
+                    
+                    // "\r\n" is one line terminator.
+                    next++;
+                    i++;
                 }
-                
-                tokenValue = fCurrentLine.substring(1, pos);
-                fCurrentLine.delete(0, pos + 1);
-                
-                while ((fCurrentLine.length() > 0)
-                        && (fCurrentLine.charAt(0) == ' ')) {
-                    fCurrentLine.delete(0, 1);
+                if (next < fEnd) {
+                    lineNo++;
                 }
-                
-                return new DiptraceToken(
-                                DiptraceTokenType.STRING,
-                                tokenValue,
-                                firstTokenOnLine);
+                firstLine = false;
+                lineStart = next;
+                lineTrimmedStart = -1;
+                lineTrimmedEnd = -1;
+                continue;
             }
             
-            
-            int spacePos = fCurrentLine.indexOf(" ");
-            if (spacePos >= 0) {
-                tokenValue = fCurrentLine.substring(0, spacePos);
-                fCurrentLine.delete(0, spacePos + 1);
-            } else {
-                int length = fCurrentLine.length();
-                
-                if (fCurrentLine.charAt(length - 1) == ')') {
-                    tokenValue = fCurrentLine.substring(0, length - 1);
-                    fCurrentLine.delete(0, length - 1);
-                } else {
-                    tokenValue = fCurrentLine.substring(0, length);
-                    fCurrentLine.setLength(0);    // Clear string
+            if (lineTrimmedStart == -1) {
+                lineTrimmedStart = lineStart;
+                while (fText.charAt(lineTrimmedStart) <= ' ') {
+                    lineTrimmedStart++;
                 }
             }
             
-            if (fLastTokenWasLeftParentheses) {
-                fLastTokenWasLeftParentheses = false;
-                return new DiptraceToken(
-                    DiptraceTokenType.IDENTIFIER,
-                    tokenValue,
-                    firstTokenOnLine);
-            } else {
-                try {
-                    int value = Integer.parseInt(tokenValue);
-                    // If we are here, the fValue is a valid integer
-                    return new DiptraceToken(
-                        DiptraceTokenType.INTEGER,
-                        tokenValue, value,
-                        firstTokenOnLine);
-                } catch (NumberFormatException e) {
-                    // If we are here, fValue is not an integer so we just
-                    // continue to the next statement.
+            // A token starts where the last token ended, at the start of the
+            // line or after a space. Each extra space after a word is read
+            // as an empty word, so every space ends a token.
+            boolean tokenStart = (pos == lastTokenEnd)
+                || (pos == lineTrimmedStart)
+                || (fText.charAt(pos - 1) == ' ');
+            
+            if (c == ')') {
+                if (!tokenStart) {
+                    // A word that is last on the line keeps a trailing right
+                    // parentheses as a token of its own.
+                    if (lineTrimmedEnd == -1) {
+                        lineTrimmedEnd = findTrimmedLineEnd(index, i);
+                    }
+                    if (pos != lineTrimmedEnd - 1) {
+                        continue;
+                    }
                 }
                 
-                if ((tokenValue.length() > 0)
-                    && (tokenValue.charAt(tokenValue.length() - 1) == '%')) {
+                if (lastTokenWasLeftParentheses
+                    && hasWord(lastTokenEnd, pos, lastTokenEnd >= lineStart)) {
                     
-                    String percentValue
-                        = tokenValue.substring(0, tokenValue.length() - 1);
-                    
-                    try {
-                        double value = Double.parseDouble(percentValue);
-                        // If we are here, the fValue is a valid double
-                        return new DiptraceToken(
-                                        DiptraceTokenType.PERCENT,
-                                        tokenValue,
-                                        value,
-                                        firstTokenOnLine);
-                    } catch (NumberFormatException e) {
-                        // If we are here, fValue is not a double so we just
-                        // continue to the next statement.
-                    }
+                    lastTokenWasLeftParentheses = false;
                 }
                 
-                try {
-                    double value = Double.parseDouble(tokenValue);
-                    // If we are here, the fValue is a valid double
-                    return new DiptraceToken(
-                                    DiptraceTokenType.DOUBLE,
-                                    tokenValue,
-                                    value,
-                                    firstTokenOnLine);
-                } catch (NumberFormatException e) {
-                    // If we are here, fValue is not a double so we just
-                    // continue to the next statement.
+                depth--;
+                if (depth < 0) {
+                    fLineNo = lineNo;
+                    loadLine(lineStart);
+                    fPos = pos + 1;
+                    fTokenStart = pos;
+                    fTokenEnd = pos;
+                    fTokenPrecededWithNewline
+                        = !firstLine && (pos == lineTrimmedStart);
+                    fLastTokenWasLeftParentheses = lastTokenWasLeftParentheses;
+                    return true;
                 }
+                lastTokenEnd = pos + 1;
                 
-                // Check if token value is a identifier
-                boolean isIdentifier =
-                    (tokenValue.length() > 0)
-                    && (Character.isAlphabetic(tokenValue.charAt(0)));
+            } else if (tokenStart) {
                 
-                for (int i = 0; i < tokenValue.length(); i++) {
-                    if (!Character.isLetterOrDigit(tokenValue.charAt(i))) {
-                        isIdentifier = false;
-                    }
+                if (lastTokenWasLeftParentheses
+                    && hasWord(lastTokenEnd, pos, lastTokenEnd >= lineStart)) {
+                    
+                    lastTokenWasLeftParentheses = false;
                 }
                 
-                if (isIdentifier) {
+                if (c == '(') {
+                    depth++;
+                    lastTokenWasLeftParentheses = true;
+                    lastTokenEnd = pos + 1;
+                } else {
+                    // A string. The string ends at the next double quote on
+                    // the same line.
+                    int quote = fEnd;
+                    while (i + 1 < size) {
+                        quote = index.get(i + 1);
+                        if ((quote >= fEnd)
+                            || (fText.charAt(quote) == '"')
+                            || (fText.charAt(quote) == '\n')
+                            || (fText.charAt(quote) == '\r')) {
+                            break;
+                        }
+                        i++;
+                    }
+                    if ((quote >= fEnd) || (fText.charAt(quote) != '"')) {
+                        if (lineTrimmedEnd == -1) {
+                            lineTrimmedEnd = findTrimmedLineEnd(index, i);
+                        }
+                        fLineNo = lineNo;
+                        throw new RuntimeException(
+                            String.format(
+                                "Invalid string token. No \" at end of string."
+                                + "LineNo: %d, %s",
+                            fLineNo,
+                            fText.substring(pos, lineTrimmedEnd)));
+                    }
+                    i++;
+                    
+                    int end = quote + 1;
+                    while ((end < fEnd) && (fText.charAt(end) == ' ')) {
+                        end++;
+                    }
+                    lastTokenEnd = end;
+                }
+            }
+        }
+        
+        // End of file
+        if (lastTokenWasLeftParentheses
+            && hasWord(lastTokenEnd, fEnd, false)) {
+            
+            lastTokenWasLeftParentheses = false;
+        }
+        fLineNo = lineNo;
+        fPos = fEnd;
+        fLineEnd = fEnd;
+        fNextLineStart = fEnd;
+        fLastTokenWasLeftParentheses = lastTokenWasLeftParentheses;
+        return false;
+    }
+    
+    /**
+     * Find the end of a line, after the line is trimmed.
+     * @param index the structural index
+     * @param i the index of a structural character on the line
+     * @return the end of the line
+     */
+    private int findTrimmedLineEnd(
+        final DiptraceStructuralIndex index,
+        final int i) {
+        
+        int end = fEnd;
+        for (int j = i + 1; j < index.size(); j++) {
+            int pos = index.get(j);
+            if (pos >= fEnd) {
+                break;
+            }
+            char c = fText.charAt(pos);
+            if ((c == '\n') || (c == '\r')) {
+                end = pos;
+                break;
+            }
+        }
+        
+        while (fText.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+    
+    /**
+     * Get whenether there is a word between two tokens.
+     * @param start the end of the first token
+     * @param end the start of the second token, or the end of the text
+     * @param sameLine true if the second token is on the same line as the
+     * first token
+     * @return true if there is a word between the tokens
+     */
+    private boolean hasWord(
+        final int start,
+        final int end,
+        final boolean sameLine) {
+        
+        if (sameLine) {
+            // The tokens are on the same line and each character between
+            // them is part of a word, even a space.
+            return end > start;
+        }
+        
+        // The spaces at the start and the end of the lines are trimmed.
+        for (int pos = start; pos < end; pos++) {
+            if (fText.charAt(pos) > ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
+    /**
+     * Fetch the next token from the buffer.
+     * @return the next token
+     * @throws IOException on any I/O error
+     */
+    private DiptraceToken fetchNextToken() throws IOException {
+        
+        boolean itemIdentifier = fLastTokenWasLeftParentheses;
+        DiptraceTokenType type = lex();
+        
+        if (type == null) {
+            return null;
+        }
+        
+        switch (type) {
+            case LEFT_PARENTHESES:
+            case RIGHT_PARENTHESES:
+                return new DiptraceToken(type, fTokenPrecededWithNewline);
+            
+            case INTEGER:
+                return new DiptraceToken(
+                    type,
+                    fText.substring(fTokenStart, fTokenEnd),
+                    fWordScanner.getIntValue(),
+                    fTokenPrecededWithNewline);
+            
+            case DOUBLE:
+            case PERCENT:
+                return new DiptraceToken(
+                    type,
+                    fText.substring(fTokenStart, fTokenEnd),
+                    fWordScanner.getDoubleValue(),
+                    fTokenPrecededWithNewline);
+            
+            case IDENTIFIER:
+                if (itemIdentifier) {
+                    // The identifiers of the items are shared by all items.
                     return new DiptraceToken(
-                        DiptraceTokenType.IDENTIFIER,
-                        tokenValue,
-                        firstTokenOnLine);
+                        type,
+                        DiptraceSymbolTable.GLOBAL.intern(
+                            fText, fTokenStart, fTokenEnd).getName(),
+                        fTokenPrecededWithNewline);
                 }
-                
-                // Bug fix. Diptrace PCB ascii files not always put strings
-                // in " and ".
                 return new DiptraceToken(
-                    DiptraceTokenType.NON_QUOTED_STRING,
-                    tokenValue,
-                    firstTokenOnLine);
+                    type,
+                    fStrings.intern(fText, fTokenStart, fTokenEnd).getName(),
+                    fTokenPrecededWithNewline);
+            
+            default:
+                // STRING or NON_QUOTED_STRING. Diptrace PCB
+                // ascii files not always put strings in " and ".
+                return new DiptraceToken(
+                    type,
+                    fStrings.intern(fText, fTokenStart, fTokenEnd).getName(),
+                    fTokenPrecededWithNewline);
+        }
+    }
+    
+    
+    /**
+     * Read the next token from the buffer without creating any object. The
+     * position of the token value in the text is available from
+     * getTokenStart() and getTokenEnd() and the numeric value is available
+     * from getIntValue() and getDoubleValue(), until the next call to this
+     * method.
+     * <P>
+     * This method must not be mixed with nextToken(), previewNextToken()
+     * and eatToken() on the same tokenizer.
+     * @return the type of the token or null on end of file
+     */
+    DiptraceTokenType lex() {
+        
+        if (!fHasInput) {
+            return null;
+        }
+        
+        fTokenPrecededWithNewline = false;
+        
+        while (fPos == fLineEnd) {
+            
+            // End of file?
+            if (fNextLineStart >= fEnd) {
+                return null;
+            }
+            
+            loadLine(fNextLineStart);
+            fLineNo++;
+            
+            fTokenPrecededWithNewline = true;
+        }
+        
+        char c = fText.charAt(fPos);
+        
+        if (c == '(') {
+            fTokenStart = fPos;
+            fTokenEnd = fPos;
+            fPos++;
+            fLastTokenWasLeftParentheses = true;
+            return DiptraceTokenType.LEFT_PARENTHESES;
+        } else if (c == ')') {
+            fTokenStart = fPos;
+            fTokenEnd = fPos;
+            fPos++;
+            return DiptraceTokenType.RIGHT_PARENTHESES;
+        } else if (c == '"') {
+            int pos = fPos + 1;
+            while ((pos < fLineEnd) && (fText.charAt(pos) != '"')) {
+                pos++;
+            }
+            
+            if (pos == fLineEnd) {
+                throw new RuntimeException(
+                    String.format(
+                        "Invalid string token. No \" at end of string."
+                        + "LineNo: %d, %s",
+                    fLineNo,
+                    fText.substring(fPos, fLineEnd)));
+            }
+            
+            fTokenStart = fPos + 1;
+            fTokenEnd = pos;
+            
+            fPos = pos + 1;
+            while ((fPos < fLineEnd) && (fText.charAt(fPos) == ' ')) {
+                fPos++;
+            }
+            
+            return DiptraceTokenType.STRING;
+        } else {
+            int start = fPos;
+            int end = start;
+            while ((end < fLineEnd) && (fText.charAt(end) != ' ')) {
+                end++;
+            }
+            
+            if (end < fLineEnd) {
+                // The token is followed by a space. Skip the space.
+                fPos = end + 1;
+            } else if (fText.charAt(fLineEnd - 1) == ')') {
+                // The token is the last on the line and is followed by a
+                // right parentheses. Keep the parentheses for the next token.
+                end = fLineEnd - 1;
+                fPos = end;
+            } else {
+                fPos = fLineEnd;
+            }
+            
+            fTokenStart = start;
+            fTokenEnd = end;
+            
+            if (fLastTokenWasLeftParentheses) {
+                fLastTokenWasLeftParentheses = false;
+                return DiptraceTokenType.IDENTIFIER;
             }
+            
+            // IDENTIFIER, NON_QUOTED_STRING, INTEGER, DOUBLE or PERCENT
+            return fWordScanner.scan(fText, start, end);
         }
     }
-    //CHECKSTYLE.ON: MethodLength - Difficult to split method
+    
+    /**
+     * Get the text that the tokenizer reads from.
+     * @return the text
+     */
+    DiptraceText getText() {
+        return fText;
+    }
+    
+    /**
+     * Get the start of the value of the last token read by lex().
+     * @return the position in the text
+     */
+    int getTokenStart() {
+        return fTokenStart;
+    }
+    
+    /**
+     * Get the end of the value of the last token read by lex().
+     * @return the position in the text after the value
+     */
+    int getTokenEnd() {
+        return fTokenEnd;
+    }
+    
+    /**
+     * Get whenether the last token read by lex() was the first token on a
+     * line.
+     * @return true if the token was preceded with a new line
+     */
+    boolean getTokenPrecededWithNewline() {
+        return fTokenPrecededWithNewline;
+    }
+    
+    /**
+     * Get the integer value of the last token read by lex().
+     * @return the value
+     */
+    int getIntValue() {
+        return fWordScanner.getIntValue();
+    }
+    
+    /**
+     * Get the double value of the last token read by lex().
+     * @return the value
+     */
+    double getDoubleValue() {
+        return fWordScanner.getDoubleValue();
+    }
+    
+    /**
+     * Get the line number of the last token read by lex().
+     * @return the line number
+     */
+    int getLineNo() {
+        return fLineNo;
+    }
     
 }
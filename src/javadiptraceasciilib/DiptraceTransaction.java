@@ -0,0 +1,256 @@
+package javadiptraceasciilib;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A group of changes of a project that are kept or undone together. A
+ * transaction is started by DiptraceProject.beginTransaction() and ended
+ * by commit() or rollback(). It's meant for programs that make many
+ * changes at a time:
+ * <PRE>
+ * try (DiptraceTransaction transaction = project.beginTransaction()) {
+ *     component.moveAbsoluteOnPCB(x, y);
+ *     component.duplicate("R100");
+ *     transaction.commit();
+ * }
+ * </PRE>
+ * While the transaction is open, the work that is otherwise done for each
+ * change is done once when the transaction ends. Only the changed item is
+ * marked as changed, and the items above it are marked once by commit(),
+ * however many items below them are changed. The components that are
+ * moved are updated once in the spatial index by commit(), if nothing
+ * else is changed. Until then, the content hashes, the connectivity and
+ * the spatial index may not show the changes, and the files can't be
+ * written.
+ * <P>
+ * Each change is recorded in a journal with the old value, so rollback()
+ * undoes the changes without reading the files again. If the project keeps
+ * its changes for undo and redo, the changes of the transaction are added
+ * to them by commit(), and rollback() leaves them as they were.
+ */
+public final class DiptraceTransaction implements AutoCloseable {
+    
+    /**
+     * The project.
+     */
+    private final DiptraceProject fProject;
+    
+    /**
+     * The changes that are made in the transaction.
+     */
+    private final DiptraceJournal fJournal;
+    
+    /**
+     * The items that are changed in the transaction.
+     */
+    private final Set<DiptraceItem> fChangedItems
+        = Collections.newSetFromMap(new IdentityHashMap<>());
+    
+    /**
+     * The components on the pcb that are moved in the transaction.
+     */
+    private final Set<DiptraceItem> fMovedComponents
+        = Collections.newSetFromMap(new IdentityHashMap<>());
+    
+    /**
+     * The spatial index of the pcb if it was up to date when the
+     * transaction started, or null.
+     */
+    private final DiptraceSpatialIndex fSpatialIndex;
+    
+    /**
+     * The last used component number when the transaction started.
+     */
+    private final int fLastComponentNumber;
+    
+    /**
+     * The last used component hidden identifier when the transaction
+     * started.
+     */
+    private final int fLastComponentHiddenIdentifier;
+    
+    /**
+     * The last used net number when the transaction started.
+     */
+    private final int fLastNetNumber;
+    
+    /**
+     * True until the transaction is committed or rolled back.
+     */
+    private boolean fOpen = true;
+    
+    /**
+     * Initializes a DiptraceTransaction object.
+     * @param project the project
+     * @param spatialIndex the spatial index of the pcb if it's up to date,
+     * or null
+     * @param lastComponentNumber the last used component number
+     * @param lastComponentHiddenIdentifier the last used component hidden
+     * identifier
+     * @param lastNetNumber the last used net number
+     */
+    DiptraceTransaction(
+        final DiptraceProject project,
+        final DiptraceSpatialIndex spatialIndex,
+        final int lastComponentNumber,
+        final int lastComponentHiddenIdentifier,
+        final int lastNetNumber) {
+        
+        this.fProject = project;
+        this.fJournal = new DiptraceJournal(Integer.MAX_VALUE);
+        this.fSpatialIndex = spatialIndex;
+        this.fLastComponentNumber = lastComponentNumber;
+        this.fLastComponentHiddenIdentifier = lastComponentHiddenIdentifier;
+        this.fLastNetNumber = lastNetNumber;
+    }
+    
+    /**
+     * Get the journal that the changes are recorded in.
+     * @return the journal
+     */
+    DiptraceJournal getJournal() {
+        return fJournal;
+    }
+    
+    /**
+     * Add an item that is changed in the transaction.
+     * @param item the item
+     */
+    void addChangedItem(final DiptraceItem item) {
+        fChangedItems.add(item);
+    }
+    
+    /**
+     * Add a component that is moved in the transaction. The component is
+     * updated in the spatial index when the transaction is committed.
+     * @param spatialIndex the spatial index that was up to date before the
+     * component was moved, or null
+     * @param component the Component item on the pcb
+     */
+    void addMovedComponent(
+        final DiptraceSpatialIndex spatialIndex,
+        final DiptraceItem component) {
+        
+        if ((spatialIndex != null) && (spatialIndex == fSpatialIndex)) {
+            fMovedComponents.add(component);
+        }
+    }
+    
+    /**
+     * Get the number of changes that are made in the transaction.
+     * @return the number of changes
+     */
+    public int getNumChanges() {
+        return fJournal.size();
+    }
+    
+    /**
+     * Get whenether the transaction is open.
+     * @return true until the transaction is committed or rolled back
+     */
+    public boolean isOpen() {
+        return fOpen;
+    }
+    
+    /**
+     * Keep the changes and end the transaction.
+     */
+    public void commit() {
+        end();
+        
+        // The spatial index is only updated if nothing else is changed.
+        boolean onlyMoved = (fSpatialIndex != null);
+        for (DiptraceItem item : fChangedItems) {
+            if (!onlyMoved || !isInMovedComponent(item)) {
+                onlyMoved = false;
+                break;
+            }
+        }
+        
+        DiptraceItem.markParentsChanged(fChangedItems);
+        
+        DiptraceJournal undoJournal = fProject.getUndoJournal();
+        if (undoJournal != null) {
+            undoJournal.append(fJournal);
+        }
+        
+        if (onlyMoved) {
+            for (DiptraceItem component : fMovedComponents) {
+                fProject.updateSpatialIndex(fSpatialIndex, component);
+            }
+        }
+    }
+    
+    /**
+     * Undo the changes and end the transaction.
+     */
+    public void rollback() {
+        checkOpen();
+        
+        // The changes that undo the changes are made in the transaction,
+        // so they are not recorded and are not kept for undo and redo.
+        boolean changed = fJournal.size() > 0;
+        fJournal.undoAll();
+        end();
+        
+        DiptraceItem.markParentsChanged(fChangedItems);
+        fProject.restoreLastNumbers(fLastComponentNumber,
+            fLastComponentHiddenIdentifier, fLastNetNumber);
+        if (changed) {
+            fProject.rebuildMaps();
+        }
+        
+        // The moved components were never updated in the spatial index,
+        // so it's up to date again.
+        fProject.validateSpatialIndex(fSpatialIndex);
+    }
+    
+    /**
+     * Undo the changes and end the transaction, if the transaction is not
+     * ended yet.
+     */
+    @Override
+    public void close() {
+        if (fOpen) {
+            rollback();
+        }
+    }
+    
+    /**
+     * End the transaction.
+     */
+    private void end() {
+        checkOpen();
+        fOpen = false;
+        fProject.endTransaction(this);
+    }
+    
+    /**
+     * Check that the transaction is open.
+     */
+    private void checkOpen() {
+        if (!fOpen) {
+            throw new IllegalStateException("The transaction is ended");
+        }
+    }
+    
+    /**
+     * Get whenether an item is one of the moved components or is below
+     * one of them.
+     * @param item the item
+     * @return true if the item is in a moved component
+     */
+    private boolean isInMovedComponent(final DiptraceItem item) {
+        for (DiptraceItem parent = item; parent != null;
+            parent = parent.getParent()) {
+            
+            if (fMovedComponents.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+}
@@ -0,0 +1,34 @@
+package javadiptraceasciilib;
+
+/**
+ * The type of the value of an attribute reported by a DiptraceReader.
+ */
+public enum DiptraceValueType {
+    
+    /**
+     * A string in double quotes. The value is the string without the quotes.
+     */
+    STRING,
+    
+    /**
+     * A string that is not in double quotes.
+     */
+    NON_QUOTED_STRING,
+    
+    /**
+     * An integer.
+     */
+    INTEGER,
+    
+    /**
+     * A double.
+     */
+    DOUBLE,
+    
+    /**
+     * A percent value, like "50%". The numeric value is the value without
+     * the percent sign.
+     */
+    PERCENT
+    
+}
@@ -0,0 +1,448 @@
+package javadiptraceasciilib;
+
+/**
+ * Classifies a word that is not in double quotes and computes its numeric
+ * value in the same pass.
+ * <P>
+ * The scanner accepts the same words as Integer.parseInt() and
+ * Double.parseDouble() do, but it doesn't throw and catch a
+ * NumberFormatException for each word that isn't a number. Only unusual
+ * words, like words with non ASCII characters or hexadecimal floating point
+ * numbers, are handed over to the methods of the Java library.
+ */
+final class DiptraceWordScanner {
+    
+    /**
+     * The radix of decimal numbers.
+     */
+    private static final int RADIX = 10;
+    
+    /**
+     * The maximum number of significant digits that fits in a long.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+    
+    /**
+     * The largest mantissa that a double can hold exactly.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    
+    /**
+     * An exponent larger than this is not parsed by the scanner. This
+     * prevents the exponent from overflowing.
+     */
+    private static final int MAX_EXPONENT = 100000;
+    
+    /**
+     * The absolute value of the largest integer that fits in an int, if
+     * the integer is negative.
+     */
+    private static final long MAX_NEGATIVE_INT = 1L << 31;
+    
+    /**
+     * The powers of ten that a double holds exactly.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22,
+    };
+    
+    /**
+     * The integer value of the last scanned word.
+     */
+    private int fIntValue;
+    
+    /**
+     * The double value of the last scanned word.
+     */
+    private double fDoubleValue;
+    
+    /**
+     * Get the integer value of the last word, if the word is an INTEGER.
+     * @return the integer value
+     */
+    int getIntValue() {
+        return fIntValue;
+    }
+    
+    /**
+     * Get the double value of the last word, if the word is a DOUBLE or a
+     * PERCENT.
+     * @return the double value
+     */
+    double getDoubleValue() {
+        return fDoubleValue;
+    }
+    
+    /**
+     * Classify a word. The word is a part of a text.
+     * @param buffer the text
+     * @param start the start of the word
+     * @param end the end of the word
+     * @return the type of the word. Either INTEGER, PERCENT, DOUBLE,
+     * IDENTIFIER or NON_QUOTED_STRING.
+     */
+    DiptraceTokenType scan(
+        final DiptraceText buffer,
+        final int start,
+        final int end) {
+        
+        if (start == end) {
+            return DiptraceTokenType.NON_QUOTED_STRING;
+        }
+        
+        boolean isLetterOrDigit = true;
+        for (int i = start; i < end; i++) {
+            char c = buffer.charAt(i);
+            if ((c <= ' ') || (c >= DiptraceText.FIRST_NON_ASCII_CHAR)) {
+                return scanSlow(buffer.substring(start, end));
+            }
+            if (!isLetter(c) && !isDigit(c)) {
+                isLetterOrDigit = false;
+            }
+        }
+        
+        char first = buffer.charAt(start);
+        
+        // A word that starts with a letter can only be a number if it's
+        // NaN or Infinity.
+        if (!isLetter(first) || (first == 'N') || (first == 'I')) {
+            
+            boolean isPercent = buffer.charAt(end - 1) == '%';
+            int numberEnd = end;
+            if (isPercent) {
+                numberEnd--;
+            }
+            
+            DiptraceTokenType type = scanNumber(buffer, start, numberEnd);
+            
+            if (type != null) {
+                if (isPercent) {
+                    return DiptraceTokenType.PERCENT;
+                }
+                return type;
+            }
+        }
+        
+        if (isLetterOrDigit && isLetter(first)) {
+            return DiptraceTokenType.IDENTIFIER;
+        }
+        
+        return DiptraceTokenType.NON_QUOTED_STRING;
+    }
+    
+    /**
+     * Scan a number on the format that Integer.parseInt() and
+     * Double.parseDouble() accepts. The characters must be ASCII characters
+     * and must not be white space.
+     * @param buffer the text
+     * @param start the start of the number
+     * @param end the end of the number
+     * @return INTEGER or DOUBLE, or null if the word is not a number
+     */
+    //CHECKSTYLE.OFF: MethodLength - Difficult to split method
+    private DiptraceTokenType scanNumber(
+        final DiptraceText buffer,
+        final int start,
+        final int end) {
+        
+        int pos = start;
+        boolean negative = false;
+        
+        if ((pos < end) && isSign(buffer.charAt(pos))) {
+            negative = buffer.charAt(pos) == '-';
+            pos++;
+        }
+        
+        if (pos == end) {
+            return null;
+        }
+        
+        if (buffer.charAt(pos) == 'N') {
+            if (matches(buffer, pos, end, "NaN")) {
+                fDoubleValue = Double.NaN;
+                return DiptraceTokenType.DOUBLE;
+            }
+            return null;
+        }
+        
+        if (buffer.charAt(pos) == 'I') {
+            if (matches(buffer, pos, end, "Infinity")) {
+                if (negative) {
+                    fDoubleValue = Double.NEGATIVE_INFINITY;
+                } else {
+                    fDoubleValue = Double.POSITIVE_INFINITY;
+                }
+                return DiptraceTokenType.DOUBLE;
+            }
+            return null;
+        }
+        
+        if ((buffer.charAt(pos) == '0')
+            && (pos + 1 < end)
+            && ((buffer.charAt(pos + 1) == 'x')
+                || (buffer.charAt(pos + 1) == 'X'))) {
+            
+            // Hexadecimal floating point numbers are rare. Let the Java
+            // library handle them.
+            return scanSlowDouble(buffer.substring(start, end));
+        }
+        
+        long mantissa = 0;
+        int numSignificantDigits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean truncated = false;
+        
+        while ((pos < end) && isDigit(buffer.charAt(pos))) {
+            int digit = buffer.charAt(pos) - '0';
+            anyDigit = true;
+            if (numSignificantDigits < MAX_LONG_DIGITS) {
+                if ((mantissa != 0) || (digit != 0)) {
+                    mantissa = mantissa * RADIX + digit;
+                    numSignificantDigits++;
+                }
+            } else {
+                truncated = true;
+                exponent++;
+            }
+            pos++;
+        }
+        
+        if ((pos == end) && anyDigit && !truncated) {
+            // The word has only digits. Is it an integer?
+            if ((negative && (mantissa <= MAX_NEGATIVE_INT))
+                || (!negative && (mantissa <= Integer.MAX_VALUE))) {
+                
+                // The double value is used if the integer is a percent.
+                if (negative) {
+                    fIntValue = (int) -mantissa;
+                    fDoubleValue = -(double) mantissa;
+                } else {
+                    fIntValue = (int) mantissa;
+                    fDoubleValue = mantissa;
+                }
+                return DiptraceTokenType.INTEGER;
+            }
+        }
+        
+        if ((pos < end) && (buffer.charAt(pos) == '.')) {
+            pos++;
+            while ((pos < end) && isDigit(buffer.charAt(pos))) {
+                int digit = buffer.charAt(pos) - '0';
+                anyDigit = true;
+                if (numSignificantDigits < MAX_LONG_DIGITS) {
+                    mantissa = mantissa * RADIX + digit;
+                    if (mantissa != 0) {
+                        numSignificantDigits++;
+                    }
+                    exponent--;
+                } else {
+                    truncated = true;
+                }
+                pos++;
+            }
+        }
+        
+        if (!anyDigit) {
+            return null;
+        }
+        
+        if ((pos < end)
+            && ((buffer.charAt(pos) == 'e') || (buffer.charAt(pos) == 'E'))) {
+            
+            pos++;
+            boolean negativeExponent = false;
+            if ((pos < end) && isSign(buffer.charAt(pos))) {
+                
+                negativeExponent = buffer.charAt(pos) == '-';
+                pos++;
+            }
+            
+            if ((pos == end) || !isDigit(buffer.charAt(pos))) {
+                return null;
+            }
+            
+            int exponentValue = 0;
+            while ((pos < end) && isDigit(buffer.charAt(pos))) {
+                if (exponentValue < MAX_EXPONENT) {
+                    exponentValue
+                        = exponentValue * RADIX + (buffer.charAt(pos) - '0');
+                }
+                pos++;
+            }
+            
+            if (negativeExponent) {
+                exponent -= exponentValue;
+            } else {
+                exponent += exponentValue;
+            }
+        }
+        
+        // Double.parseDouble() accepts a type suffix.
+        if ((pos < end) && isTypeSuffix(buffer.charAt(pos))) {
+            pos++;
+        }
+        
+        if (pos != end) {
+            return null;
+        }
+        
+        if (!truncated
+            && (mantissa < MAX_EXACT_MANTISSA)
+            && (exponent > -POWERS_OF_TEN.length)
+            && (exponent < POWERS_OF_TEN.length)) {
+            
+            // Both the mantissa and the power of ten are exact doubles, so
+            // a single multiplication or division is correctly rounded.
+            double value = mantissa;
+            if (exponent < 0) {
+                value /= POWERS_OF_TEN[-exponent];
+            } else {
+                value *= POWERS_OF_TEN[exponent];
+            }
+            
+            if (negative) {
+                fDoubleValue = -value;
+            } else {
+                fDoubleValue = value;
+            }
+        } else {
+            // The word is a valid double, so this doesn't throw.
+            fDoubleValue
+                = Double.parseDouble(buffer.substring(start, end));
+        }
+        
+        return DiptraceTokenType.DOUBLE;
+    }
+    //CHECKSTYLE.ON: MethodLength - Difficult to split method
+    
+    /**
+     * Classify a word by using the methods of the Java library. This is
+     * only done for unusual words.
+     * @param tokenValue the word
+     * @return the type of the word
+     */
+    private DiptraceTokenType scanSlow(final String tokenValue) {
+        
+        try {
+            fIntValue = Integer.parseInt(tokenValue);
+            // If we are here, the fValue is a valid integer
+            return DiptraceTokenType.INTEGER;
+        } catch (NumberFormatException e) {
+            // If we are here, fValue is not an integer so we just
+            // continue to the next statement.
+        }
+        
+        if ((tokenValue.length() > 0)
+            && (tokenValue.charAt(tokenValue.length() - 1) == '%')) {
+            
+            String percentValue
+                = tokenValue.substring(0, tokenValue.length() - 1);
+            
+            if (scanSlowDouble(percentValue) != null) {
+                return DiptraceTokenType.PERCENT;
+            }
+        }
+        
+        if (scanSlowDouble(tokenValue) != null) {
+            return DiptraceTokenType.DOUBLE;
+        }
+        
+        // Check if token value is a identifier
+        boolean isIdentifier =
+            (tokenValue.length() > 0)
+            && (Character.isAlphabetic(tokenValue.charAt(0)));
+        
+        for (int i = 0; i < tokenValue.length(); i++) {
+            if (!Character.isLetterOrDigit(tokenValue.charAt(i))) {
+                isIdentifier = false;
+            }
+        }
+        
+        if (isIdentifier) {
+            return DiptraceTokenType.IDENTIFIER;
+        }
+        
+        return DiptraceTokenType.NON_QUOTED_STRING;
+    }
+    
+    /**
+     * Parse a double by using Double.parseDouble().
+     * @param value the word
+     * @return DOUBLE if the word is a double, null otherwise
+     */
+    private DiptraceTokenType scanSlowDouble(final String value) {
+        try {
+            fDoubleValue = Double.parseDouble(value);
+            // If we are here, the value is a valid double
+            return DiptraceTokenType.DOUBLE;
+        } catch (NumberFormatException e) {
+            // If we are here, the value is not a double.
+            return null;
+        }
+    }
+    
+    /**
+     * Check if a part of a text is equal to a string.
+     * @param buffer the text
+     * @param start the start of the part
+     * @param end the end of the part
+     * @param str the string
+     * @return true if the part is equal to the string
+     */
+    private static boolean matches(
+        final DiptraceText buffer,
+        final int start,
+        final int end,
+        final String str) {
+        
+        if (end - start != str.length()) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (buffer.charAt(start + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Is the character a plus or minus sign?
+     * @param c the character
+     * @return true if the character is a sign
+     */
+    private static boolean isSign(final char c) {
+        return (c == '+') || (c == '-');
+    }
+    
+    /**
+     * Is the character a type suffix that Double.parseDouble() accepts?
+     * @param c the character
+     * @return true if the character is d, D, f or F
+     */
+    private static boolean isTypeSuffix(final char c) {
+        return (c == 'd') || (c == 'D') || (c == 'f') || (c == 'F');
+    }
+    
+    /**
+     * Is the character an ASCII digit?
+     * @param c the character
+     * @return true if the character is a digit
+     */
+    private static boolean isDigit(final char c) {
+        return (c >= '0') && (c <= '9');
+    }
+    
+    /**
+     * Is the character an ASCII letter?
+     * @param c the character
+     * @return true if the character is a letter
+     */
+    private static boolean isLetter(final char c) {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+    }
+    
+}
@@ -0,0 +1,60 @@
+package javadiptraceasciilib;
+
+import javadiptraceasciilib.DiptraceStringAttribute.UseQuotes;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the DiptraceAttributeList class.
+ */
+public class DiptraceAttributeListTest {
+    
+    /**
+     * Test that the attributes are written as they were read and that the
+     * views change the list.
+     */
+    @Test
+    public void testAttributes() {
+        final int number = 7;
+        final double value = 1.5;
+        final double percent = 50;
+        final int sizeAfterRemove = 4;
+        
+        DiptraceAttributeList list = new DiptraceAttributeList();
+        list.addString("Top", UseQuotes.NO_QUOTES);
+        list.addString("R1", UseQuotes.DOUBLE_QUOTES);
+        list.addInt("7", number);
+        list.addDouble("1.50", value);
+        list.addPercent("50%", percent);
+        
+        Assert.assertEquals("string", "Top", list.get(0).getFormattedString());
+        Assert.assertEquals("quoted string",
+            "\"R1\"", list.get(1).getFormattedString());
+        Assert.assertEquals("integer", "7", list.get(2).getString());
+        Assert.assertEquals("double text", "1.50", list.get(3).getString());
+        Assert.assertEquals("double", value,
+            ((DiptraceDoubleAttribute) list.get(3)).getDouble(), 0);
+        Assert.assertEquals("percent", "50%", list.get(4).getString());
+        
+        DiptraceAttribute copy = list.get(2).duplicate();
+        ((DiptraceDoubleAttribute) list.get(2)).setInt(number + 1);
+        Assert.assertEquals("changed", "8", list.get(2).getString());
+        Assert.assertEquals("copy not changed", "7", copy.getString());
+        
+        ((DiptraceDoubleAttribute) list.get(3)).setDouble(-value / 3);
+        Assert.assertEquals("three decimals",
+            "-0.500", list.get(3).getString());
+        ((DiptraceDoublePercentAttribute) list.get(4)).setDouble(percent);
+        Assert.assertEquals("percent with three decimals",
+            "50.000%", list.get(4).getString());
+        
+        ((DiptraceStringAttribute) list.get(1)).setString("R2");
+        Assert.assertEquals("changed string",
+            "\"R2\"", list.get(1).getFormattedString());
+        
+        list.remove(0);
+        Assert.assertEquals("size", sizeAfterRemove, list.size());
+        Assert.assertEquals("moved", "R2", list.get(0).getString());
+    }
+    
+}
@@ -0,0 +1,382 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the DiptraceItem class.
+ */
+public class DiptraceItemTest {
+    
+    /**
+     * Parse a document into the pcb root of a project.
+     * @param project the project
+     * @param document the document
+     * @return the root
+     * @throws IOException on any I/O error
+     */
+    private DiptraceItem parse(
+        final DiptraceProject project,
+        final String document)
+        throws IOException {
+        
+        DiptraceItem root = (DiptraceItem) project.getPCBRoot();
+        root.parse(new DiptraceTokenizer(document.toCharArray()));
+        return root;
+    }
+    
+    /**
+     * Write an item to a string.
+     * @param item the item
+     * @return the string
+     * @throws IOException on any I/O error
+     */
+    private String write(final DiptraceItem item) throws IOException {
+        StringWriter writer = new StringWriter();
+        item.write(writer, 0);
+        return writer.toString();
+    }
+    
+    /**
+     * Test that a lazy section is written as it is if it's not touched and
+     * is parsed the first time it's needed.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testLazySection() throws IOException {
+        String nl = System.lineSeparator();
+        String document =
+            "(Board" + nl
+            + "  (CacheLib" + nl
+            + "    (cl_Part \"R\"   1.50" + nl
+            + "    )" + nl
+            + "    (cl_Pins 2)" + nl
+            + "  )" + nl
+            + "  (Units mm)" + nl
+            + ")" + nl;
+        
+        DiptraceProject project = new DiptraceProject();
+        project.setLazySections(Collections.singleton("CacheLib"));
+        DiptraceItem root = parse(project, document);
+        
+        DiptraceItem cacheLib = root.getSubItem("Board").getSubItem("CacheLib");
+        Assert.assertNotNull("sub items not parsed",
+            cacheLib.getLazySubItems());
+        Assert.assertEquals("written as it is", document, write(root));
+        
+        DiptraceItem copy = cacheLib.duplicate(root);
+        Assert.assertNotNull("copy shares the text", copy.getLazySubItems());
+        
+        Assert.assertNotNull("parsed on access",
+            cacheLib.getSubItem("cl_Pins"));
+        Assert.assertNull("sub items parsed", cacheLib.getLazySubItems());
+        
+        final int numChildren = 3;
+        Assert.assertEquals("num children",
+            numChildren, cacheLib.numChildren());
+        Assert.assertEquals("num children of copy",
+            numChildren, copy.numChildren());
+        
+        DiptraceProject eagerProject = new DiptraceProject();
+        Assert.assertEquals("same as eager parsing",
+            write(parse(eagerProject, document)), write(root));
+    }
+    
+    /**
+     * Test that only the chosen sections are loaded and that the other
+     * sections are skipped and parsed the first time they are needed.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testLoadedSections() throws IOException {
+        String nl = System.lineSeparator();
+        String document =
+            "(Source \"DipTrace-PCB\")" + nl
+            + "(Board" + nl
+            + "  (Shapes" + nl
+            + "    (Shape \"(\" 1 a)" + nl
+            + "    (Points" + nl
+            + "      (pt 1 2)" + nl
+            + "    )" + nl
+            + "  )" + nl
+            + "  (Components" + nl
+            + "    (Component 0" + nl
+            + "    )" + nl
+            + "  )" + nl
+            + "  (Enabled \"Y\")" + nl
+            + ")" + nl;
+        
+        DiptraceProject project = new DiptraceProject();
+        project.setLoadedSections(Collections.singleton("Points"));
+        DiptraceItem root = parse(project, document);
+        DiptraceItem board = root.getSubItem("Board");
+        
+        Assert.assertNotNull("Shapes is skipped",
+            board.getSubItem("Shapes").getLazySubItems());
+        Assert.assertNull("Components is always loaded",
+            board.getSubItem("Components").getLazySubItems());
+        Assert.assertEquals("written as it is", document, write(root));
+        
+        Assert.assertEquals("parsed on access", "Points",
+            board.getSubItem("Shapes").getChildren().get(1).getIdentifier());
+        Assert.assertEquals("written after access", document, write(root));
+    }
+    
+    /**
+     * Test that all the sub items with the same identifier are kept and
+     * found, both with few sub items and with many.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testSubItems() throws IOException {
+        final int numNets = 20;
+        StringBuilder document = new StringBuilder("(Nets\n");
+        for (int i = 0; i < numNets; i++) {
+            document.append("  (Net ").append(i).append(")\n");
+        }
+        document.append("  (Number 1)\n)\n");
+        
+        DiptraceProject project = new DiptraceProject();
+        DiptraceItem nets = parse(project, document.toString())
+            .getSubItem("Nets");
+        
+        Assert.assertEquals("all nets kept",
+            numNets, nets.getSubItems("Net").size());
+        Assert.assertSame("first net",
+            nets.getChildren().get(0), nets.getSubItem("Net"));
+        Assert.assertNotNull("found by index", nets.getSubItem("Number"));
+        Assert.assertNull("not found", nets.getSubItem("Pins"));
+        
+        DiptraceItem pins = new DiptraceGenericItem(nets, "Pins");
+        nets.getChildren().add(pins);
+        Assert.assertSame("added through the list",
+            pins, nets.getSubItem("Pins"));
+        nets.getChildren().remove(0);
+        Assert.assertSame("first net after remove",
+            nets.getChildren().get(0), nets.getSubItem("Net"));
+        Assert.assertEquals("nets after remove",
+            numNets - 1, nets.getSubItems("Net").size());
+    }
+    
+    /**
+     * Test that a duplicate shares the sub items of the original until one
+     * of them is changed, and that a change to one of them is not seen by
+     * the other.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testDuplicate() throws IOException {
+        String part = "(Part\n"
+            + "  (Pins\n"
+            + "    (Pin 1 2)\n"
+            + "    (Pin 3 4)\n"
+            + "  )\n"
+            + "  (Number 7)\n"
+            + ")\n";
+        String changedPart = part.replace("(Pin 1 2)", "(Pin 9 2)");
+        
+        DiptraceProject project = new DiptraceProject();
+        DiptraceItem root = parse(project, part);
+        DiptraceItem original = root.getSubItem("Part");
+        original.getNumSubItems();
+        
+        DiptraceItem copy = original.duplicate(root);
+        root.addSubItem(copy);
+        Assert.assertNotNull("sub items shared", copy.getLazySubItems());
+        Assert.assertEquals("copy written", part, write(copy));
+        
+        DiptraceGenericItem pin = (DiptraceGenericItem)
+            original.getSubItem("Pins").getChildren().get(0);
+        ((DiptraceDoubleAttribute) pin.getAttributes().get(0)).setInt(9);
+        Assert.assertNull("sub items copied", copy.getLazySubItems());
+        Assert.assertEquals("original changed", changedPart, write(original));
+        Assert.assertEquals("copy not changed", part, write(copy));
+        
+        DiptraceItem secondCopy = copy.duplicate(root);
+        copy.getSubItem("Pins").getChildren().remove(1);
+        Assert.assertEquals("second copy not changed",
+            part, write(secondCopy));
+        Assert.assertEquals("original not changed",
+            changedPart, write(original));
+    }
+    
+    /**
+     * Test that identical items have the same content hash, and that the
+     * hash of an item and its parents is computed again when the item is
+     * changed.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testContentHash() throws IOException {
+        final int changedPin = 9;
+        String document = "(cl_Components\n"
+            + "  (cl_Component \"R\"\n"
+            + "    (cl_Pin 1 2)\n"
+            + "  )\n"
+            + "  (cl_Component \"C\"\n"
+            + "    (cl_Pin 1 2)\n"
+            + "  )\n"
+            + "  (cl_Component \"R\"\n"
+            + "    (cl_Pin 1 2)\n"
+            + "  )\n"
+            + ")\n";
+        
+        DiptraceItem root = parse(new DiptraceProject(), document);
+        DiptraceItem components = root.getSubItem("cl_Components");
+        DiptraceItem first = components.getChildren().get(0);
+        DiptraceItem second = components.getChildren().get(1);
+        DiptraceItem third = components.getChildren().get(2);
+        Assert.assertTrue("same content", first.contentEquals(third));
+        Assert.assertFalse("other content", first.contentEquals(second));
+        Assert.assertEquals("identical components", 1,
+            components.findIdenticalSubItems().size());
+        Assert.assertEquals("same content as a copy",
+            first.getContentHash(),
+            first.duplicate(components).getContentHash());
+        
+        long rootHash = root.getContentHash();
+        DiptraceGenericItem pin
+            = (DiptraceGenericItem) third.getChildren().get(0);
+        ((DiptraceDoubleAttribute) pin.getAttributes().get(0))
+            .setInt(changedPin);
+        Assert.assertFalse("changed", first.contentEquals(third));
+        Assert.assertNotEquals("root changed", rootHash, root.getContentHash());
+        Assert.assertTrue("no identical components",
+            components.findIdenticalSubItems().isEmpty());
+        
+        ((DiptraceDoubleAttribute) pin.getAttributes().get(0)).setInt(1);
+        Assert.assertTrue("changed back", first.contentEquals(third));
+        Assert.assertEquals("root changed back",
+            rootHash, root.getContentHash());
+    }
+    
+    /**
+     * Test that a deeply nested document is parsed, counted, changed and
+     * written without recursion, both as a tree of items and as a
+     * DiptraceDocument, in a thread with a small stack.
+     * @throws Throwable on any error
+     */
+    @Test
+    public void testDeepNesting() throws Throwable {
+        final int depth = 100000;
+        final long stackSize = 256 * 1024;
+        
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append("(Level\n");
+        }
+        builder.setLength(builder.length() - 1);
+        for (int i = 0; i < depth; i++) {
+            builder.append(")\n");
+        }
+        String document = builder.toString();
+        
+        // Each level is written on two lines with the indent of the level,
+        // except the innermost level that is written on one line.
+        String nl = System.lineSeparator();
+        long length = 0;
+        for (int i = 0; i < depth - 1; i++) {
+            length += 2 * i + ("(Level" + nl).length();
+            length += 2 * i + (")" + nl).length();
+        }
+        long expectedLength
+            = length + 2 * (depth - 1) + ("(Level)" + nl).length();
+        
+        Throwable[] error = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                DiptraceItem root = parse(new DiptraceProject(), document);
+                Assert.assertEquals("number of items",
+                    depth + 1, root.numChildren());
+                DiptraceItem copy = root.getSubItem("Level").duplicate(root);
+                root.addSubItem(copy);
+                Assert.assertEquals("written with the copy",
+                    2 * expectedLength, countWritten(root));
+                
+                DiptraceDocument parsed = DiptraceDocument.parse(
+                    new DiptraceTokenizer(document.toCharArray()));
+                Assert.assertEquals("number of nodes",
+                    depth + 1, parsed.size());
+                CountingWriter counter = new CountingWriter();
+                parsed.getSubItems(DiptraceDocument.ROOT).write(counter, 0);
+                Assert.assertEquals("document written",
+                    expectedLength, counter.fLength);
+            } catch (Throwable e) {
+                error[0] = e;
+            }
+        }, "deep", stackSize);
+        thread.start();
+        thread.join();
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+    
+    /**
+     * Count the characters that are written for an item.
+     * @param item the item
+     * @return the number of characters
+     * @throws IOException on any I/O error
+     */
+    private long countWritten(final DiptraceItem item) throws IOException {
+        CountingWriter counter = new CountingWriter();
+        item.write(counter, 0);
+        return counter.fLength;
+    }
+    
+    /**
+     * A writer that only counts the characters, since a deeply nested
+     * document is too long to keep when it's written with its indents.
+     */
+    private static final class CountingWriter extends Writer {
+        
+        /**
+         * The number of characters that are written.
+         */
+        private long fLength;
+        
+        /**
+         * Count the characters of a string.
+         * @param csq the string
+         * @return this writer
+         */
+        @Override
+        public Writer append(final CharSequence csq) {
+            fLength += csq.length();
+            return this;
+        }
+        
+        /**
+         * Count the characters of a part of an array.
+         * @param cbuf the array
+         * @param off the position of the first character
+         * @param len the number of characters
+         */
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            fLength += len;
+        }
+        
+        /**
+         * Flush nothing.
+         */
+        @Override
+        public void flush() {
+            // Do nothing.
+        }
+        
+        /**
+         * Close nothing.
+         */
+        @Override
+        public void close() {
+            // Do nothing.
+        }
+        
+    }
+    
+}
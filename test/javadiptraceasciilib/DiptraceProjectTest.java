@@ -0,0 +1,583 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the DiptraceProject class.
+ */
+public class DiptraceProjectTest {
+    
+    /**
+     * The folder of the example files.
+     */
+    private static final String EXAMPLES = "src/examples/javadiptraceasciilib/";
+    
+    /**
+     * The schematics example file.
+     */
+    private static final String SCHEMATICS
+        = EXAMPLES + "flashlight_schematics.asc";
+    
+    /**
+     * The pcb example file.
+     */
+    private static final String PCB = EXAMPLES + "flashlight_pcb.asc";
+    
+    /**
+     * Write the schematics and the pcb of a project to a string.
+     * @param project the project
+     * @return the string
+     * @throws IOException on any I/O error
+     */
+    private String write(final DiptraceProject project) throws IOException {
+        StringWriter writer = new StringWriter();
+        project.writeSchematics(writer);
+        project.writePCB(writer);
+        return writer.toString();
+    }
+    
+    /**
+     * Test that parsing the sections in parallel gives the same result as
+     * parsing them in one thread.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testParsingPool() throws IOException {
+        DiptraceProject project = new DiptraceProject();
+        project.readSchematicsAndPCB(SCHEMATICS, PCB);
+        
+        DiptraceProject parallelProject = new DiptraceProject();
+        parallelProject.setParsingPool(ForkJoinPool.commonPool());
+        parallelProject.readSchematicsAndPCB(SCHEMATICS, PCB);
+        
+        Assert.assertEquals("same file",
+            write(project), write(parallelProject));
+        Assert.assertEquals("same number of items",
+            ((DiptraceItem) project.getPCBRoot()).numChildren(),
+            ((DiptraceItem) parallelProject.getPCBRoot()).numChildren());
+    }
+    
+    /**
+     * Test that a project that is kept in flat arrays is written the same
+     * way as a project that is parsed into a tree.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testColumnarStore() throws IOException {
+        DiptraceProject project = new DiptraceProject();
+        project.readSchematicsAndPCB(SCHEMATICS, PCB);
+        
+        DiptraceProject columnarProject = new DiptraceProject();
+        columnarProject.setColumnarStore(true);
+        columnarProject.readSchematicsAndPCB(SCHEMATICS, PCB);
+        
+        Assert.assertEquals("same file",
+            write(project), write(columnarProject));
+        Assert.assertEquals("same number of items",
+            ((DiptraceItem) project.getPCBRoot()).numChildren(),
+            ((DiptraceItem) columnarProject.getPCBRoot()).numChildren());
+        Assert.assertEquals("same file after all items are created",
+            write(project), write(columnarProject));
+    }
+    
+    /**
+     * Test that components and nets are found by RefDes and name after they
+     * are duplicated, renamed and deleted.
+     * @throws Exception on any error
+     */
+    @Test
+    public void testIndexes() throws Exception {
+        DiptraceProject project = readProject();
+        
+        DiptraceComponent d1 = project.getComponentByRefDes("D1");
+        DiptraceComponent copy = d1.duplicate("D100");
+        Assert.assertSame("duplicate found", copy.getPCBComponent(),
+            project.getComponentByRefDes("D100").getPCBComponent());
+        
+        copy.rename("D101");
+        Assert.assertEquals("renamed", "D101", copy.getRefDes());
+        Assert.assertSame("found by new RefDes", copy.getPCBComponent(),
+            project.getComponentByRefDes("D101").getPCBComponent());
+        Assert.assertFalse("old RefDes free",
+            project.getDiptraceOperations().isRefDesInUse("D100"));
+        
+        copy.delete();
+        Assert.assertFalse("deleted RefDes free",
+            project.getDiptraceOperations().isRefDesInUse("D101"));
+        Assert.assertTrue("original kept",
+            project.getDiptraceOperations().isRefDesInUse("D1"));
+        
+        DiptraceNet net = project.getNetByName("Vcc").duplicateNet("Vdd");
+        net.rename("Vee");
+        Assert.assertSame("net found by new name", net.getPCBNet(),
+            project.getNetByName("Vee").getPCBNet());
+        net.delete();
+        Assert.assertFalse("deleted name free",
+            project.getDiptraceOperations().isNetNameInUse("Vee"));
+        
+        Assert.assertEquals("same file after delete",
+            write(readProject()), write(project));
+    }
+    
+    /**
+     * Test that the pins of a component are found in both the schematics and
+     * the pcb, and are found again after a pin is changed.
+     * @throws Exception on any error
+     */
+    @Test
+    public void testPins() throws Exception {
+        final int newPinNo = 7;
+        DiptraceProject project = readProject();
+        DiptraceComponent d1 = project.getComponentByRefDes("D1");
+        
+        DiptraceComponentPin pin = d1.getPin(1);
+        Assert.assertEquals("pin found", "Pin",
+            pin.getSchematicsItem().getIdentifier());
+        Assert.assertEquals("pad found", "Pad",
+            pin.getPCBItem().getIdentifier());
+        Assert.assertEquals("pad number", "1",
+            ((DiptraceGenericItem) pin.getPCBItem()).getAttributes().get(1)
+                .getString());
+        
+        ((DiptraceDoubleAttribute)
+            ((DiptraceGenericItem) pin.getSchematicsItem())
+                .getAttributes().get(0)).setInt(newPinNo);
+        Assert.assertSame("changed pin found", pin.getSchematicsItem(),
+            d1.getPin(newPinNo).getSchematicsItem());
+        Assert.assertNull("no pad with the new number",
+            d1.getPin(newPinNo).getPCBItem());
+        
+        // Only the pad is marked as changed in a transaction.
+        DiptraceTransaction transaction = project.beginTransaction();
+        ((DiptraceDoubleAttribute)
+            ((DiptraceGenericItem) pin.getPCBItem())
+                .getAttributes().get(0)).setInt(newPinNo);
+        Assert.assertSame("changed pad found in transaction",
+            pin.getPCBItem(), d1.getPin(newPinNo).getPCBItem());
+        transaction.commit();
+    }
+    
+    /**
+     * Test the connections between the components and the nets of the
+     * example pcb, where GND connects pad 5 of J1 with pad 1 of D1.
+     * @throws Exception on any error
+     */
+    @Test
+    public void testConnectivity() throws Exception {
+        final int gndPad = 5;
+        DiptraceProject project = readProject();
+        DiptraceConnectivity connectivity = project.getConnectivity();
+        
+        int gnd = connectivity.getNet("GND");
+        int j1 = connectivity.getComponent("J1");
+        int d1 = connectivity.getComponent("D1");
+        int j1Gnd = connectivity.getPin(j1, gndPad);
+        int d1Gnd = connectivity.getPin(d1, 1);
+        
+        Assert.assertArrayEquals("pins on GND",
+            new int[] {j1Gnd, d1Gnd}, connectivity.getNetPins(gnd));
+        Assert.assertEquals("net of pin", gnd, connectivity.getPinNet(d1Gnd));
+        Assert.assertTrue("connected", connectivity.isConnected(j1Gnd, d1Gnd));
+        Assert.assertTrue("routed", connectivity.isRouted(j1Gnd, d1Gnd));
+        Assert.assertFalse("not connected",
+            connectivity.isConnected(d1Gnd, connectivity.getPin(d1, 2)));
+        Assert.assertTrue("D1 on GND", contains(
+            connectivity.getComponentNets(d1), gnd));
+        Assert.assertSame("not changed",
+            connectivity, project.getConnectivity());
+        
+        project.getComponentByRefDes("D1").duplicate("D100");
+        Assert.assertNotEquals("found again after a change",
+            DiptraceConnectivity.NONE,
+            project.getConnectivity().getComponent("D100"));
+    }
+    
+    /**
+     * Test that a component is found in the spatial index of the example pcb
+     * before and after it's moved, and that the index is updated instead of
+     * created again when the component is moved.
+     * @throws Exception on any error
+     */
+    @Test
+    public void testSpatialIndex() throws Exception {
+        final double x = 500;
+        final double y = 400;
+        final double margin = 0.01;
+        DiptraceProject project = readProject();
+        DiptraceSpatialIndex index = project.getSpatialIndex();
+        
+        int d1 = findComponent(index, "D1");
+        Assert.assertNotEquals("D1 found", DiptraceSpatialIndex.NONE, d1);
+        int layer = index.getLayer(d1);
+        Assert.assertTrue("D1 in its region", contains(
+            index.queryRegion(layer, index.getMinX(d1), index.getMinY(d1),
+                index.getMaxX(d1), index.getMaxY(d1)), d1));
+        Assert.assertEquals("nearest", d1, index.nearest(layer,
+            (index.getMinX(d1) + index.getMaxX(d1)) / 2,
+            (index.getMinY(d1) + index.getMaxY(d1)) / 2));
+        
+        project.getComponentByRefDes("D1").moveAbsoluteOnPCB(x, y);
+        Assert.assertSame("updated", index, project.getSpatialIndex());
+        Assert.assertArrayEquals("D1 moved", new int[] {d1},
+            index.queryRegion(layer,
+                x - margin, y - margin, x + margin, y + margin));
+        Assert.assertEquals("nearest after move",
+            d1, index.nearest(layer, x + x, y + y));
+        
+        project.getComponentByRefDes("D1").duplicate("D100");
+        Assert.assertNotSame("created again", index, project.getSpatialIndex());
+    }
+    
+    /**
+     * Test the differences between the example project and a copy where a
+     * component is moved, a component is duplicated and a net is renamed.
+     * @throws Exception on any error
+     */
+    @Test
+    public void testDiff() throws Exception {
+        final double x = 500;
+        final double y = 400;
+        final int numSchematicsChanges = 3;
+        DiptraceProject before = readProject();
+        DiptraceProject after = readProject();
+        Assert.assertTrue("no differences",
+            DiptraceDiff.comparePCB(before, after).isEmpty());
+        
+        after.getComponentByRefDes("D1").moveAbsoluteOnPCB(x, y);
+        after.getComponentByRefDes("R1").duplicate("R100");
+        after.getNetByName("Vcc").rename("Vdd");
+        
+        List<String> changes = new ArrayList<>();
+        for (DiptraceChange change : DiptraceDiff.comparePCB(before, after)) {
+            changes.add(change.getType() + " " + change.getPath());
+        }
+        Assert.assertEquals("pcb differences", Arrays.asList(
+            "ADDED Board/Components/Component[R100]",
+            "CHANGED Board/Components/Component[D1]/X",
+            "CHANGED Board/Components/Component[D1]/Y",
+            "REMOVED Board/Nets/Net[Vcc]",
+            "ADDED Board/Nets/Net[Vdd]"), changes);
+        
+        Assert.assertEquals("schematics differences", numSchematicsChanges,
+            DiptraceDiff.compareSchematics(before, after).size());
+    }
+    
+    /**
+     * Test that a spliced write copies the file as it is if nothing is
+     * changed, and only changes the lines of the items that are changed.
+     * @throws Exception on any error
+     */
+    @Test
+    public void testSpliceWrite() throws Exception {
+        final double dx = 1.5;
+        final double dy = 2;
+        final int numChangedLines = 2;
+        Path schematics = Files.createTempFile("schematics", ".asc");
+        Path pcb = Files.createTempFile("pcb", ".asc");
+        try {
+            DiptraceProject project = new DiptraceProject();
+            project.setSpliceWrite(true);
+            project.readMappedSchematicsAndPCB(SCHEMATICS, PCB);
+            project.writeSchematicsAndPCB(
+                schematics.toString(), pcb.toString());
+            Assert.assertArrayEquals("same schematics",
+                Files.readAllBytes(Paths.get(SCHEMATICS)),
+                Files.readAllBytes(schematics));
+            Assert.assertArrayEquals("same pcb",
+                Files.readAllBytes(Paths.get(PCB)),
+                Files.readAllBytes(pcb));
+            
+            project.getComponentByRefDes("D1").moveRelativeOnPCB(dx, dy);
+            project.writeSchematicsAndPCB(
+                schematics.toString(), pcb.toString());
+            List<String> before = Files.readAllLines(Paths.get(PCB));
+            List<String> after = Files.readAllLines(pcb);
+            Assert.assertEquals("same number of lines",
+                before.size(), after.size());
+            int numChanged = 0;
+            for (int i = 0; i < before.size(); i++) {
+                if (!before.get(i).equals(after.get(i))) {
+                    numChanged++;
+                }
+            }
+            Assert.assertEquals("X and Y changed", numChangedLines, numChanged);
+            
+            DiptraceProject written = new DiptraceProject();
+            written.readSchematicsAndPCB(schematics.toString(), pcb.toString());
+            Assert.assertEquals("same items", write(project), write(written));
+        } finally {
+            Files.delete(schematics);
+            Files.delete(pcb);
+        }
+    }
+    
+    /**
+     * Test that a project that is memory mapped with lazy sections can be
+     * written to the files that it's mapped from, also by splicing after
+     * the files have been replaced, and that the files keep their mode.
+     * @throws Exception on any error
+     */
+    @Test
+    public void testWriteMappedFiles() throws Exception {
+        final double dx = 1.5;
+        final double dy = 2;
+        Set<PosixFilePermission> mode
+            = PosixFilePermissions.fromString("rw-r--r--");
+        Path schematics = Files.createTempFile("schematics", ".asc");
+        Path pcb = Files.createTempFile("pcb", ".asc");
+        try {
+            Files.copy(Paths.get(SCHEMATICS), schematics,
+                StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(Paths.get(PCB), pcb,
+                StandardCopyOption.REPLACE_EXISTING);
+            Files.setPosixFilePermissions(schematics, mode);
+            Files.setPosixFilePermissions(pcb, mode);
+            DiptraceProject project = new DiptraceProject();
+            project.setLazySections(Arrays.asList("CacheLib", "Shapes"));
+            project.readMappedSchematicsAndPCB(
+                schematics.toString(), pcb.toString());
+            project.writeSchematicsAndPCB(
+                schematics.toString(), pcb.toString());
+            
+            DiptraceProject written = new DiptraceProject();
+            written.readSchematicsAndPCB(schematics.toString(), pcb.toString());
+            Assert.assertEquals("same items",
+                write(readProject()), write(written));
+            Assert.assertEquals("same mode",
+                mode, Files.getPosixFilePermissions(pcb));
+            Assert.assertNull("mapping not used", ((DiptraceRootItem)
+                project.getPCBRoot()).getSourceText().getPath());
+            
+            project.setSpliceWrite(true);
+            project.getComponentByRefDes("D1").moveRelativeOnPCB(dx, dy);
+            project.writeSchematicsAndPCB(
+                schematics.toString(), pcb.toString());
+            // The lazy sections are written as they are in the files.
+            written = new DiptraceProject();
+            written.setLazySections(Arrays.asList("CacheLib", "Shapes"));
+            written.readSchematicsAndPCB(schematics.toString(), pcb.toString());
+            Assert.assertEquals("same items after splice",
+                write(project), write(written));
+            Assert.assertEquals("same mode after splice",
+                mode, Files.getPosixFilePermissions(schematics));
+        } finally {
+            Files.delete(schematics);
+            Files.delete(pcb);
+        }
+    }
+    
+    /**
+     * Test that a rolled back transaction leaves the project as it was and
+     * that a committed transaction gives the same project as the changes
+     * made without a transaction.
+     * @throws Exception on any error
+     */
+    @Test
+    public void testTransaction() throws Exception {
+        DiptraceProject project = readProject();
+        String before = write(project);
+        DiptraceSpatialIndex index = project.getSpatialIndex();
+        
+        try (DiptraceTransaction transaction = project.beginTransaction()) {
+            edit(project);
+            Assert.assertTrue("changes recorded",
+                transaction.getNumChanges() > 0);
+            Path file = Files.createTempFile("project", ".asc");
+            boolean written = true;
+            try {
+                project.writeSchematicsAndPCB(
+                    file.toString(), file.toString());
+            } catch (IllegalStateException e) {
+                written = false;
+            } finally {
+                Files.delete(file);
+            }
+            Assert.assertFalse("not written in transaction", written);
+        }
+        Assert.assertEquals("same file after rollback",
+            before, write(project));
+        Assert.assertSame("spatial index kept", index,
+            project.getSpatialIndex());
+        Assert.assertTrue("renamed component back",
+            project.getDiptraceOperations().isRefDesInUse("D1"));
+        Assert.assertFalse("new component gone",
+            project.getDiptraceOperations().isRefDesInUse("R101"));
+        
+        DiptraceProject expected = readProject();
+        edit(expected);
+        DiptraceTransaction transaction = project.beginTransaction();
+        edit(project);
+        transaction.commit();
+        Assert.assertEquals("same file after commit",
+            write(expected), write(project));
+        Assert.assertEquals("same hash after commit",
+            ((DiptraceItem) expected.getPCBRoot()).getContentHash(),
+            ((DiptraceItem) project.getPCBRoot()).getContentHash());
+        Assert.assertFalse("transaction ended", transaction.isOpen());
+    }
+    
+    /**
+     * Test that the changes are undone and redone step by step, and that
+     * the oldest steps are forgotten when the journal is full.
+     * @throws Exception on any error
+     */
+    @Test
+    public void testUndoRedo() throws Exception {
+        final int capacity = 100000;
+        final int smallCapacity = 10;
+        final int tinyCapacity = 4;
+        final int numMoves = 5;
+        final double x = 100;
+        final double y = 200;
+        DiptraceProject project = readProject();
+        project.setUndoCapacity(capacity);
+        String before = write(project);
+        Assert.assertFalse("nothing to undo", project.canUndo());
+        
+        edit(project);
+        String edited = write(project);
+        project.checkpoint();
+        project.getComponentByRefDes("D100").moveAbsoluteOnPCB(x, y);
+        String moved = write(project);
+        
+        Assert.assertTrue("undo move", project.undo());
+        Assert.assertEquals("edited after undo", edited, write(project));
+        Assert.assertTrue("undo edit", project.undo());
+        Assert.assertEquals("same file after undo", before, write(project));
+        Assert.assertTrue("renamed component back",
+            project.getDiptraceOperations().isRefDesInUse("D1"));
+        Assert.assertFalse("no more undo", project.undo());
+        
+        Assert.assertTrue("redo edit", project.redo());
+        Assert.assertEquals("edited after redo", edited, write(project));
+        Assert.assertTrue("redo move", project.redo());
+        Assert.assertEquals("moved after redo", moved, write(project));
+        Assert.assertFalse("no more redo", project.canRedo());
+        
+        // A rolled back transaction leaves nothing to undo and keeps redo.
+        project.undo();
+        DiptraceTransaction transaction = project.beginTransaction();
+        project.getComponentByRefDes("D100").moveAbsoluteOnPCB(y, y);
+        transaction.rollback();
+        Assert.assertTrue("redo after rollback", project.canRedo());
+        Assert.assertTrue("undo edit after rollback", project.undo());
+        Assert.assertFalse("rollback not kept", project.canUndo());
+        project.redo();
+        
+        // A new change after undo can't be followed by redo.
+        project.getComponentByRefDes("D100").moveAbsoluteOnPCB(y, x);
+        Assert.assertFalse("redo forgotten", project.canRedo());
+        
+        // Each move is a few changes, so only the last moves fit.
+        project.setUndoCapacity(smallCapacity);
+        DiptraceComponent r1 = project.getComponentByRefDes("R1");
+        for (int i = 0; i < smallCapacity; i++) {
+            project.checkpoint();
+            r1.moveAbsoluteOnPCB(x + i, y);
+        }
+        String last = write(project);
+        int steps = 0;
+        while (project.undo()) {
+            steps++;
+        }
+        Assert.assertTrue("some steps kept",
+            (steps > 0) && (steps < smallCapacity));
+        while (project.redo()) {
+            steps--;
+        }
+        Assert.assertEquals("all steps redone", 0, steps);
+        Assert.assertEquals("same file after redo", last, write(project));
+        
+        // A step that is larger than the journal is forgotten, but the
+        // steps after it can be undone.
+        project.setUndoCapacity(tinyCapacity);
+        for (int i = 0; i < numMoves; i++) {
+            r1.moveAbsoluteOnPCB(x - i, y);
+        }
+        String large = write(project);
+        project.checkpoint();
+        r1.moveAbsoluteOnPCB(x, x);
+        Assert.assertTrue("undo after large step", project.undo());
+        Assert.assertEquals("same file after large step", large,
+            write(project));
+        Assert.assertFalse("large step forgotten", project.canUndo());
+    }
+    
+    /**
+     * Make some changes to a project in the test of transactions.
+     * @param project the project
+     * @throws Exception on any error
+     */
+    private void edit(final DiptraceProject project) throws Exception {
+        final double x = 500;
+        final double y = 400;
+        final int angle = 90;
+        DiptraceComponent d1 = project.getComponentByRefDes("D1");
+        d1.moveAbsoluteOnPCB(x, y);
+        project.getDiptraceOperations().rotateItemRelative(
+            d1.getPCBComponent(), angle);
+        d1.rename("D100");
+        project.getComponentByRefDes("R1").duplicate("R100").delete();
+        project.getComponentByRefDes("R1").duplicate("R101");
+        project.getNetByName("Vcc").duplicateNet("Vdd");
+    }
+    
+    /**
+     * Find the entry of a component in a spatial index.
+     * @param index the spatial index
+     * @param refDes the RefDes of the component
+     * @return the entry or NONE if it's not found
+     */
+    private int findComponent(
+        final DiptraceSpatialIndex index,
+        final String refDes) {
+        
+        for (int entry = 0; entry < index.size(); entry++) {
+            if (refDes.equals(index.getRefDes(entry))) {
+                return entry;
+            }
+        }
+        return DiptraceSpatialIndex.NONE;
+    }
+    
+    /**
+     * Get whenether an array has a value.
+     * @param array the array
+     * @param value the value
+     * @return true if the value is found
+     */
+    private boolean contains(final int[] array, final int value) {
+        for (int element : array) {
+            if (element == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Read the example project.
+     * @return the project
+     * @throws IOException on any I/O error
+     */
+    private DiptraceProject readProject() throws IOException {
+        DiptraceProject project = new DiptraceProject();
+        project.readSchematicsAndPCB(SCHEMATICS, PCB);
+        return project;
+    }
+    
+}
@@ -0,0 +1,114 @@
+package javadiptraceasciilib;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the DiptraceRTree class.
+ */
+public class DiptraceRTreeTest {
+    
+    /**
+     * Test that a bulk loaded tree finds the same rectangles as a search of
+     * all the rectangles, also after rectangles are inserted and removed.
+     */
+    @Test
+    public void testSearch() {
+        final int numRectangles = 1000;
+        final int numQueries = 100;
+        final double size = 1000;
+        final double maxSide = 20;
+        final long seed = 19;
+        Random random = new Random(seed);
+        
+        int[] ids = new int[numRectangles];
+        double[] minX = new double[numRectangles];
+        double[] minY = new double[numRectangles];
+        double[] maxX = new double[numRectangles];
+        double[] maxY = new double[numRectangles];
+        for (int i = 0; i < numRectangles; i++) {
+            ids[i] = i;
+            minX[i] = random.nextDouble() * size;
+            minY[i] = random.nextDouble() * size;
+            maxX[i] = minX[i] + random.nextDouble() * maxSide;
+            maxY[i] = minY[i] + random.nextDouble() * maxSide;
+        }
+        
+        // Load the first half and insert the rest
+        int half = numRectangles / 2;
+        DiptraceRTree tree
+            = DiptraceRTree.bulkLoad(ids, minX, minY, maxX, maxY, half);
+        for (int i = half; i < numRectangles; i++) {
+            tree.insert(i, minX[i], minY[i], maxX[i], maxY[i]);
+        }
+        
+        // Remove every other rectangle of the first half
+        boolean[] removed = new boolean[numRectangles];
+        for (int i = 0; i < half; i += 2) {
+            Assert.assertTrue("removed",
+                tree.remove(i, minX[i], minY[i], maxX[i], maxY[i]));
+            removed[i] = true;
+        }
+        Assert.assertFalse("not found",
+            tree.remove(0, minX[0], minY[0], maxX[0], maxY[0]));
+        Assert.assertEquals("size", numRectangles - half / 2, tree.size());
+        
+        for (int query = 0; query < numQueries; query++) {
+            double x = random.nextDouble() * size;
+            double y = random.nextDouble() * size;
+            double side = random.nextDouble() * size / 2;
+            
+            DiptraceIntList found = new DiptraceIntList();
+            tree.search(x, y, x + side, y + side, found);
+            int[] actual = found.toArray();
+            Arrays.sort(actual);
+            
+            DiptraceIntList expected = new DiptraceIntList();
+            double nearestDistance = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < numRectangles; i++) {
+                if (removed[i]) {
+                    continue;
+                }
+                if ((minX[i] <= x + side) && (x <= maxX[i])
+                    && (minY[i] <= y + side) && (y <= maxY[i])) {
+                    
+                    expected.add(i);
+                }
+                nearestDistance = Math.min(nearestDistance,
+                    distance(minX[i], minY[i], maxX[i], maxY[i], x, y));
+            }
+            
+            Assert.assertArrayEquals("region", expected.toArray(), actual);
+            int nearest = tree.nearest(x, y, null);
+            Assert.assertEquals("nearest", nearestDistance,
+                distance(minX[nearest], minY[nearest],
+                    maxX[nearest], maxY[nearest], x, y), 0);
+        }
+    }
+    
+    /**
+     * Get the distance from a point to a rectangle.
+     * @param minX the smallest x of the rectangle
+     * @param minY the smallest y of the rectangle
+     * @param maxX the largest x of the rectangle
+     * @param maxY the largest y of the rectangle
+     * @param x the x position of the point
+     * @param y the y position of the point
+     * @return the distance
+     */
+    private static double distance(
+        final double minX,
+        final double minY,
+        final double maxX,
+        final double maxY,
+        final double x,
+        final double y) {
+        
+        return Math.hypot(
+            Math.max(0, Math.max(minX - x, x - maxX)),
+            Math.max(0, Math.max(minY - y, y - maxY)));
+    }
+    
+}
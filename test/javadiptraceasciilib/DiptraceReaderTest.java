@@ -0,0 +1,185 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the DiptraceReader class.
+ */
+public class DiptraceReaderTest {
+    
+    /**
+     * A small document.
+     */
+    private static final String DOCUMENT =
+        "(Source \"DipTrace-Schematic\")\n"
+        + "(Components\n"
+        + "  (Component \"Cap\" \"C1\" 50%\n"
+        + "    (Number 3)\n"
+        + "    (Pins\n"
+        + "      (Pin 0\n"
+        + "        (Number 7)\n"
+        + "      )\n"
+        + "    )\n"
+        + "    (X -2.5)\n"
+        + "  )\n"
+        + ")\n";
+    
+    /**
+     * Assert that the next event is a start of an item.
+     * @param reader the reader
+     * @param identifier the expected identifier
+     * @param depth the expected depth
+     */
+    private void assertStart(
+        final DiptraceReader reader,
+        final String identifier,
+        final int depth) {
+        
+        Assert.assertEquals("event", DiptraceEvent.START_ITEM, reader.next());
+        Assert.assertEquals("identifier",
+            identifier, reader.getIdentifier().toString());
+        Assert.assertEquals("depth", depth, reader.getDepth());
+    }
+    
+    /**
+     * Assert that the next event is an attribute.
+     * @param reader the reader
+     * @param type the expected type
+     * @param value the expected value
+     */
+    private void assertAttribute(
+        final DiptraceReader reader,
+        final DiptraceValueType type,
+        final String value) {
+        
+        Assert.assertEquals("event", DiptraceEvent.ATTRIBUTE, reader.next());
+        Assert.assertEquals("type", type, reader.getValueType());
+        Assert.assertEquals("value", value, reader.getValue().toString());
+    }
+    
+    /**
+     * Assert that the next event is an end of an item.
+     * @param reader the reader
+     * @param identifier the expected identifier
+     */
+    private void assertEnd(
+        final DiptraceReader reader,
+        final String identifier) {
+        
+        Assert.assertEquals("event", DiptraceEvent.END_ITEM, reader.next());
+        Assert.assertEquals("identifier",
+            identifier, reader.getIdentifier().toString());
+    }
+    
+    /**
+     * Test the events of a small document.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testEvents() throws IOException {
+        final int depth3 = 3;
+        final int number = 3;
+        final double percent = 50;
+        
+        DiptraceReader reader
+            = new DiptraceReader(new StringReader(DOCUMENT));
+        
+        assertStart(reader, "Source", 1);
+        assertAttribute(reader,
+            DiptraceValueType.STRING, "DipTrace-Schematic");
+        assertEnd(reader, "Source");
+        assertStart(reader, "Components", 1);
+        assertStart(reader, "Component", 2);
+        assertAttribute(reader, DiptraceValueType.STRING, "Cap");
+        Assert.assertEquals("attribute of item",
+            "Component", reader.getIdentifier().toString());
+        assertAttribute(reader, DiptraceValueType.STRING, "C1");
+        assertAttribute(reader, DiptraceValueType.PERCENT, "50%");
+        Assert.assertEquals("percent",
+            percent, reader.getDoubleValue(), 0);
+        assertStart(reader, "Number", depth3);
+        assertAttribute(reader, DiptraceValueType.INTEGER, "3");
+        Assert.assertEquals("integer", number, reader.getIntValue());
+        assertEnd(reader, "Number");
+        assertStart(reader, "Pins", depth3);
+        Assert.assertEquals("skip",
+            DiptraceEvent.END_ITEM, reader.skipItem());
+        Assert.assertEquals("skipped item",
+            "Pins", reader.getIdentifier().toString());
+        assertStart(reader, "X", depth3);
+        assertAttribute(reader, DiptraceValueType.DOUBLE, "-2.5");
+        assertEnd(reader, "X");
+        assertEnd(reader, "Component");
+        assertEnd(reader, "Components");
+        Assert.assertNull("end of file", reader.next());
+    }
+    
+    /**
+     * Test that the last item of the file may be without the right
+     * parentheses.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testMissingLastParentheses() throws IOException {
+        DiptraceReader reader
+            = new DiptraceReader(new StringReader("(Board\n  (Units mm)\n"));
+        
+        assertStart(reader, "Board", 1);
+        assertStart(reader, "Units", 2);
+        assertAttribute(reader, DiptraceValueType.NON_QUOTED_STRING, "mm");
+        assertEnd(reader, "Units");
+        assertEnd(reader, "Board");
+        Assert.assertNull("end of file", reader.next());
+    }
+    
+    /**
+     * Test that a handler gets the events and can skip items.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testEventHandler() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        
+        DiptraceEventHandler handler = new DiptraceEventHandler() {
+            
+            @Override
+            public boolean startItem(
+                final CharSequence identifier,
+                final int depth) {
+                
+                sb.append("(").append(identifier).append(depth);
+                return !"Pins".contentEquals(identifier);
+            }
+            
+            @Override
+            public void attribute(
+                final DiptraceValueType type,
+                final CharSequence value,
+                final double number) {
+                
+                sb.append(" ").append(value).append("=").append(number);
+            }
+            
+            @Override
+            public void endItem(
+                final CharSequence identifier,
+                final int depth) {
+                
+                sb.append(")").append(identifier);
+            }
+        };
+        
+        new DiptraceReader(new StringReader(DOCUMENT)).parse(handler);
+        
+        Assert.assertEquals("events",
+            "(Source1 DipTrace-Schematic=0.0)Source"
+            + "(Components1(Component2 Cap=0.0 C1=0.0 50%=50.0"
+            + "(Number3 3=3.0)Number(Pins3)Pins(X3 -2.5=-2.5)X"
+            + ")Component)Components",
+            sb.toString());
+    }
+    
+}
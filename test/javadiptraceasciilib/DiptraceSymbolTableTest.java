@@ -0,0 +1,56 @@
+package javadiptraceasciilib;
+
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the DiptraceSymbolTable class.
+ */
+public class DiptraceSymbolTableTest {
+    
+    /**
+     * Test that each identifier has one symbol and that the symbol is found
+     * both from a string and from a text.
+     */
+    @Test
+    public void testIntern() {
+        DiptraceSymbolTable table = new DiptraceSymbolTable();
+        final int numSymbols = 1000;
+        
+        Assert.assertNull("not found", table.find("PadWidth"));
+        DiptraceSymbol padWidth = table.intern("PadWidth");
+        Assert.assertSame("same symbol", padWidth, table.find("PadWidth"));
+        
+        DiptraceText text = DiptraceText.wrap("(PadWidth 1)".toCharArray());
+        Assert.assertSame("same symbol from text",
+            padWidth, table.intern(text, 1, "(PadWidth".length()));
+        
+        // Grow the table
+        for (int i = 0; i < numSymbols; i++) {
+            Assert.assertEquals("id", i + 1, table.intern("pt" + i).getId());
+        }
+        Assert.assertSame("same symbol after grow",
+            padWidth, table.find("PadWidth"));
+        Assert.assertEquals("size", numSymbols + 1, table.size());
+    }
+    
+    /**
+     * Test that the items share the identifier.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testItems() throws IOException {
+        DiptraceItem root = (DiptraceItem) new DiptraceProject().getPCBRoot();
+        root.parse(new DiptraceTokenizer(
+            "(Points\n  (pt 1 2)\n  (pt 3 4)\n)\n".toCharArray()));
+        
+        DiptraceItem points = root.getSubItem("Points");
+        Assert.assertSame("shared identifier",
+            points.getChildren().get(0).getIdentifier(),
+            points.getChildren().get(1).getIdentifier());
+        Assert.assertNull("unknown identifier",
+            points.getSubItem("NoSuchIdentifier"));
+    }
+    
+}
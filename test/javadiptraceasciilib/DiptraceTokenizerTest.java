@@ -0,0 +1,254 @@
+package javadiptraceasciilib;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the DiptraceTokenizer class.
+ */
+public class DiptraceTokenizerTest {
+    
+    /**
+     * Assert that the next token has the expected type and value.
+     * @param tokenizer the tokenizer
+     * @param type the expected type
+     * @param value the expected value
+     * @param precededWithNewline the expected newline flag
+     * @throws IOException on any I/O error
+     */
+    private void assertToken(
+        final DiptraceTokenizer tokenizer,
+        final DiptraceTokenType type,
+        final String value,
+        final boolean precededWithNewline)
+        throws IOException {
+        
+        DiptraceToken token = tokenizer.nextToken();
+        Assert.assertNotNull("token exists", token);
+        Assert.assertEquals("token type", type, token.getType());
+        Assert.assertEquals("token value", value, token.getValue());
+        Assert.assertEquals("token newline",
+            precededWithNewline, token.getPrecededWithNewline());
+    }
+    
+    /**
+     * Test the token stream of a small document.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testTokenStream() throws IOException {
+        String text = "(Pad 0 \"\" \"C\" -2.401 50%\n"
+            + "  (Number 1)\n"
+            + "\r\n"
+            + "    (Path F:\\a.dch)\n"
+            + ")\n";
+        
+        DiptraceTokenizer tokenizer
+            = new DiptraceTokenizer(
+                new BufferedReader(new StringReader(text)));
+        
+        assertToken(tokenizer, DiptraceTokenType.LEFT_PARENTHESES, "", false);
+        assertToken(tokenizer, DiptraceTokenType.IDENTIFIER, "Pad", false);
+        assertToken(tokenizer, DiptraceTokenType.INTEGER, "0", false);
+        assertToken(tokenizer, DiptraceTokenType.STRING, "", false);
+        assertToken(tokenizer, DiptraceTokenType.STRING, "C", false);
+        assertToken(tokenizer, DiptraceTokenType.DOUBLE, "-2.401", false);
+        assertToken(tokenizer, DiptraceTokenType.PERCENT, "50%", false);
+        assertToken(tokenizer, DiptraceTokenType.LEFT_PARENTHESES, "", true);
+        assertToken(tokenizer, DiptraceTokenType.IDENTIFIER, "Number", false);
+        assertToken(tokenizer, DiptraceTokenType.INTEGER, "1", false);
+        assertToken(tokenizer, DiptraceTokenType.RIGHT_PARENTHESES, "", false);
+        assertToken(tokenizer, DiptraceTokenType.LEFT_PARENTHESES, "", true);
+        assertToken(tokenizer, DiptraceTokenType.IDENTIFIER, "Path", false);
+        assertToken(tokenizer,
+            DiptraceTokenType.NON_QUOTED_STRING, "F:\\a.dch", false);
+        assertToken(tokenizer, DiptraceTokenType.RIGHT_PARENTHESES, "", false);
+        assertToken(tokenizer, DiptraceTokenType.RIGHT_PARENTHESES, "", true);
+        Assert.assertNull("end of file", tokenizer.nextToken());
+    }
+    
+    /**
+     * Test that UTF-8 bytes, also when they are memory mapped from a file,
+     * give the same tokens as the characters, with non ASCII characters in
+     * quoted strings and in words.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testUTF8Bytes() throws IOException {
+        String text = "(Name \"\u03a9mega\" \"\u20ac\u20ac\"\n"
+            + "  (W\u00f6rd \"\ud83d\ude00 smile\" 1.5)\n"
+            + "  (Path C:\\\u00e5\u00e4\u00f6.dch)\n"
+            + ")\n";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        
+        assertSameTokens(text,
+            new DiptraceTokenizer(DiptraceText.wrap(ByteBuffer.wrap(bytes))));
+        
+        Path file = Files.createTempFile("tokens", ".asc");
+        try {
+            Files.write(file, bytes);
+            assertSameTokens(text,
+                new DiptraceTokenizer(DiptraceText.map(file)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+    
+    /**
+     * Assert that a tokenizer gives the same tokens as the tokenizer of the
+     * characters of a text.
+     * @param text the text
+     * @param tokenizer the tokenizer
+     * @throws IOException on any I/O error
+     */
+    private void assertSameTokens(
+        final String text,
+        final DiptraceTokenizer tokenizer)
+        throws IOException {
+        
+        DiptraceTokenizer expected
+            = new DiptraceTokenizer(
+                new BufferedReader(new StringReader(text)));
+        DiptraceToken token = expected.nextToken();
+        while (token != null) {
+            assertToken(tokenizer, token.getType(), token.getValue(),
+                token.getPrecededWithNewline());
+            token = expected.nextToken();
+        }
+        Assert.assertNull("end of bytes", tokenizer.nextToken());
+    }
+    
+    /**
+     * Test tokenizing a part of a char array.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testPartOfBuffer() throws IOException {
+        char[] buffer = "xx(X -59.981)yy".toCharArray();
+        final int start = 2;
+        final int end = 13;
+        
+        DiptraceTokenizer tokenizer
+            = new DiptraceTokenizer(buffer, start, end);
+        
+        assertToken(tokenizer, DiptraceTokenType.LEFT_PARENTHESES, "", false);
+        assertToken(tokenizer, DiptraceTokenType.IDENTIFIER, "X", false);
+        assertToken(tokenizer, DiptraceTokenType.DOUBLE, "-59.981", false);
+        assertToken(tokenizer, DiptraceTokenType.RIGHT_PARENTHESES, "", false);
+        Assert.assertNull("end of buffer", tokenizer.nextToken());
+    }
+    
+    /**
+     * Test that an empty input gives no tokens.
+     * @throws IOException on any I/O error
+     */
+    @Test
+    public void testEmptyInput() throws IOException {
+        DiptraceTokenizer tokenizer = new DiptraceTokenizer(new char[0]);
+        Assert.assertNull("no tokens", tokenizer.previewNextToken());
+        Assert.assertNull("no tokens", tokenizer.nextToken());
+    }
+    
+    /**
+     * Assert that a word is classified as the expected type.
+     * @param word the word
+     * @param type the expected type
+     * @param value the expected numeric value
+     */
+    private void assertWord(
+        final String word,
+        final DiptraceTokenType type,
+        final double value) {
+        
+        DiptraceWordScanner scanner = new DiptraceWordScanner();
+        DiptraceText buffer
+            = DiptraceText.wrap(("  " + word + "  ").toCharArray());
+        final int start = 2;
+        
+        Assert.assertEquals("word type " + word,
+            type, scanner.scan(buffer, start, start + word.length()));
+        
+        if (type == DiptraceTokenType.INTEGER) {
+            Assert.assertEquals("int value " + word,
+                (int) value, scanner.getIntValue());
+        } else if ((type == DiptraceTokenType.DOUBLE)
+            || (type == DiptraceTokenType.PERCENT)) {
+            
+            Assert.assertEquals("double value " + word,
+                Double.doubleToLongBits(value),
+                Double.doubleToLongBits(scanner.getDoubleValue()));
+        }
+    }
+    
+    /**
+     * Test that words are classified in the same way as Integer.parseInt()
+     * and Double.parseDouble() would do.
+     */
+    @Test
+    public void testWordClassification() {
+        final double noValue = 0;
+        final double value1 = -59.981;
+        final double value2 = 1010.901;
+        final double value3 = 2147483648.0;
+        final double value4 = 1e-5;
+        final double value5 = 0.125;
+        
+        assertWord("0", DiptraceTokenType.INTEGER, 0);
+        assertWord("-2147483648", DiptraceTokenType.INTEGER, Integer.MIN_VALUE);
+        assertWord("2147483648", DiptraceTokenType.DOUBLE, value3);
+        assertWord("-59.981", DiptraceTokenType.DOUBLE, value1);
+        assertWord("1E-5", DiptraceTokenType.DOUBLE, value4);
+        assertWord(".125d", DiptraceTokenType.DOUBLE, value5);
+        assertWord("NaN", DiptraceTokenType.DOUBLE, Double.NaN);
+        assertWord("-Infinity",
+            DiptraceTokenType.DOUBLE, Double.NEGATIVE_INFINITY);
+        assertWord("0x1p-3", DiptraceTokenType.DOUBLE, value5);
+        assertWord("1010.901%", DiptraceTokenType.PERCENT, value2);
+        assertWord("-0%", DiptraceTokenType.PERCENT, -0.0);
+        assertWord("Top", DiptraceTokenType.IDENTIFIER, noValue);
+        assertWord("Name", DiptraceTokenType.IDENTIFIER, noValue);
+        assertWord("Infinityx", DiptraceTokenType.IDENTIFIER, noValue);
+        assertWord("cl_Pin", DiptraceTokenType.NON_QUOTED_STRING, noValue);
+        assertWord("1e", DiptraceTokenType.NON_QUOTED_STRING, noValue);
+        assertWord("%", DiptraceTokenType.NON_QUOTED_STRING, noValue);
+        assertWord("", DiptraceTokenType.NON_QUOTED_STRING, noValue);
+        assertWord("\u00e9t\u00e9", DiptraceTokenType.IDENTIFIER, noValue);
+    }
+    
+    /**
+     * Test that the structural index finds the same positions in a text of
+     * characters and in a text of bytes.
+     */
+    @Test
+    public void testStructuralIndex() {
+        String text = "(Pad \"x(y)\"\r\n  (Number 1)\n)\r(a b)";
+        
+        DiptraceStructuralIndex charIndex
+            = DiptraceText.wrap(text.toCharArray()).getStructuralIndex();
+        DiptraceStructuralIndex byteIndex
+            = DiptraceText.wrap(
+                ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)))
+                .getStructuralIndex();
+        
+        final int size = 14;
+        Assert.assertEquals("char index size", size, charIndex.size());
+        Assert.assertEquals("byte index size", size, byteIndex.size());
+        
+        int index = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (DiptraceStructuralIndex.isStructural(text.charAt(i))) {
+                Assert.assertEquals("char index", i, charIndex.get(index));
+                Assert.assertEquals("byte index", i, byteIndex.get(index));
+                index++;
+            }
+        }
+    }
+    
+}